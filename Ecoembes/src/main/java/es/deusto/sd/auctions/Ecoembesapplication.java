@@ -2,8 +2,10 @@ package es.deusto.sd.auctions;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class Ecoembesapplication {
 	public static void main(String[] args) {
 		SpringApplication.run(Ecoembesapplication.class, args);
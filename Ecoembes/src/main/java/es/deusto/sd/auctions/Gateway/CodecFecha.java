@@ -0,0 +1,32 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Formato "dd-MM-yyyy" que usan las plantas, compartido por todos los gateways.
+ *
+ * DateTimeFormatter es inmutable y thread-safe: una única instancia sirve para todas
+ * las consultas, sin crear un SimpleDateFormat por llamada ni sincronizar uno compartido.
+ */
+public final class CodecFecha {
+
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final ZoneId ZONA = ZoneId.systemDefault();
+
+    private CodecFecha() {}
+
+    public static String formatear(Date fecha) {
+        return FORMATO.format(fecha.toInstant().atZone(ZONA));
+    }
+
+    public static String formatear(LocalDate fecha) {
+        return FORMATO.format(fecha);
+    }
+
+    public static LocalDate parsear(String fecha) {
+        return LocalDate.parse(fecha, FORMATO);
+    }
+}
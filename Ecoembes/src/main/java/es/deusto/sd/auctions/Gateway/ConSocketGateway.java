@@ -5,24 +5,64 @@ import es.deusto.sd.auctions.Gateway.PlantaGateway;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * PROTOCOLO:
  * - CAPACIDAD|dd-MM-yyyy -> OK|capacidad o ERROR|mensaje
+ * - CAPACIDAD_RANGO|desde|hasta -> OK|dd-MM-yyyy=capacidad;... (solo fechas con capacidad)
+ * - SUSCRIBIR -> OK|Suscrito y después CAMBIO|dd-MM-yyyy|capacidad (ver SuscripcionSocket)
  * - NOTIFICAR|numContenedores|numEnvases -> OK|mensaje o ERROR|mensaje
+ * Si no llega respuesta (conexión rechazada, plazo de ConfiguracionGateway agotado...)
+ * o el servidor responde que está saturado, se lanza PlantaNoDisponibleException.
+ * Cualquier otro ERROR a CAPACIDAD significa que no hay capacidad para esa fecha:
+ * IllegalStateException, igual que en PlasSbGateway.
+ *
+ * CONEXIONES:
+ * - Por defecto los comandos viajan por un pool de conexiones persistentes (PoolConexionesSocket)
+ * - Con usarPool = false se abre y cierra un Socket por comando (modo original, útil para comparar)
+ *
+ * ASÍNCRONO:
+ * - El protocolo es bloqueante, así que la versión asíncrona ejecuta la consulta en un
+ *   ejecutor propio con tantos hilos como conexiones tiene el pool: más hilos solo
+ *   esperarían en obtener() y menos dejarían conexiones sin usar
  */
 public class ConSocketGateway implements PlantaGateway {
 
+    // Configuración por defecto del pool
+    private static final long MAX_INACTIVIDAD_MS = 30_000;
+    // Un reintento con otra conexión si la reutilizada estaba rota (nunca tras un timeout de lectura)
+    private static final int INTENTOS = 2;
+    // Días por comando CAPACIDAD_RANGO (ProcesadorComandos.MAX_DIAS_RANGO en ContSocket)
+    private static final int MAX_DIAS_RANGO = 120;
+    // Respuesta de ContSocket cuando no le quedan sesiones libres (y cierra la conexión)
+    private static final String ERROR_SATURADO = "ERROR|Servidor saturado";
+
     private final String host;
     private final int puerto;
-    private final SimpleDateFormat dateFormat;
     private  final Tipo tipo;
     private final String nombre;
+    private final PoolConexionesSocket pool;
+    private final ExecutorService ejecutor;
+    private final ConfiguracionGateway config;
 
     public ConSocketGateway(String url, Tipo tipo, String nombre) {
+        this(url, tipo, nombre, true);
+    }
+
+    public ConSocketGateway(String url, Tipo tipo, String nombre, boolean usarPool) {
+        this(url, tipo, nombre, usarPool, ConfiguracionGateway.POR_DEFECTO);
+    }
+
+    public ConSocketGateway(String url, Tipo tipo, String nombre, boolean usarPool, ConfiguracionGateway config) {
         this.tipo = tipo;
+        this.config = config;
         this.nombre = nombre;
         // Parsear "localhost:8090" en host y puerto
         String[] partes = url.split(":");
@@ -38,12 +78,71 @@ public class ConSocketGateway implements PlantaGateway {
             throw new IllegalArgumentException("Puerto inválido: " + partes[1]);
         }
 
-        this.dateFormat = new SimpleDateFormat("dd-MM-yyyy");
+        this.pool = usarPool
+                ? new PoolConexionesSocket(host, puerto, config.maxConexiones(),
+                        config.timeoutConexionMs(), config.timeoutLecturaMs(), MAX_INACTIVIDAD_MS)
+                : null;
+        this.ejecutor = Executors.newFixedThreadPool(config.maxConexiones(),
+                Thread.ofPlatform().name("consocket-" + nombre + "-", 1).daemon(true).factory());
 
-        System.out.println("[SOCKET GATEWAY] Configurado para " + host + ":" + puerto);
+        System.out.println("[SOCKET GATEWAY] Configurado para " + host + ":" + puerto
+                + (usarPool ? " (pool de " + config.maxConexiones() + " conexiones)" : " (conexión por comando)"));
     }
 
+    /**
+     * Envía un comando y devuelve la línea de respuesta.
+     *
+     * @throws PlantaNoDisponibleException si no hay respuesta (conexión, plazo agotado...)
+     */
     private String enviarComando(String comando) {
+        if (pool == null) {
+            return enviarComandoSinPool(comando);
+        }
+
+        IOException ultimoError = null;
+        for (int intento = 1; intento <= INTENTOS; intento++) {
+            PoolConexionesSocket.Conexion conexion = null;
+            boolean sana = false;
+            boolean reutilizada = false;
+            try {
+                conexion = pool.obtener();
+                reutilizada = conexion.isUsada();
+
+                System.out.println("[SOCKET] → Enviando: " + comando);
+                String respuesta = conexion.enviar(comando);
+
+                if (respuesta != null) {
+                    System.out.println("[SOCKET] ← Recibido: " + respuesta);
+                    // Tras avisar de que está saturado el servidor cierra la conexión
+                    sana = !respuesta.startsWith(ERROR_SATURADO);
+                    return respuesta;
+                }
+                if (!reutilizada) {
+                    throw new PlantaNoDisponibleException("ContSocket cerró la conexión sin responder a " + comando);
+                }
+                // null: el servidor cerró esta conexión mientras estaba en el pool
+                System.out.println("[SOCKET] Conexión cerrada por el servidor, reintentando");
+            } catch (SocketTimeoutException e) {
+                // La planta no contesta: reintentar solo alargaría la espera otro timeoutLecturaMs
+                System.out.println("[SOCKET] Socket timeout");
+                throw new PlantaNoDisponibleException("ContSocket no respondió a tiempo a " + comando, e);
+            } catch (IOException e) {
+                System.out.println("[SOCKET] Error de conexión: " + e.getMessage());
+                ultimoError = e;
+                // Solo una conexión que esperaba en el pool puede estar rota sin que la planta esté caída
+                if (!reutilizada) {
+                    break;
+                }
+            } finally {
+                if (conexion != null) {
+                    pool.devolver(conexion, sana);
+                }
+            }
+        }
+        throw new PlantaNoDisponibleException("ContSocket no respondió a " + comando, ultimoError);
+    }
+
+    private String enviarComandoSinPool(String comando) {
         Socket socket = null;
         PrintWriter out = null;
         BufferedReader in = null;
@@ -51,8 +150,9 @@ public class ConSocketGateway implements PlantaGateway {
         try {
             // 1. Conectar al servidor
             System.out.println("[SOCKET] Conectando a " + host + ":" + puerto);
-            socket = new Socket(host, puerto);
-            socket.setSoTimeout(5000); // Timeout de 5 segundos
+            socket = new Socket();
+            socket.connect(new java.net.InetSocketAddress(host, puerto), config.timeoutConexionMs());
+            socket.setSoTimeout(config.timeoutLecturaMs());
 
             // 2. Configurar streams
             out = new PrintWriter(socket.getOutputStream(), true);
@@ -67,30 +167,76 @@ public class ConSocketGateway implements PlantaGateway {
 
             System.out.println("[SOCKET] ← Recibido: " + respuesta);
 
+            if (respuesta == null) {
+                throw new PlantaNoDisponibleException("ContSocket cerró la conexión sin responder a " + comando);
+            }
             return respuesta;
 
         } catch (SocketTimeoutException e) {
             System.out.println("[SOCKET] Socket timeout");
+            throw new PlantaNoDisponibleException("ContSocket no respondió a tiempo a " + comando, e);
         } catch (IOException e) {
-            System.out.println("[SOCKET] Socket timeout");
+            System.out.println("[SOCKET] Error de conexión: " + e.getMessage());
+            throw new PlantaNoDisponibleException("No se pudo conectar con ContSocket", e);
         } finally {
             // 5. IMPORTANTE: Cerrar recursos
             cerrarRecursos(socket, out, in);
         }
-        return comando;
     }
 
     double parsearRespuestaCapacidad(String respuesta) {
+        if (respuesta.startsWith(ERROR_SATURADO)) {
+            // Es un fallo de disponibilidad: debe contar para el circuito y no guardarse en caché
+            throw new PlantaNoDisponibleException("ContSocket saturado: " + respuesta.substring(6));
+        }
         String[] partes = respuesta.split("\\|");
         String estado = partes[0].trim();
-        String valor = partes[1].trim();
 
-        if (estado.equals("OK")) {
-            double capacidad = Double.parseDouble(valor);
-            System.out.println("[SOCKET] Capacidad obtenida: " + capacidad + " toneladas");
-            return capacidad;
+        if (estado.equals("OK") && partes.length == 2) {
+            try {
+                double capacidad = Double.parseDouble(partes[1].trim());
+                System.out.println("[SOCKET] Capacidad obtenida: " + capacidad + " toneladas");
+                return capacidad;
+            } catch (NumberFormatException e) {
+                throw new PlantaNoDisponibleException("Respuesta inválida de ContSocket: " + respuesta);
+            }
+        }
+        if (estado.equals("ERROR")) {
+            // La planta ha respondido que no tiene capacidad para esa fecha
+            throw new IllegalStateException("ContSocket no tiene capacidad para esa fecha: "
+                    + respuesta.substring(respuesta.indexOf('|') + 1));
+        }
+        throw new PlantaNoDisponibleException("Respuesta inválida de ContSocket: " + respuesta);
+    }
+
+    /**
+     * Parsea OK|dd-MM-yyyy=capacidad;... añadiendo cada fecha a capacidades.
+     */
+    void parsearRespuestaRango(String respuesta, Map<LocalDate, Double> capacidades) {
+        if (respuesta.startsWith(ERROR_SATURADO)) {
+            throw new PlantaNoDisponibleException("ContSocket saturado: " + respuesta.substring(6));
+        }
+        if (respuesta.startsWith("ERROR|")) {
+            // La planta entendió el comando pero rechaza el rango
+            throw new IllegalStateException("ContSocket rechazó el rango: " + respuesta.substring(6));
+        }
+        if (!respuesta.startsWith("OK|")) {
+            throw new PlantaNoDisponibleException("Respuesta inválida de ContSocket: " + respuesta);
+        }
+
+        String cuerpo = respuesta.substring(3).trim();
+        if (cuerpo.isEmpty()) {
+            return;
+        }
+        try {
+            for (String dia : cuerpo.split(";")) {
+                int igual = dia.indexOf('=');
+                capacidades.put(CodecFecha.parsear(dia.substring(0, igual)),
+                        Double.parseDouble(dia.substring(igual + 1)));
+            }
+        } catch (RuntimeException e) {
+            throw new PlantaNoDisponibleException("Respuesta inválida de ContSocket: " + respuesta, e);
         }
-        return 0;
     }
 
         private void cerrarRecursos (Socket socket, PrintWriter out, BufferedReader in){
@@ -133,7 +279,7 @@ public class ConSocketGateway implements PlantaGateway {
             }
 
             // Convertir Date a String en formato "dd-MM-yyyy"
-            String fechaStr = dateFormat.format(fecha);
+            String fechaStr = CodecFecha.formatear(fecha);
 
             // Enviar comando: CAPACIDAD|05-12-2024
             String comando = "CAPACIDAD|" + fechaStr;
@@ -143,6 +289,51 @@ public class ConSocketGateway implements PlantaGateway {
             return parsearRespuestaCapacidad(respuesta);
         }
 
+    @Override
+    public CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha) {
+        return CompletableFuture.supplyAsync(() -> consultarCapacidadDisponible(fecha), ejecutor);
+    }
+
+    /**
+     * Todo el rango con un comando CAPACIDAD_RANGO (uno por cada MAX_DIAS_RANGO días)
+     * en vez de un CAPACIDAD por fecha.
+     */
+    public Map<LocalDate, Double> consultarCapacidadesRango(LocalDate desde, LocalDate hasta) {
+        Map<LocalDate, Double> capacidades = new TreeMap<>();
+        for (LocalDate inicio = desde; !inicio.isAfter(hasta); inicio = inicio.plusDays(MAX_DIAS_RANGO)) {
+            LocalDate fin = inicio.plusDays(MAX_DIAS_RANGO - 1);
+            if (fin.isAfter(hasta)) {
+                fin = hasta;
+            }
+            String respuesta = enviarComando("CAPACIDAD_RANGO|" + CodecFecha.formatear(inicio)
+                    + "|" + CodecFecha.formatear(fin));
+            parsearRespuestaRango(respuesta, capacidades);
+        }
+        return capacidades;
+    }
+
+    @Override
+    public CompletableFuture<Map<LocalDate, Double>> consultarCapacidadesRangoAsync(LocalDate desde, LocalDate hasta) {
+        return CompletableFuture.supplyAsync(() -> consultarCapacidadesRango(desde, hasta), ejecutor);
+    }
+
+    @Override
+    public SuscripcionCambios suscribirCambios(OyenteCapacidades oyente) {
+        return new SuscripcionSocket(host, puerto, nombre, config.timeoutConexionMs(), oyente).iniciar();
+    }
+
+    public long getConexionesCreadas() {
+        return pool == null ? 0 : pool.getCreadas();
+    }
+
+    public long getConexionesReutilizadas() {
+        return pool == null ? 0 : pool.getReutilizadas();
+    }
+
+    public int getConexionesLibres() {
+        return pool == null ? 0 : pool.getLibres();
+    }
+
     @Override
     public Tipo getTipo() {
         return this.tipo;
@@ -0,0 +1,19 @@
+package es.deusto.sd.auctions.Gateway;
+
+/**
+ * Plazos y límites de resiliencia de un gateway de planta.
+ *
+ * @param maxConexiones     Conexiones persistentes máximas hacia la planta (pool por ruta)
+ * @param timeoutConexionMs Máximo para establecer la conexión (TCP o HTTP)
+ * @param timeoutLecturaMs  Máximo esperando la respuesta una vez conectado
+ * @param umbralFallos      Fallos seguidos que abren el circuito
+ * @param circuitoAbiertoMs Tiempo que el circuito falla rápido antes de dejar pasar una prueba
+ * @param maxConcurrentes   Consultas simultáneas permitidas a la planta (bulkhead)
+ * @param retrasoHedgeMs    Si la respuesta tarda más que esto se lanza un segundo intento (0 = desactivado)
+ */
+public record ConfiguracionGateway(int maxConexiones, int timeoutConexionMs, int timeoutLecturaMs,
+                                   int umbralFallos, long circuitoAbiertoMs, int maxConcurrentes, long retrasoHedgeMs) {
+
+    public static final ConfiguracionGateway POR_DEFECTO =
+            new ConfiguracionGateway(8, 1000, 3000, 5, 10_000, 10, 0);
+}
@@ -0,0 +1,26 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.time.LocalDate;
+
+/**
+ * Recibe los cambios de capacidad que una planta empuja (PlantaGateway.suscribirCambios).
+ * Los métodos se llaman desde el hilo de la suscripción, de uno en uno.
+ */
+public interface OyenteCapacidades {
+
+    /**
+     * La planta ha cambiado la capacidad de esa fecha.
+     */
+    void cambio(LocalDate fecha, double capacidad);
+
+    /**
+     * A partir de ahora llegan todos los cambios, pero lo que se sabía de antes puede
+     * estar desfasado (recién conectada, o la planta pide recargar): hay que volver a cargarlo.
+     */
+    void sincronizar();
+
+    /**
+     * Se perdió la suscripción: hasta que se recupere, los cambios no llegan.
+     */
+    void desconectada();
+}
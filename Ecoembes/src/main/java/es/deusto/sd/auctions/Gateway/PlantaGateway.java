@@ -1,9 +1,71 @@
 package es.deusto.sd.auctions.Gateway;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public interface PlantaGateway {
     double consultarCapacidadDisponible(Date fecha);
+
+    /**
+     * Igual que consultarCapacidadDisponible pero sin bloquear al que llama:
+     * permite preguntar a varias plantas a la vez.
+     */
+    CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha);
+
+    /**
+     * Capacidades de todas las fechas de [desde, hasta] en una sola consulta.
+     * Las fechas para las que la planta no tiene capacidad no aparecen en el mapa.
+     *
+     * Por defecto pregunta fecha a fecha (en paralelo); los gateways cuya planta
+     * sabe responder un rango entero lo sobrescriben para hacer un único viaje.
+     */
+    default CompletableFuture<Map<LocalDate, Double>> consultarCapacidadesRangoAsync(LocalDate desde, LocalDate hasta) {
+        List<LocalDate> fechas = new ArrayList<>();
+        List<CompletableFuture<Double>> consultas = new ArrayList<>();
+        for (LocalDate fecha = desde; !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+            fechas.add(fecha);
+            consultas.add(consultarCapacidadDisponibleAsync(
+                    Date.from(fecha.atStartOfDay(ZoneId.systemDefault()).toInstant())));
+        }
+
+        return CompletableFuture.allOf(consultas.stream()
+                        .map(c -> c.exceptionallyCompose(error -> {
+                            Throwable causa = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            // Sin capacidad para esa fecha no es un fallo del rango; la planta caída sí
+                            return causa instanceof PlantaNoDisponibleException
+                                    ? CompletableFuture.failedFuture(causa)
+                                    : CompletableFuture.completedFuture(null);
+                        }))
+                        .toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    Map<LocalDate, Double> capacidades = new TreeMap<>();
+                    for (int i = 0; i < fechas.size(); i++) {
+                        CompletableFuture<Double> consulta = consultas.get(i);
+                        if (!consulta.isCompletedExceptionally()) {
+                            capacidades.put(fechas.get(i), consulta.join());
+                        }
+                    }
+                    return capacidades;
+                });
+    }
+
+    /**
+     * Empieza a recibir los cambios de capacidad que empuja la planta, en vez de preguntarle.
+     *
+     * @return La suscripción (close() para darse de baja), o null si la planta no avisa de cambios
+     */
+    default SuscripcionCambios suscribirCambios(OyenteCapacidades oyente) {
+        return null;
+    }
+
     Tipo getTipo();
     String getNombre();
 }
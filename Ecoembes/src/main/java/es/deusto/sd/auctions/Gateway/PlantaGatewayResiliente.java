@@ -0,0 +1,252 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Decorador que protege a Ecoembes de una planta lenta o caída.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Circuit breaker: tras umbralFallos fallos seguidos el circuito se abre y durante
+ *   circuitoAbiertoMs todas las consultas fallan al momento sin tocar la red. Después
+ *   deja pasar una sola consulta de prueba (SEMIABIERTO): si va bien se cierra, si no se reabre
+ * - Bulkhead: un Semaphore por planta limita las consultas simultáneas a maxConcurrentes;
+ *   si está lleno se rechaza al momento, así una planta lenta no acapara los hilos de Ecoembes
+ * - Hedging (opcional): si la respuesta tarda más de retrasoHedgeMs se lanza un segundo intento
+ *   y gana el primero que responda bien
+ * - Solo cuentan como fallo los de disponibilidad (red, plazos, errores 5xx). Que la planta
+ *   responda que no tiene capacidad para una fecha es una respuesta válida
+ */
+public class PlantaGatewayResiliente implements PlantaGateway {
+
+    public enum EstadoCircuito { CERRADO, ABIERTO, SEMIABIERTO }
+
+    private final PlantaGateway delegado;
+    private final ConfiguracionGateway config;
+    private final Semaphore bulkhead;
+
+    // Estado del circuito (protegido por this)
+    private EstadoCircuito estado = EstadoCircuito.CERRADO;
+    private int fallosSeguidos;
+    private long abiertoHasta;
+    private boolean pruebaEnCurso;
+
+    // Métricas
+    private final AtomicLong rechazadasCircuito = new AtomicLong();
+    private final AtomicLong rechazadasBulkhead = new AtomicLong();
+    private final AtomicLong hedgesLanzados = new AtomicLong();
+    private final AtomicLong hedgesGanados = new AtomicLong();
+
+    public PlantaGatewayResiliente(PlantaGateway delegado, ConfiguracionGateway config) {
+        this.delegado = delegado;
+        this.config = config;
+        this.bulkhead = new Semaphore(config.maxConcurrentes());
+    }
+
+    @Override
+    public double consultarCapacidadDisponible(Date fecha) {
+        try {
+            return consultarCapacidadDisponibleAsync(fecha).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new PlantaNoDisponibleException("Error consultando " + getNombre(), e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha) {
+        return proteger(() -> delegado.consultarCapacidadDisponibleAsync(fecha));
+    }
+
+    @Override
+    public CompletableFuture<Map<LocalDate, Double>> consultarCapacidadesRangoAsync(LocalDate desde, LocalDate hasta) {
+        // Un rango es una sola consulta a la planta: un permiso del bulkhead y un resultado para el circuito
+        return proteger(() -> delegado.consultarCapacidadesRangoAsync(desde, hasta));
+    }
+
+    /**
+     * Pasa la llamada por el circuito, el bulkhead y (si está activado) el hedging.
+     */
+    private <T> CompletableFuture<T> proteger(Supplier<CompletableFuture<T>> llamada) {
+        if (!permitir()) {
+            rechazadasCircuito.incrementAndGet();
+            return CompletableFuture.failedFuture(
+                    new PlantaNoDisponibleException("Circuito abierto para " + getNombre()));
+        }
+        if (!bulkhead.tryAcquire()) {
+            rechazadasBulkhead.incrementAndGet();
+            cancelarPrueba();
+            return CompletableFuture.failedFuture(
+                    new PlantaNoDisponibleException("Demasiadas consultas en curso a " + getNombre()));
+        }
+
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        // Intentos lanzados que aún no han terminado
+        AtomicInteger pendientes = new AtomicInteger(1);
+        intentar(llamada, resultado, pendientes, false);
+
+        if (config.retrasoHedgeMs() > 0) {
+            CompletableFuture.delayedExecutor(config.retrasoHedgeMs(), TimeUnit.MILLISECONDS).execute(() -> {
+                if (resultado.isDone() || !bulkhead.tryAcquire()) {
+                    return;
+                }
+                pendientes.incrementAndGet();
+                hedgesLanzados.incrementAndGet();
+                intentar(llamada, resultado, pendientes, true);
+            });
+        }
+
+        resultado.whenComplete((valor, error) -> {
+            if (error != null && esFalloDePlanta(error)) {
+                registrarFallo();
+            } else {
+                registrarExito();
+            }
+        });
+        return resultado;
+    }
+
+    /**
+     * Lanza un intento (ya con su permiso del bulkhead) y vuelca su resultado en resultado.
+     * El resultado falla solo cuando han fallado todos los intentos lanzados.
+     */
+    private <T> void intentar(Supplier<CompletableFuture<T>> llamada, CompletableFuture<T> resultado,
+                              AtomicInteger pendientes, boolean hedge) {
+        CompletableFuture<T> intento;
+        try {
+            intento = llamada.get();
+        } catch (RuntimeException e) {
+            intento = CompletableFuture.failedFuture(e);
+        }
+
+        intento.whenComplete((valor, error) -> {
+            bulkhead.release();
+            if (error == null) {
+                if (resultado.complete(valor) && hedge) {
+                    hedgesGanados.incrementAndGet();
+                }
+            } else if (pendientes.decrementAndGet() == 0) {
+                resultado.completeExceptionally(desenvolver(error));
+            }
+        });
+    }
+
+    private synchronized boolean permitir() {
+        if (estado == EstadoCircuito.ABIERTO) {
+            if (System.currentTimeMillis() < abiertoHasta) {
+                return false;
+            }
+            estado = EstadoCircuito.SEMIABIERTO;
+            pruebaEnCurso = false;
+        }
+        if (estado == EstadoCircuito.SEMIABIERTO) {
+            // Solo una consulta de prueba a la vez
+            if (pruebaEnCurso) {
+                return false;
+            }
+            pruebaEnCurso = true;
+        }
+        return true;
+    }
+
+    private synchronized void cancelarPrueba() {
+        pruebaEnCurso = false;
+    }
+
+    private synchronized void registrarExito() {
+        if (estado != EstadoCircuito.CERRADO) {
+            System.out.println("[CIRCUITO] " + getNombre() + " vuelve a responder: circuito cerrado");
+        }
+        estado = EstadoCircuito.CERRADO;
+        fallosSeguidos = 0;
+        pruebaEnCurso = false;
+    }
+
+    private synchronized void registrarFallo() {
+        fallosSeguidos++;
+        if (estado == EstadoCircuito.SEMIABIERTO || fallosSeguidos >= config.umbralFallos()) {
+            if (estado != EstadoCircuito.ABIERTO) {
+                System.out.println("[CIRCUITO] " + getNombre() + " abierto durante "
+                        + config.circuitoAbiertoMs() + " ms tras " + fallosSeguidos + " fallos seguidos");
+            }
+            estado = EstadoCircuito.ABIERTO;
+            abiertoHasta = System.currentTimeMillis() + config.circuitoAbiertoMs();
+            pruebaEnCurso = false;
+        }
+    }
+
+    private static boolean esFalloDePlanta(Throwable error) {
+        Throwable causa = desenvolver(error);
+        return causa instanceof PlantaNoDisponibleException
+                || causa instanceof IOException
+                || causa instanceof TimeoutException;
+    }
+
+    private static Throwable desenvolver(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    public synchronized EstadoCircuito getEstadoCircuito() {
+        // Un circuito abierto cuyo plazo ya pasó dejará pasar la siguiente consulta
+        if (estado == EstadoCircuito.ABIERTO && System.currentTimeMillis() >= abiertoHasta) {
+            return EstadoCircuito.SEMIABIERTO;
+        }
+        return estado;
+    }
+
+    public synchronized int getFallosSeguidos() {
+        return fallosSeguidos;
+    }
+
+    public long getRechazadasCircuito() {
+        return rechazadasCircuito.get();
+    }
+
+    public long getRechazadasBulkhead() {
+        return rechazadasBulkhead.get();
+    }
+
+    public int getEnCurso() {
+        return config.maxConcurrentes() - bulkhead.availablePermits();
+    }
+
+    public long getHedgesLanzados() {
+        return hedgesLanzados.get();
+    }
+
+    public long getHedgesGanados() {
+        return hedgesGanados.get();
+    }
+
+    @Override
+    public SuscripcionCambios suscribirCambios(OyenteCapacidades oyente) {
+        // La suscripción tiene su propia conexión y reintentos: no pasa por circuito ni bulkhead
+        return delegado.suscribirCambios(oyente);
+    }
+
+    public PlantaGateway getDelegado() {
+        return delegado;
+    }
+
+    @Override
+    public Tipo getTipo() {
+        return delegado.getTipo();
+    }
+
+    @Override
+    public String getNombre() {
+        return delegado.getNombre();
+    }
+}
@@ -0,0 +1,18 @@
+package es.deusto.sd.auctions.Gateway;
+
+/**
+ * La planta no ha respondido: error de red, plazo agotado, error interno de la planta
+ * o circuito abierto. Se distingue de una respuesta de la planta sin capacidad para la fecha.
+ */
+public class PlantaNoDisponibleException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PlantaNoDisponibleException(String mensaje) {
+        super(mensaje);
+    }
+
+    public PlantaNoDisponibleException(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
@@ -1,46 +1,231 @@
 package es.deusto.sd.auctions.Gateway;
 
-import org.springframework.http.*;
-import org.springframework.web.client.RestTemplate;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Gateway HTTP hacia PlasSb.
+ *
+ * CONEXIONES:
+ * - Un único cliente asíncrono (Apache HttpClient 5) con pool de conexiones keep-alive:
+ *   como Ecoembes consulta a PlasSb continuamente, cada consulta reutiliza una conexión
+ *   abierta en vez de pagar el establecimiento de una nueva
+ * - maxConexiones por ruta (ConfiguracionGateway); las URLs de las plantas son http:// en
+ *   claro, así que las conexiones son HTTP/1.1 keep-alive
+ * - Por cada petición solo se construye la URL: el prefijo, la configuración y el formato
+ *   de fecha (CodecFecha) se crean una vez
+ * - consultarCapacidadesRangoAsync usa /plasSb/capacidad/rango: todo el horizonte
+ *   en una sola petición en vez de una por día
+ * - suscribirCambios escucha /plasSb/capacidad/cambios (Server-Sent Events)
+ */
 public class PlasSbGateway implements PlantaGateway{
 
-    private final String baseUrl;
-    private final RestTemplate restTemplate;
+    // Cerrar conexiones que lleven este tiempo sin usarse
+    private static final TimeValue MAX_INACTIVIDAD = TimeValue.ofSeconds(30);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<Map<String, Double>> TIPO_RANGO = new TypeReference<>() {};
+
+    private final String urlCapacidad;
+    private final String urlRango;
+    private final String urlCambios;
+    private final int timeoutConexionMs;
+    private final PoolingAsyncClientConnectionManager gestorConexiones;
+    private final CloseableHttpAsyncClient httpClient;
     private final Tipo tipo;
     private final String nombre;
 
+    // Métricas de reutilización de conexiones
+    private final AtomicLong conexionesAbiertas = new AtomicLong();
+    private final AtomicLong respuestas = new AtomicLong();
+
     public PlasSbGateway(String url, Tipo tipo, String nombre) {
-        this.baseUrl = url;
+        this(url, tipo, nombre, ConfiguracionGateway.POR_DEFECTO);
+    }
+
+    public PlasSbGateway(String url, Tipo tipo, String nombre, ConfiguracionGateway config) {
+        this.urlCapacidad = url + "/plasSb/capacidad?fecha=";
+        this.urlRango = url + "/plasSb/capacidad/rango?desde=";
+        this.urlCambios = url + "/plasSb/capacidad/cambios";
+        this.timeoutConexionMs = config.timeoutConexionMs();
         this.tipo = tipo;
         this.nombre = nombre;
-        this.restTemplate = new RestTemplate();
+
+        this.gestorConexiones = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(config.maxConexiones())
+                .setMaxConnTotal(config.maxConexiones())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(config.timeoutConexionMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(config.timeoutLecturaMs()))
+                        .build())
+                .build();
+
+        // Sin plazos, una planta colgada dejaría esperando al que consulta
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(gestorConexiones)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(config.timeoutConexionMs()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(config.timeoutLecturaMs()))
+                        .build())
+                .evictIdleConnections(MAX_INACTIVIDAD)
+                .setIOSessionListener(new ContadorConexiones(conexionesAbiertas))
+                .build();
+        this.httpClient.start();
     }
 
     @Override
     public double consultarCapacidadDisponible(Date fecha) {
+        try {
+            return consultarCapacidadDisponibleAsync(fecha).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new PlantaNoDisponibleException("Error consultando PlasSb", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha) {
+        return ejecutar(urlCapacidad + CodecFecha.formatear(fecha)).thenApply(r -> {
+            String cuerpo = r.getBodyText();
+            if (cuerpo == null || cuerpo.isBlank()) {
+                throw new IllegalStateException("PlasSb no tiene capacidad para esa fecha");
+            }
+            return Double.valueOf(cuerpo.trim());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<LocalDate, Double>> consultarCapacidadesRangoAsync(LocalDate desde, LocalDate hasta) {
+        String url = urlRango + CodecFecha.formatear(desde) + "&hasta=" + CodecFecha.formatear(hasta);
+        return ejecutar(url).thenApply(r -> {
+            Map<String, Double> cuerpo;
+            try {
+                cuerpo = JSON.readValue(r.getBodyBytes(), TIPO_RANGO);
+            } catch (Exception e) {
+                throw new IllegalStateException("Respuesta de rango de PlasSb no válida", e);
+            }
+            Map<LocalDate, Double> capacidades = new TreeMap<>();
+            cuerpo.forEach((fecha, capacidad) -> capacidades.put(CodecFecha.parsear(fecha), capacidad));
+            return capacidades;
+        });
+    }
+
+    @Override
+    public SuscripcionCambios suscribirCambios(OyenteCapacidades oyente) {
+        return new SuscripcionSse(urlCambios, nombre, timeoutConexionMs, oyente).iniciar();
+    }
 
-        SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy");
-        String fechaFormateada = formatter.format(fecha);
+    /**
+     * Lanza el GET y completa con la respuesta si es 200. Un 5xx es la planta caída
+     * (PlantaNoDisponibleException); cualquier otro código, una respuesta no válida.
+     */
+    private CompletableFuture<SimpleHttpResponse> ejecutar(String url) {
+        SimpleHttpRequest peticion = SimpleRequestBuilder.get(url).build();
+        CompletableFuture<SimpleHttpResponse> respuesta = new CompletableFuture<>();
 
-        String url = baseUrl + "/plasSb/capacidad?fecha=" + fechaFormateada;
+        // El cliente no ocupa ningún hilo mientras espera la respuesta
+        httpClient.execute(peticion, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse resultado) {
+                respuestas.incrementAndGet();
+                respuesta.complete(resultado);
+            }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " );
+            @Override
+            public void failed(Exception e) {
+                respuesta.completeExceptionally(e);
+            }
 
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+            @Override
+            public void cancelled() {
+                respuesta.cancel(false);
+            }
+        });
 
-        ResponseEntity<Double> response = restTemplate.exchange(
-                url,
-                HttpMethod.GET,
-                entity,
-                Double.class
-        );
+        return respuesta.thenApply(r -> {
+            if (r.getCode() >= HttpStatus.SC_SERVER_ERROR) {
+                throw new PlantaNoDisponibleException("PlasSb respondió " + r.getCode());
+            }
+            if (r.getCode() != HttpStatus.SC_OK) {
+                throw new IllegalStateException("PlasSb respondió " + r.getCode());
+            }
+            return r;
+        });
+    }
+
+    /**
+     * Cuenta las conexiones TCP que abre el cliente: el resto de respuestas
+     * llegaron por una conexión keep-alive reutilizada.
+     */
+    private static final class ContadorConexiones implements IOSessionListener {
+        private final AtomicLong abiertas;
+
+        ContadorConexiones(AtomicLong abiertas) {
+            this.abiertas = abiertas;
+        }
+
+        @Override
+        public void connected(IOSession sesion) {
+            abiertas.incrementAndGet();
+        }
+
+        @Override
+        public void startTls(IOSession sesion) {}
+
+        @Override
+        public void inputReady(IOSession sesion) {}
+
+        @Override
+        public void outputReady(IOSession sesion) {}
+
+        @Override
+        public void timeout(IOSession sesion) {}
+
+        @Override
+        public void exception(IOSession sesion, Exception e) {}
+
+        @Override
+        public void disconnected(IOSession sesion) {}
+    }
+
+    public long getConexionesNuevas() {
+        return conexionesAbiertas.get();
+    }
+
+    public long getConexionesReutilizadas() {
+        return Math.max(0, respuestas.get() - conexionesAbiertas.get());
+    }
 
-        return response.getBody();
+    /**
+     * Estado del pool: conexiones prestadas, libres, peticiones esperando y máximo.
+     */
+    public PoolStats getEstadoPool() {
+        return gestorConexiones.getTotalStats();
     }
 
     @Override
@@ -0,0 +1,197 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones TCP persistentes hacia ContSocket.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - El servidor (ClientHandler) ya atiende muchos comandos por conexión hasta recibir SALIR,
+ *   así que reutilizamos sockets en vez de abrir uno nuevo (handshake + TIME_WAIT) por consulta.
+ * - Un Semaphore limita el número total de conexiones prestadas a la vez.
+ * - Las conexiones libres se guardan en una pila (LIFO) para reutilizar siempre la más "caliente".
+ * - Un hilo de limpieza cierra las conexiones que llevan demasiado tiempo sin usarse.
+ */
+class PoolConexionesSocket {
+
+    /**
+     * Una conexión abierta con sus streams ya configurados.
+     */
+    static final class Conexion {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private volatile long ultimoUso;
+        // Ya se envió algún comando por ella: puede llevar tiempo en el pool y estar rota
+        private boolean usada;
+
+        private Conexion(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.out = new PrintWriter(socket.getOutputStream(), true);
+            this.ultimoUso = System.currentTimeMillis();
+        }
+
+        /**
+         * Envía un comando y espera su línea de respuesta.
+         *
+         * @return La respuesta, o null si el servidor cerró la conexión
+         */
+        String enviar(String comando) throws IOException {
+            usada = true;
+            out.println(comando);
+            if (out.checkError()) {
+                throw new IOException("Error al escribir en el socket");
+            }
+            return in.readLine();
+        }
+
+        boolean isUsada() {
+            return usada;
+        }
+    }
+
+    private final String host;
+    private final int puerto;
+    private final int timeoutConexionMs;
+    private final int timeoutLecturaMs;
+    private final long maxInactividadMs;
+
+    private final Semaphore permisos;
+    private final BlockingDeque<Conexion> libres;
+    private final ScheduledExecutorService limpieza;
+
+    // Métricas
+    private final AtomicLong creadas = new AtomicLong();
+    private final AtomicLong reutilizadas = new AtomicLong();
+
+    PoolConexionesSocket(String host, int puerto, int maxConexiones,
+                         int timeoutConexionMs, int timeoutLecturaMs, long maxInactividadMs) {
+        this.host = host;
+        this.puerto = puerto;
+        this.timeoutConexionMs = timeoutConexionMs;
+        this.timeoutLecturaMs = timeoutLecturaMs;
+        this.maxInactividadMs = maxInactividadMs;
+        this.permisos = new Semaphore(maxConexiones, true);
+        this.libres = new LinkedBlockingDeque<>(maxConexiones);
+
+        this.limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-socket-limpieza-" + host + ":" + puerto);
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1000, maxInactividadMs / 2);
+        limpieza.scheduleWithFixedDelay(this::expulsarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión sana del pool, o abre una nueva si no hay ninguna libre.
+     * Espera como mucho timeoutConexionMs a que quede un hueco libre.
+     */
+    Conexion obtener() throws IOException {
+        try {
+            if (!permisos.tryAcquire(timeoutConexionMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Pool de conexiones agotado (" + host + ":" + puerto + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando una conexión", e);
+        }
+
+        try {
+            Conexion conexion;
+            while ((conexion = libres.pollFirst()) != null) {
+                if (esValida(conexion)) {
+                    reutilizadas.incrementAndGet();
+                    return conexion;
+                }
+                cerrar(conexion);
+            }
+            return abrir();
+        } catch (IOException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool. Si ha fallado durante su uso se cierra,
+     * porque podría quedar una respuesta a medias en el stream.
+     */
+    void devolver(Conexion conexion, boolean sana) {
+        try {
+            conexion.ultimoUso = System.currentTimeMillis();
+            if (sana && esValida(conexion)) {
+                if (!libres.offerFirst(conexion)) {
+                    cerrar(conexion);
+                }
+            } else {
+                cerrar(conexion);
+            }
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private Conexion abrir() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, puerto), timeoutConexionMs);
+            socket.setSoTimeout(timeoutLecturaMs);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            Conexion conexion = new Conexion(socket);
+            creadas.incrementAndGet();
+            System.out.println("[SOCKET POOL] Nueva conexión a " + host + ":" + puerto);
+            return conexion;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Comprobación barata de salud: socket abierto y no inactivo más de lo permitido.
+     * Si el servidor la cerró sin avisarnos, lo detectará enviarComando al leer null.
+     */
+    private boolean esValida(Conexion conexion) {
+        Socket s = conexion.socket;
+        return s.isConnected() && !s.isClosed() && !s.isInputShutdown() && !s.isOutputShutdown()
+                && System.currentTimeMillis() - conexion.ultimoUso < maxInactividadMs;
+    }
+
+    private void expulsarInactivas() {
+        Iterator<Conexion> it = libres.iterator();
+        while (it.hasNext()) {
+            Conexion conexion = it.next();
+            if (!esValida(conexion) && libres.remove(conexion)) {
+                cerrar(conexion);
+            }
+        }
+    }
+
+    private void cerrar(Conexion conexion) {
+        try {
+            conexion.socket.close();
+        } catch (IOException e) {
+            System.err.println("[SOCKET POOL] Error al cerrar conexión: " + e.getMessage());
+        }
+    }
+
+    long getCreadas() {
+        return creadas.get();
+    }
+
+    long getReutilizadas() {
+        return reutilizadas.get();
+    }
+
+    int getLibres() {
+        return libres.size();
+    }
+}
@@ -0,0 +1,105 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.io.IOException;
+
+/**
+ * Conexión de larga duración por la que una planta empuja sus cambios de capacidad.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Un hilo propio por suscripción: lee bloqueado y no ocupa los hilos de las consultas
+ * - Si la conexión se cae se reintenta para siempre, esperando cada vez el doble
+ *   (de ESPERA_INICIAL_MS a ESPERA_MAXIMA_MS) para no saturar a una planta que arranca
+ * - Las plantas envían un latido cada 15 s: si pasa SILENCIO_MAXIMO_MS sin recibir nada
+ *   la conexión se da por muerta aunque TCP no se haya enterado
+ * - Cada vez que se conecta se pide al oyente que se sincronice, porque mientras estaba
+ *   desconectada pudo haber cambios que no llegaron
+ *
+ * Las subclases implementan el protocolo de cada planta (SSE en PlasSb, SUSCRIBIR en ContSocket).
+ */
+public abstract class SuscripcionCambios implements AutoCloseable {
+
+    private static final long ESPERA_INICIAL_MS = 1_000;
+    private static final long ESPERA_MAXIMA_MS = 30_000;
+    protected static final int SILENCIO_MAXIMO_MS = 45_000;
+
+    protected final String planta;
+    protected final OyenteCapacidades oyente;
+    // Se crea en iniciar(): en el constructor, ejecutar() vería una subclase a medio construir
+    private volatile Thread hilo;
+    private volatile boolean cerrada;
+    private volatile boolean conectada;
+
+    protected SuscripcionCambios(String planta, OyenteCapacidades oyente) {
+        this.planta = planta;
+        this.oyente = oyente;
+    }
+
+    /**
+     * Empieza a escuchar (se llama una vez, ya construida la subclase).
+     */
+    public SuscripcionCambios iniciar() {
+        hilo = Thread.ofPlatform().name("suscripcion-" + planta).daemon(true).start(this::ejecutar);
+        return this;
+    }
+
+    /**
+     * Conecta y procesa los cambios hasta que la conexión se cierre o falle.
+     * Debe llamar a conectada() en cuanto la planta confirme la suscripción.
+     */
+    protected abstract void escuchar() throws IOException;
+
+    /**
+     * Cierra la conexión actual (desbloquea a escuchar()).
+     */
+    protected abstract void cerrarConexion();
+
+    protected void conectada() {
+        conectada = true;
+        System.out.println("[SUSCRIPCIÓN] " + planta + " conectada: se reciben sus cambios de capacidad");
+        oyente.sincronizar();
+    }
+
+    public boolean isConectada() {
+        return conectada;
+    }
+
+    private void ejecutar() {
+        long espera = ESPERA_INICIAL_MS;
+        while (!cerrada) {
+            try {
+                escuchar();
+            } catch (IOException | RuntimeException e) {
+                if (!cerrada) {
+                    System.out.println("[SUSCRIPCIÓN] " + planta + ": " + e.getMessage());
+                }
+            } finally {
+                cerrarConexion();
+            }
+            if (conectada) {
+                conectada = false;
+                // Estuvo conectada: se vuelve a intentar enseguida
+                espera = ESPERA_INICIAL_MS;
+                oyente.desconectada();
+            }
+            if (cerrada) {
+                return;
+            }
+            try {
+                Thread.sleep(espera);
+            } catch (InterruptedException e) {
+                return;
+            }
+            espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+        }
+    }
+
+    @Override
+    public void close() {
+        cerrada = true;
+        cerrarConexion();
+        Thread h = hilo;
+        if (h != null) {
+            h.interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package es.deusto.sd.auctions.Gateway;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Suscripción SUSCRIBIR a ContSocket: una conexión propia (fuera del pool) por la que
+ * llegan líneas CAMBIO|dd-MM-yyyy|capacidad y LATIDO.
+ */
+class SuscripcionSocket extends SuscripcionCambios {
+
+    private final String host;
+    private final int puerto;
+    private final int timeoutConexionMs;
+    private volatile Socket socket;
+
+    SuscripcionSocket(String host, int puerto, String planta, int timeoutConexionMs, OyenteCapacidades oyente) {
+        super(planta, oyente);
+        this.host = host;
+        this.puerto = puerto;
+        this.timeoutConexionMs = timeoutConexionMs;
+    }
+
+    @Override
+    protected void escuchar() throws IOException {
+        Socket s = new Socket();
+        socket = s;
+        s.connect(new InetSocketAddress(host, puerto), timeoutConexionMs);
+        s.setSoTimeout(SILENCIO_MAXIMO_MS);
+
+        OutputStream out = s.getOutputStream();
+        out.write("SUSCRIBIR\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        String respuesta = in.readLine();
+        if (respuesta == null || !respuesta.startsWith("OK|")) {
+            throw new IOException("ContSocket rechazó la suscripción: " + respuesta);
+        }
+        conectada();
+
+        String linea;
+        while ((linea = in.readLine()) != null) {
+            if (linea.startsWith("CAMBIO|")) {
+                String[] partes = linea.split("\\|");
+                oyente.cambio(CodecFecha.parsear(partes[1]), Double.parseDouble(partes[2]));
+            } else if (linea.startsWith("ERROR|")) {
+                // El servidor nos da de baja (por ejemplo, por no leer a tiempo)
+                throw new IOException("ContSocket cerró la suscripción: " + linea.substring(6));
+            }
+            // LATIDO: solo mantiene viva la conexión
+        }
+        throw new IOException("ContSocket cerró la suscripción");
+    }
+
+    @Override
+    protected void cerrarConexion() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // ya cerrado
+            }
+        }
+    }
+}
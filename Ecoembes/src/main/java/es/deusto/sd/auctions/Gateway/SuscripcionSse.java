@@ -0,0 +1,87 @@
+package es.deusto.sd.auctions.Gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Suscripción a GET /plasSb/capacidad/cambios (Server-Sent Events).
+ *
+ * Se usa HttpURLConnection y no el cliente asíncrono del gateway: es una única conexión
+ * que se lee bloqueada en su propio hilo, y su plazo de lectura detecta una planta muda.
+ */
+class SuscripcionSse extends SuscripcionCambios {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final String url;
+    private final int timeoutConexionMs;
+    private volatile HttpURLConnection conexion;
+
+    SuscripcionSse(String url, String planta, int timeoutConexionMs, OyenteCapacidades oyente) {
+        super(planta, oyente);
+        this.url = url;
+        this.timeoutConexionMs = timeoutConexionMs;
+    }
+
+    @Override
+    protected void escuchar() throws IOException {
+        HttpURLConnection c = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        conexion = c;
+        c.setConnectTimeout(timeoutConexionMs);
+        c.setReadTimeout(SILENCIO_MAXIMO_MS);
+        c.setRequestProperty("Accept", "text/event-stream");
+        if (c.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("PlasSb respondió " + c.getResponseCode() + " a la suscripción");
+        }
+        conectada();
+
+        try (BufferedReader lector = new BufferedReader(
+                new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8))) {
+            String evento = "message";
+            StringBuilder datos = new StringBuilder();
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.isEmpty()) {
+                    // Línea en blanco: fin del evento
+                    procesar(evento, datos.toString());
+                    evento = "message";
+                    datos.setLength(0);
+                } else if (linea.startsWith("event:")) {
+                    evento = linea.substring(6).trim();
+                } else if (linea.startsWith("data:")) {
+                    datos.append(linea.substring(5).trim());
+                }
+                // Las líneas que empiezan por ':' son latidos
+            }
+        }
+        throw new IOException("PlasSb cerró la suscripción");
+    }
+
+    private void procesar(String evento, String datos) throws IOException {
+        switch (evento) {
+            case "cambio" -> {
+                JsonNode cambio = JSON.readTree(datos);
+                oyente.cambio(CodecFecha.parsear(cambio.get("fecha").asText()), cambio.get("peso").asDouble());
+            }
+            case "recargar" -> oyente.sincronizar();
+            default -> {
+                // Eventos desconocidos se ignoran
+            }
+        }
+    }
+
+    @Override
+    protected void cerrarConexion() {
+        HttpURLConnection c = conexion;
+        if (c != null) {
+            c.disconnect();
+        }
+    }
+}
@@ -2,10 +2,23 @@ package es.deusto.sd.auctions.dao;
 
 import es.deusto.sd.auctions.entity.Camion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
+import java.util.List;
+
 @Repository
 public interface CamionRepository extends JpaRepository<Camion, Long> {
     //Verificar si existe un camión con este id
     boolean existsById(Long id);
+
+    //Carga de los camiones que salen a partir de una fecha (lo ya comprometido con las plantas)
+    @Query("SELECT new es.deusto.sd.auctions.dao.CargaCamion(c.planta, c.fecha, c.toneladas) "
+            + "FROM Camion c WHERE c.fecha >= :desde")
+    List<CargaCamion> findCargasDesde(Date desde);
+
+    //Ids de los contenedores que van en camiones que salen a partir de una fecha
+    @Query("SELECT ct.id FROM Camion c JOIN c.contenedores ct WHERE c.fecha >= :desde")
+    List<Long> findContenedoresDesde(Date desde);
 }
@@ -0,0 +1,9 @@
+package es.deusto.sd.auctions.dao;
+
+import java.util.Date;
+
+/**
+ * Proyección de un camión ya creado: planta, fecha y las toneladas que cargaba al crearlo.
+ */
+public record CargaCamion(String planta, Date fecha, double toneladas) {
+}
@@ -1,9 +1,61 @@
 package es.deusto.sd.auctions.dao;
 
+import es.deusto.sd.auctions.dto.ContenedorDTO;
 import es.deusto.sd.auctions.entity.Contenedor;
+import es.deusto.sd.auctions.entity.Estado;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface ContenedorRepository extends JpaRepository<Contenedor, Long> {
+    //Id y cantidad actual de los contenedores con algo dentro, en una sola consulta
+    @Query("SELECT new es.deusto.sd.auctions.dao.PesoContenedor(c.id, e.cantidad) "
+            + "FROM Contenedor c JOIN c.estado e WHERE e.cantidad > 0")
+    List<PesoContenedor> findPesos();
+
+    //Listado paginado por keyset (proyección a ContenedorDTO, solo contenedores con estado)
+    /*
+     * Una consulta por combinación de filtro y orden: cada una recorre su índice en el orden del
+     * ORDER BY y se para en el límite. Por id, la página empieza después de desdeId (0 la primera).
+     * Por llenado (de más a menos lleno) empieza después de (desdeCantidad, desdeId), la primera con
+     * los dos al máximo.
+     */
+    @Query("SELECT new es.deusto.sd.auctions.dto.ContenedorDTO(c.id, c.cantidad, c.llenado, e.fecha) "
+            + "FROM Contenedor c JOIN c.estado e WHERE c.id > :desdeId ORDER BY c.id")
+    List<ContenedorDTO> findPagina(@Param("desdeId") long desdeId, Limit limite);
+
+    @Query("SELECT new es.deusto.sd.auctions.dto.ContenedorDTO(c.id, c.cantidad, c.llenado, e.fecha) "
+            + "FROM Contenedor c JOIN c.estado e WHERE c.llenado = :color AND c.id > :desdeId "
+            + "ORDER BY c.llenado, c.id")
+    List<ContenedorDTO> findPaginaPorColor(@Param("color") Estado.tipo color, @Param("desdeId") long desdeId,
+                                           Limit limite);
+
+    @Query("SELECT new es.deusto.sd.auctions.dto.ContenedorDTO(c.id, c.cantidad, c.llenado, e.fecha) "
+            + "FROM Contenedor c JOIN c.estado e WHERE c.cantidad <= :desdeCantidad "
+            + "AND (c.cantidad < :desdeCantidad OR c.id < :desdeId) ORDER BY c.cantidad DESC, c.id DESC")
+    List<ContenedorDTO> findPaginaPorLlenado(@Param("desdeCantidad") double desdeCantidad,
+                                             @Param("desdeId") long desdeId, Limit limite);
+
+    @Query("SELECT new es.deusto.sd.auctions.dto.ContenedorDTO(c.id, c.cantidad, c.llenado, e.fecha) "
+            + "FROM Contenedor c JOIN c.estado e WHERE c.llenado = :color AND c.cantidad <= :desdeCantidad "
+            + "AND (c.cantidad < :desdeCantidad OR c.id < :desdeId) "
+            + "ORDER BY c.llenado DESC, c.cantidad DESC, c.id DESC")
+    List<ContenedorDTO> findPaginaPorColorYLlenado(@Param("color") Estado.tipo color,
+                                                   @Param("desdeCantidad") double desdeCantidad,
+                                                   @Param("desdeId") long desdeId, Limit limite);
+
+    //Copia cantidad y color del estado actual en los contenedores que aún no los tienen (bases de datos anteriores)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE contenedor c SET cantidad = (SELECT e.cantidad FROM estado e WHERE e.id = c.estado_id), "
+            + "llenado = (SELECT e.estado FROM estado e WHERE e.id = c.estado_id) "
+            + "WHERE c.estado_id IS NOT NULL AND c.cantidad IS NULL", nativeQuery = true)
+    int completarEstadoActual();
 }
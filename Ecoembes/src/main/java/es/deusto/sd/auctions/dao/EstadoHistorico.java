@@ -0,0 +1,12 @@
+package es.deusto.sd.auctions.dao;
+
+import java.util.Date;
+
+/**
+ * Proyección de un estado del histórico de un contenedor.
+ * Se lee directamente del índice (contenedor_id, fecha, id, cantidad), sin cargar entidades:
+ * un Estado arrastra su Contenedor EAGER y este a su vez su estado actual.
+ * El id solo sirve de desempate para paginar por keyset.
+ */
+public record EstadoHistorico(long id, Date fecha, double cantidad) {
+}
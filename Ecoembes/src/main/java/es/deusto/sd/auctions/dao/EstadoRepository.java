@@ -1,7 +1,9 @@
 package es.deusto.sd.auctions.dao;
-import es.deusto.sd.auctions.entity.Contenedor;
 import es.deusto.sd.auctions.entity.Estado;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Date;
@@ -9,10 +11,20 @@ import java.util.List;
 
 @Repository
 public interface EstadoRepository extends JpaRepository<Estado, Long> {
-    // Spring genera automáticamente la query basándose en el nombre
-    List<Estado> findByContenedorAndFechaBetween(
-            Contenedor contenedor,
-            Date fechaInicio,
-            Date fechaFin
-    );
-}
\ No newline at end of file
+    //Página del histórico de un contenedor posterior a (fecha, id), en orden cronológico (keyset)
+    /*
+     * La primera página se pide con desdeId = 0 y desde = inicio. Las siguientes, con la fecha y el id
+     * del último estado recibido. fecha >= :desde recorre el índice (contenedor_id, fecha, id) por rango y
+     * la condición sobre el id solo descarta los de la misma fecha ya devueltos.
+     * El ORDER BY repite las columnas del índice (también contenedor_id, aunque es fijo): así H2 lee
+     * en el orden del índice y se para en el límite en vez de ordenar todo lo que queda del rango.
+     */
+    @Query("SELECT new es.deusto.sd.auctions.dao.EstadoHistorico(e.id, e.fecha, e.cantidad) FROM Estado e "
+            + "WHERE e.contenedor.id = :contenedor AND e.fecha >= :desde AND e.fecha <= :fin "
+            + "AND (e.fecha > :desde OR e.id > :desdeId) ORDER BY e.contenedor.id, e.fecha, e.id")
+    List<EstadoHistorico> findHistorico(@Param("contenedor") long contenedor,
+                                        @Param("desde") Date desde,
+                                        @Param("desdeId") long desdeId,
+                                        @Param("fin") Date fin,
+                                        Limit limite);
+}
@@ -0,0 +1,8 @@
+package es.deusto.sd.auctions.dao;
+
+/**
+ * Proyección de un contenedor con la cantidad (nivel de llenado, 0.0-1.0) de su estado actual.
+ * Se lee directamente con la consulta, sin cargar entidades.
+ */
+public record PesoContenedor(long id, double cantidad) {
+}
@@ -0,0 +1,25 @@
+package es.deusto.sd.auctions.dao;
+import es.deusto.sd.auctions.entity.ResumenEstado;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ResumenEstadoRepository extends JpaRepository<ResumenEstado, Long> {
+    //Resúmenes por hora o por día de un contenedor que empiezan en [desde, hasta), en orden cronológico
+    /*
+     * Igual que EstadoRepository.findHistorico, el ORDER BY repite las columnas del índice
+     * (contenedor_id, resolucion, inicio) para que H2 lea por rango en el orden del índice sin ordenar.
+     */
+    @Query("SELECT new es.deusto.sd.auctions.dao.ResumenHistorico(r.inicio, r.lecturas, r.minimo, r.maximo, r.suma, "
+            + "r.ultimaCantidad) FROM ResumenEstado r WHERE r.contenedor.id = :contenedor AND r.resolucion = :resolucion "
+            + "AND r.inicio >= :desde AND r.inicio < :hasta ORDER BY r.contenedor.id, r.resolucion, r.inicio")
+    List<ResumenHistorico> findResumenes(@Param("contenedor") long contenedor,
+                                         @Param("resolucion") ResumenEstado.resolucion resolucion,
+                                         @Param("desde") Date desde,
+                                         @Param("hasta") Date hasta);
+}
@@ -0,0 +1,10 @@
+package es.deusto.sd.auctions.dao;
+
+import java.util.Date;
+
+/**
+ * Proyección de un resumen por hora o día del histórico de un contenedor, sin cargar la entidad.
+ */
+public record ResumenHistorico(Date inicio, long lecturas, double minimo, double maximo, double suma,
+                               double ultimaCantidad) {
+}
@@ -0,0 +1,59 @@
+package es.deusto.sd.auctions.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Un camión dentro de una creación por lotes: como CamionRequestDTO pero indicando la planta.
+ * Los camiones de /plantas/plan_camiones tienen este mismo formato.
+ */
+@Schema(description = "Camión a crear dentro de un lote")
+public class CamionLoteDTO {
+
+    @Schema(description = "Planta de destino", example = "PlasSb", required = true)
+    private String planta;
+
+    @Schema(description = "Fecha de asignación del camión", example = "2025-01-15", required = true)
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private Date fecha;
+
+    @Schema(description = "IDs de los contenedores del camión", example = "[1001, 1002, 1003]", required = true)
+    private List<Long> contenedores;
+
+    // Constructor vacío (requerido por Jackson para deserialización)
+    public CamionLoteDTO() {
+    }
+
+    public CamionLoteDTO(String planta, Date fecha, List<Long> contenedores) {
+        this.planta = planta;
+        this.fecha = fecha;
+        this.contenedores = contenedores;
+    }
+
+    public String getPlanta() {
+        return planta;
+    }
+
+    public void setPlanta(String planta) {
+        this.planta = planta;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(Date fecha) {
+        this.fecha = fecha;
+    }
+
+    public List<Long> getContenedores() {
+        return contenedores;
+    }
+
+    public void setContenedores(List<Long> contenedores) {
+        this.contenedores = contenedores;
+    }
+}
@@ -0,0 +1,41 @@
+package es.deusto.sd.auctions.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Un camión del plan: planta, fecha y contenedores, en el mismo formato que CamionRequestDTO
+ * para poder crearlo tal cual con /plantas/{planta}/camiones_nuevo.
+ */
+public class CamionPlanDTO {
+    private String planta;
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private Date fecha;
+    private List<Long> contenedores;
+    private double toneladas;
+
+    public CamionPlanDTO(String planta, Date fecha, List<Long> contenedores, double toneladas) {
+        this.planta = planta;
+        this.fecha = fecha;
+        this.contenedores = contenedores;
+        this.toneladas = toneladas;
+    }
+
+    public String getPlanta() {
+        return planta;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    public List<Long> getContenedores() {
+        return contenedores;
+    }
+
+    public double getToneladas() {
+        return toneladas;
+    }
+}
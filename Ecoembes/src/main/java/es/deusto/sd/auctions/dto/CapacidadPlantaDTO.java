@@ -0,0 +1,41 @@
+package es.deusto.sd.auctions.dto;
+
+/**
+ * Capacidad de una planta en la consulta a todas las plantas a la vez.
+ * Si la planta falló o no respondió a tiempo, capacidad es null y error explica el motivo.
+ */
+public class CapacidadPlantaDTO {
+    private String nombre;
+    private Double capacidad;
+    private String error;
+
+    public CapacidadPlantaDTO(String nombre, Double capacidad, String error) {
+        this.nombre = nombre;
+        this.capacidad = capacidad;
+        this.error = error;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public Double getCapacidad() {
+        return capacidad;
+    }
+
+    public void setCapacidad(Double capacidad) {
+        this.capacidad = capacidad;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
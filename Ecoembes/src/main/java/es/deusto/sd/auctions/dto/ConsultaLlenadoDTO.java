@@ -0,0 +1,32 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de una consulta al índice en memoria del estado actual de los contenedores.
+ */
+public class ConsultaLlenadoDTO {
+    private int total;
+    private long microsegundos;
+    private List<ContenedorDTO> contenedores;
+
+    public ConsultaLlenadoDTO(int total, long microsegundos, List<ContenedorDTO> contenedores) {
+        this.total = total;
+        this.microsegundos = microsegundos;
+        this.contenedores = contenedores;
+    }
+
+    // Contenedores que cumplen la condición (aunque solo se devuelvan los primeros)
+    public int getTotal() {
+        return total;
+    }
+
+    // Lo que tardó la consulta en memoria
+    public long getMicrosegundos() {
+        return microsegundos;
+    }
+
+    public List<ContenedorDTO> getContenedores() {
+        return contenedores;
+    }
+}
@@ -2,15 +2,28 @@ package es.deusto.sd.auctions.dto;
 
 import es.deusto.sd.auctions.entity.Estado;
 
+import java.util.Date;
+
 public class ContenedorDTO {
     long id;
     double cantidad;
+    // Color y fecha del estado actual (null si no se han leído)
+    Estado.tipo llenado;
+    Date fecha;
 
     public ContenedorDTO(long id, double ultimo_estado) {
         this.id = id;
         this.cantidad = ultimo_estado;
     }
 
+    // Proyección del listado paginado (ContenedorRepository)
+    public ContenedorDTO(long id, Double cantidad, Estado.tipo llenado, Date fecha) {
+        this.id = id;
+        this.cantidad = cantidad;
+        this.llenado = llenado;
+        this.fecha = fecha;
+    }
+
     public long getId() {
         return id;
     }
@@ -26,4 +39,20 @@ public class ContenedorDTO {
     public void setCantidad(double ultimo_estado) {
         this.cantidad = ultimo_estado;
     }
+
+    public Estado.tipo getLlenado() {
+        return llenado;
+    }
+
+    public void setLlenado(Estado.tipo llenado) {
+        this.llenado = llenado;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(Date fecha) {
+        this.fecha = fecha;
+    }
 }
@@ -1,16 +1,37 @@
 package es.deusto.sd.auctions.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.Date;
 
 public class EstadoDTO {
     private double cantidad;
     private Date fecha;
+    // Solo en los resúmenes por hora o día (null en un estado suelto, y entonces no se envían)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long lecturas;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double minimo;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double maximo;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double media;
 
     public EstadoDTO(Double cantidad, Date fecha) {
         this.fecha = fecha;
         this.cantidad = cantidad;
     }
 
+    // Resumen de un periodo: fecha es su comienzo y cantidad la de su última lectura
+    public EstadoDTO(double cantidad, Date fecha, long lecturas, double minimo, double maximo, double media) {
+        this.cantidad = cantidad;
+        this.fecha = fecha;
+        this.lecturas = lecturas;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.media = media;
+    }
+
     public double getCantidad() {
         return cantidad;
     }
@@ -26,4 +47,20 @@ public class EstadoDTO {
     public void setFecha(Date fecha) {
         this.fecha = fecha;
     }
+
+    public Long getLecturas() {
+        return lecturas;
+    }
+
+    public Double getMinimo() {
+        return minimo;
+    }
+
+    public Double getMaximo() {
+        return maximo;
+    }
+
+    public Double getMedia() {
+        return media;
+    }
 }
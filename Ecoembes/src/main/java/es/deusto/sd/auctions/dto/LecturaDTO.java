@@ -0,0 +1,55 @@
+package es.deusto.sd.auctions.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Date;
+
+/**
+ * Lectura de llenado que envía el sensor de un contenedor.
+ */
+@Schema(description = "Lectura del sensor de un contenedor")
+public class LecturaDTO {
+
+    @Schema(description = "ID del contenedor", example = "1001", required = true)
+    private Long contenedorId;
+
+    @Schema(description = "Momento de la lectura (ISO-8601 o epoch en ms)", example = "2025-01-15T10:30:00", required = true)
+    private Date fecha;
+
+    @Schema(description = "Cantidad medida", example = "45.5", required = true)
+    private Double cantidad;
+
+    // Constructor vacío (requerido por Jackson para deserialización)
+    public LecturaDTO() {
+    }
+
+    public LecturaDTO(Long contenedorId, Date fecha, Double cantidad) {
+        this.contenedorId = contenedorId;
+        this.fecha = fecha;
+        this.cantidad = cantidad;
+    }
+
+    public Long getContenedorId() {
+        return contenedorId;
+    }
+
+    public void setContenedorId(Long contenedorId) {
+        this.contenedorId = contenedorId;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(Date fecha) {
+        this.fecha = fecha;
+    }
+
+    public Double getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Double cantidad) {
+        this.cantidad = cantidad;
+    }
+}
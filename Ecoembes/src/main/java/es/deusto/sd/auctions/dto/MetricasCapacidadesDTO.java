@@ -0,0 +1,69 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.List;
+
+/**
+ * Contadores de la caché de capacidades y de las consultas a las plantas.
+ */
+public class MetricasCapacidadesDTO {
+    private long aciertos;
+    private long obsoletas;
+    private long fallos;
+    private long peticionesPlanta;
+    private long coalescidas;
+    private int entradas;
+    private long cambiosRecibidos;
+    private List<MetricasPlantaDTO> plantas;
+
+    public MetricasCapacidadesDTO(long aciertos, long obsoletas, long fallos,
+                                  long peticionesPlanta, long coalescidas, int entradas,
+                                  long cambiosRecibidos, List<MetricasPlantaDTO> plantas) {
+        this.aciertos = aciertos;
+        this.obsoletas = obsoletas;
+        this.fallos = fallos;
+        this.peticionesPlanta = peticionesPlanta;
+        this.coalescidas = coalescidas;
+        this.entradas = entradas;
+        this.cambiosRecibidos = cambiosRecibidos;
+        this.plantas = plantas;
+    }
+
+    // Llamadas servidas con una entrada fresca
+    public long getAciertos() {
+        return aciertos;
+    }
+
+    // Llamadas servidas con una entrada obsoleta mientras se refrescaba
+    public long getObsoletas() {
+        return obsoletas;
+    }
+
+    // Llamadas que tuvieron que esperar a la planta
+    public long getFallos() {
+        return fallos;
+    }
+
+    // Consultas que llegaron de verdad a las plantas
+    public long getPeticionesPlanta() {
+        return peticionesPlanta;
+    }
+
+    // Llamadas que se unieron a una consulta ya en vuelo en vez de lanzar otra
+    public long getCoalescidas() {
+        return coalescidas;
+    }
+
+    public int getEntradas() {
+        return entradas;
+    }
+
+    // Cambios de capacidad que han empujado las plantas suscritas
+    public long getCambiosRecibidos() {
+        return cambiosRecibidos;
+    }
+
+    // Circuit breaker, bulkhead y hedging de cada planta
+    public List<MetricasPlantaDTO> getPlantas() {
+        return plantas;
+    }
+}
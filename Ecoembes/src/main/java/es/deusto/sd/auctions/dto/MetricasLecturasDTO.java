@@ -0,0 +1,70 @@
+package es.deusto.sd.auctions.dto;
+
+/**
+ * Contadores de la ingesta de lecturas de los sensores.
+ */
+public class MetricasLecturasDTO {
+    private long aceptadas;
+    private long rechazadas;
+    private long guardadas;
+    private long descartadas;
+    private long fallidas;
+    private int enCola;
+    private int capacidadCola;
+    private long tandas;
+    private long msUltimaTanda;
+
+    public MetricasLecturasDTO(long aceptadas, long rechazadas, long guardadas, long descartadas,
+                               long fallidas, int enCola, int capacidadCola, long tandas, long msUltimaTanda) {
+        this.aceptadas = aceptadas;
+        this.rechazadas = rechazadas;
+        this.guardadas = guardadas;
+        this.descartadas = descartadas;
+        this.fallidas = fallidas;
+        this.enCola = enCola;
+        this.capacidadCola = capacidadCola;
+        this.tandas = tandas;
+        this.msUltimaTanda = msUltimaTanda;
+    }
+
+    // Lecturas que entraron en la cola
+    public long getAceptadas() {
+        return aceptadas;
+    }
+
+    // Lecturas rechazadas con 429 porque la cola estaba llena
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    // Lecturas ya escritas en la tabla estado
+    public long getGuardadas() {
+        return guardadas;
+    }
+
+    // Lecturas de contenedores que no existen (no se guardan)
+    public long getDescartadas() {
+        return descartadas;
+    }
+
+    // Lecturas perdidas porque falló la escritura de su tanda
+    public long getFallidas() {
+        return fallidas;
+    }
+
+    public int getEnCola() {
+        return enCola;
+    }
+
+    public int getCapacidadCola() {
+        return capacidadCola;
+    }
+
+    public long getTandas() {
+        return tandas;
+    }
+
+    public long getMsUltimaTanda() {
+        return msUltimaTanda;
+    }
+}
@@ -0,0 +1,94 @@
+package es.deusto.sd.auctions.dto;
+
+/**
+ * Estado de resiliencia del gateway de una planta.
+ */
+public class MetricasPlantaDTO {
+    private String nombre;
+    private String estadoCircuito;
+    private int fallosSeguidos;
+    private long rechazadasCircuito;
+    private long rechazadasBulkhead;
+    private int enCurso;
+    private long hedgesLanzados;
+    private long hedgesGanados;
+    private long conexionesNuevas;
+    private long conexionesReutilizadas;
+    private int conexionesLibres;
+    private boolean suscrita;
+
+    public MetricasPlantaDTO(String nombre, String estadoCircuito, int fallosSeguidos,
+                             long rechazadasCircuito, long rechazadasBulkhead, int enCurso,
+                             long hedgesLanzados, long hedgesGanados,
+                             long conexionesNuevas, long conexionesReutilizadas, int conexionesLibres,
+                             boolean suscrita) {
+        this.nombre = nombre;
+        this.estadoCircuito = estadoCircuito;
+        this.fallosSeguidos = fallosSeguidos;
+        this.rechazadasCircuito = rechazadasCircuito;
+        this.rechazadasBulkhead = rechazadasBulkhead;
+        this.enCurso = enCurso;
+        this.hedgesLanzados = hedgesLanzados;
+        this.hedgesGanados = hedgesGanados;
+        this.conexionesNuevas = conexionesNuevas;
+        this.conexionesReutilizadas = conexionesReutilizadas;
+        this.conexionesLibres = conexionesLibres;
+        this.suscrita = suscrita;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    // CERRADO, ABIERTO o SEMIABIERTO
+    public String getEstadoCircuito() {
+        return estadoCircuito;
+    }
+
+    public int getFallosSeguidos() {
+        return fallosSeguidos;
+    }
+
+    // Consultas rechazadas al momento por tener el circuito abierto
+    public long getRechazadasCircuito() {
+        return rechazadasCircuito;
+    }
+
+    // Consultas rechazadas por tener ya el máximo de consultas en curso
+    public long getRechazadasBulkhead() {
+        return rechazadasBulkhead;
+    }
+
+    public int getEnCurso() {
+        return enCurso;
+    }
+
+    public long getHedgesLanzados() {
+        return hedgesLanzados;
+    }
+
+    // Segundos intentos que respondieron antes que el primero
+    public long getHedgesGanados() {
+        return hedgesGanados;
+    }
+
+    // Consultas que tuvieron que abrir una conexión nueva con la planta
+    public long getConexionesNuevas() {
+        return conexionesNuevas;
+    }
+
+    // Consultas que reutilizaron una conexión keep-alive ya abierta
+    public long getConexionesReutilizadas() {
+        return conexionesReutilizadas;
+    }
+
+    // Conexiones abiertas esperando en el pool la siguiente consulta
+    public int getConexionesLibres() {
+        return conexionesLibres;
+    }
+
+    // La planta empuja sus cambios de capacidad (suscripción conectada)
+    public boolean isSuscrita() {
+        return suscrita;
+    }
+}
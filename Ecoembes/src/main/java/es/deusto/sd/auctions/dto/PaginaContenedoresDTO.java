@@ -0,0 +1,25 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.List;
+
+/**
+ * Una página del listado de contenedores y el cursor para pedir la siguiente.
+ */
+public class PaginaContenedoresDTO {
+    private List<ContenedorDTO> contenedores;
+    private String siguienteCursor;
+
+    public PaginaContenedoresDTO(List<ContenedorDTO> contenedores, String siguienteCursor) {
+        this.contenedores = contenedores;
+        this.siguienteCursor = siguienteCursor;
+    }
+
+    public List<ContenedorDTO> getContenedores() {
+        return contenedores;
+    }
+
+    // Null si es la última página
+    public String getSiguienteCursor() {
+        return siguienteCursor;
+    }
+}
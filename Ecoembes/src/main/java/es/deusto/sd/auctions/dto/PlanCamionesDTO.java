@@ -0,0 +1,66 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.List;
+
+/**
+ * Reparto propuesto de los contenedores en camiones hacia las plantas.
+ */
+public class PlanCamionesDTO {
+    private String heuristica;
+    private double toneladasAsignadas;
+    private int contenedoresAsignados;
+    private double toneladasSinAsignar;
+    private int contenedoresSinAsignar;
+    private long milisegundos;
+    private List<CamionPlanDTO> camiones;
+    private List<String> avisos;
+
+    public PlanCamionesDTO(String heuristica, double toneladasAsignadas, int contenedoresAsignados,
+                           double toneladasSinAsignar, int contenedoresSinAsignar, long milisegundos,
+                           List<CamionPlanDTO> camiones, List<String> avisos) {
+        this.heuristica = heuristica;
+        this.toneladasAsignadas = toneladasAsignadas;
+        this.contenedoresAsignados = contenedoresAsignados;
+        this.toneladasSinAsignar = toneladasSinAsignar;
+        this.contenedoresSinAsignar = contenedoresSinAsignar;
+        this.milisegundos = milisegundos;
+        this.camiones = camiones;
+        this.avisos = avisos;
+    }
+
+    // Heurística de reparto que más toneladas consiguió
+    public String getHeuristica() {
+        return heuristica;
+    }
+
+    public double getToneladasAsignadas() {
+        return toneladasAsignadas;
+    }
+
+    public int getContenedoresAsignados() {
+        return contenedoresAsignados;
+    }
+
+    // Lo que no cabe en ninguna planta dentro del horizonte
+    public double getToneladasSinAsignar() {
+        return toneladasSinAsignar;
+    }
+
+    public int getContenedoresSinAsignar() {
+        return contenedoresSinAsignar;
+    }
+
+    // Tiempo de cálculo del plan, incluidas las consultas de capacidad
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    public List<CamionPlanDTO> getCamiones() {
+        return camiones;
+    }
+
+    // (planta, día) que no se han podido consultar y no entran en el plan
+    public List<String> getAvisos() {
+        return avisos;
+    }
+}
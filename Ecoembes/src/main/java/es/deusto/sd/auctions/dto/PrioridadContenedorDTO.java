@@ -0,0 +1,53 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.Date;
+
+/**
+ * Un contenedor en la cola de recogida: su última lectura y cuándo se prevé que se llene.
+ */
+public class PrioridadContenedorDTO {
+    private long id;
+    private double cantidad;
+    private Date fecha;
+    private Double tasaHora;
+    private Date previstoLleno;
+    private double horasRestantes;
+
+    public PrioridadContenedorDTO(long id, double cantidad, Date fecha, Double tasaHora, Date previstoLleno,
+                                  double horasRestantes) {
+        this.id = id;
+        this.cantidad = cantidad;
+        this.fecha = fecha;
+        this.tasaHora = tasaHora;
+        this.previstoLleno = previstoLleno;
+        this.horasRestantes = horasRestantes;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // Cantidad y fecha de la última lectura
+    public double getCantidad() {
+        return cantidad;
+    }
+
+    public Date getFecha() {
+        return fecha;
+    }
+
+    // Velocidad de llenado estimada, en cantidad por hora (null si aún no hay dos lecturas seguidas)
+    public Double getTasaHora() {
+        return tasaHora;
+    }
+
+    // Momento en que se llenará (o en que se llenó, si ya está lleno)
+    public Date getPrevistoLleno() {
+        return previstoLleno;
+    }
+
+    // Horas desde ahora hasta previstoLleno (negativas si ya está lleno)
+    public double getHorasRestantes() {
+        return horasRestantes;
+    }
+}
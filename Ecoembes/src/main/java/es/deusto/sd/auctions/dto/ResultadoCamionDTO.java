@@ -0,0 +1,50 @@
+package es.deusto.sd.auctions.dto;
+
+/**
+ * Resultado de un camión dentro de una creación por lotes, en el mismo orden que la petición.
+ * estado sigue los códigos HTTP de camiones_nuevo: 201 creado, 400 datos inválidos,
+ * 409 no cabe en la planta, 503 la planta no responde.
+ */
+public class ResultadoCamionDTO {
+    private int indice;
+    private String planta;
+    private int estado;
+    private Long id;
+    private double toneladas;
+    private String error;
+
+    public ResultadoCamionDTO(int indice, String planta, int estado, Long id, double toneladas, String error) {
+        this.indice = indice;
+        this.planta = planta;
+        this.estado = estado;
+        this.id = id;
+        this.toneladas = toneladas;
+        this.error = error;
+    }
+
+    // Posición del camión en la petición
+    public int getIndice() {
+        return indice;
+    }
+
+    public String getPlanta() {
+        return planta;
+    }
+
+    public int getEstado() {
+        return estado;
+    }
+
+    // Id del camión creado (null si no se creó)
+    public Long getId() {
+        return id;
+    }
+
+    public double getToneladas() {
+        return toneladas;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
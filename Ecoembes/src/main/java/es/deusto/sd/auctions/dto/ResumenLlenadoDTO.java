@@ -0,0 +1,32 @@
+package es.deusto.sd.auctions.dto;
+
+import java.util.Map;
+
+/**
+ * Cuántos contenedores hay de cada color ahora mismo, según el índice en memoria.
+ */
+public class ResumenLlenadoDTO {
+    private int contenedores;
+    private Map<String, Integer> porColor;
+    private long msConstruccion;
+
+    public ResumenLlenadoDTO(int contenedores, Map<String, Integer> porColor, long msConstruccion) {
+        this.contenedores = contenedores;
+        this.porColor = porColor;
+        this.msConstruccion = msConstruccion;
+    }
+
+    // Contenedores en el índice (también los que aún no tienen estado)
+    public int getContenedores() {
+        return contenedores;
+    }
+
+    public Map<String, Integer> getPorColor() {
+        return porColor;
+    }
+
+    // Lo que tardó en cargarse el índice al arrancar
+    public long getMsConstruccion() {
+        return msConstruccion;
+    }
+}
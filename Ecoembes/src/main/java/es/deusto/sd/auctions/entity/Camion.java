@@ -26,6 +26,11 @@ public class Camion {
     @Column(name = "fecha", nullable = false)
     private Date fecha;
 
+    // Toneladas que carga al crearlo: lo que queda comprometido con la planta ese día,
+    // aunque después cambie el estado de sus contenedores
+    @Column(name = "toneladas", nullable = false, columnDefinition = "DOUBLE PRECISION DEFAULT 0")
+    private double toneladas;
+
     public List<Contenedor> getContenedores() {
         return contenedores;
     }
@@ -5,6 +5,12 @@ import jakarta.persistence.*;
 import java.util.*;
 
 @Entity
+// Índices del listado paginado: por color (en orden de id) y por nivel de llenado (con o sin color)
+@Table(indexes = {
+        @Index(name = "idx_contenedor_llenado", columnList = "llenado, id"),
+        @Index(name = "idx_contenedor_cantidad", columnList = "cantidad, id"),
+        @Index(name = "idx_contenedor_llenado_cantidad", columnList = "llenado, cantidad, id")
+})
 public class Contenedor {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -13,6 +19,15 @@ public class Contenedor {
     @ManyToOne(fetch = FetchType.EAGER)
     private Estado estado;
 
+    // Copia de la cantidad y el color del estado actual: el listado filtra y ordena por ellos
+    // con índices de esta tabla, sin recorrer el histórico de estados. Null si no tiene estado
+    @Column(name = "cantidad")
+    private Double cantidad;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "llenado", length = 30)
+    private Estado.tipo llenado;
+
 
     public Contenedor(long id) {
         this.id = id;
@@ -26,7 +41,15 @@ public class Contenedor {
 
     public Estado getEstado(){return estado;}
 
-    public void setEstado(Estado e){this.estado = e;}
+    public void setEstado(Estado e){
+        this.estado = e;
+        this.cantidad = e == null ? null : e.getCantidad();
+        this.llenado = e == null ? null : e.getLlenado();
+    }
+
+    public Double getCantidad(){return cantidad;}
+
+    public Estado.tipo getLlenado(){return llenado;}
 
     @Override
     public String toString() {
@@ -6,6 +6,9 @@ import java.util.Date;
 import java.util.Objects;
 
 @Entity
+// Índice del histórico de un contenedor: cubre la consulta por (contenedor, fecha) sin leer la tabla.
+// El id va antes que cantidad para que el orden (fecha, id) de la paginación salga del índice sin ordenar
+@Table(indexes = @Index(name = "idx_estado_contenedor_fecha", columnList = "contenedor_id, fecha, id, cantidad"))
 public class Estado {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -39,12 +42,17 @@ public class Estado {
         this.contenedor = contenedor;
 
         // Calcular el tipo según la cantidad
+        this.llenado = calcularTipo(cantidad);
+    }
+
+    // Tipo de llenado que corresponde a una cantidad (también lo usa la ingesta de lecturas)
+    public static tipo calcularTipo(double cantidad) {
         if (cantidad >= 0 && cantidad <= 0.80) {
-            this.llenado = tipo.Verde;
+            return tipo.Verde;
         } else if (cantidad > 0.80 && cantidad < 1.0) {
-            this.llenado = tipo.Naranja;
+            return tipo.Naranja;
         } else {
-            this.llenado = tipo.Rojo;
+            return tipo.Rojo;
         }
     }
 
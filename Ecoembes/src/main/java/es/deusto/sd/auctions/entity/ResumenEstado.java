@@ -0,0 +1,105 @@
+package es.deusto.sd.auctions.entity;
+
+import jakarta.persistence.*;
+
+import java.util.Date;
+
+@Entity
+// Un resumen por contenedor, resolución y hora o día. El índice es la clave del UPDATE de la ingesta
+// y da en orden los resúmenes de un contenedor por rango de inicio
+@Table(name = "resumen_estado",
+        indexes = @Index(name = "idx_resumen_estado", columnList = "contenedor_id, resolucion, inicio", unique = true))
+public class ResumenEstado {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    // Sin restricción de clave ajena: H2 le crearía otro índice sobre contenedor_id que habría que mantener
+    // en cada lectura, y el índice único ya empieza por contenedor_id. La ingesta solo escribe
+    // resúmenes de contenedores que existen
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "contenedor_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    private Contenedor contenedor;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolucion", nullable = false, length = 10)
+    private resolucion resolucion;
+
+    // Comienzo de la hora o del día (hora local)
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "inicio", nullable = false)
+    private Date inicio;
+
+    @Column(name = "lecturas", nullable = false)
+    private long lecturas;
+
+    @Column(name = "minimo", nullable = false)
+    private double minimo;
+
+    @Column(name = "maximo", nullable = false)
+    private double maximo;
+
+    // Suma de las cantidades: la media es suma / lecturas y se puede ir acumulando
+    @Column(name = "suma", nullable = false)
+    private double suma;
+
+    // Última lectura del periodo
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "ultima_fecha", nullable = false)
+    private Date ultimaFecha;
+
+    @Column(name = "ultima_cantidad", nullable = false)
+    private double ultimaCantidad;
+
+    public enum resolucion {
+        Hora,
+        Dia
+    }
+
+    public ResumenEstado() {}
+
+    // Getters
+    public long getId() {
+        return id;
+    }
+
+    public Contenedor getContenedor() {
+        return contenedor;
+    }
+
+    public resolucion getResolucion() {
+        return resolucion;
+    }
+
+    public Date getInicio() {
+        return inicio;
+    }
+
+    public long getLecturas() {
+        return lecturas;
+    }
+
+    public double getMinimo() {
+        return minimo;
+    }
+
+    public double getMaximo() {
+        return maximo;
+    }
+
+    public double getSuma() {
+        return suma;
+    }
+
+    public double getMedia() {
+        return suma / lecturas;
+    }
+
+    public Date getUltimaFecha() {
+        return ultimaFecha;
+    }
+
+    public double getUltimaCantidad() {
+        return ultimaCantidad;
+    }
+}
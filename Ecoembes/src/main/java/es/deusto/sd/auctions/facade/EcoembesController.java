@@ -5,6 +5,8 @@
  */
 package es.deusto.sd.auctions.facade;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
@@ -12,16 +14,34 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 
+import es.deusto.sd.auctions.Gateway.PlantaNoDisponibleException;
 import es.deusto.sd.auctions.Gateway.Tipo;
+import es.deusto.sd.auctions.dto.CamionLoteDTO;
 import es.deusto.sd.auctions.dto.CamionRequestDTO;
+import es.deusto.sd.auctions.dto.CapacidadPlantaDTO;
+import es.deusto.sd.auctions.dto.ConsultaLlenadoDTO;
 import es.deusto.sd.auctions.dto.ContenedorDTO;
 import es.deusto.sd.auctions.dto.EstadoDTO;
+import es.deusto.sd.auctions.dto.LecturaDTO;
+import es.deusto.sd.auctions.dto.MetricasCapacidadesDTO;
+import es.deusto.sd.auctions.dto.MetricasLecturasDTO;
+import es.deusto.sd.auctions.dto.PaginaContenedoresDTO;
+import es.deusto.sd.auctions.dto.PlanCamionesDTO;
 import es.deusto.sd.auctions.dto.PlantaDeReciclajeDTO;
+import es.deusto.sd.auctions.dto.PrioridadContenedorDTO;
+import es.deusto.sd.auctions.dto.ResultadoCamionDTO;
+import es.deusto.sd.auctions.dto.ResumenLlenadoDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import es.deusto.sd.auctions.service.CapacidadInsuficienteException;
 import es.deusto.sd.auctions.service.EcoembesService;
 import es.deusto.sd.auctions.service.AuthService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -36,21 +56,40 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Tag(name = "Auctions Controller", description = "Operaciones relacionadas con contenedores, plantas de reciclaje y camiones")
 public class EcoembesController {
 
+	// Camiones máximos en una sola petición a camiones_lote
+	private static final int MAX_CAMIONES_LOTE = 2000;
+	// Lecturas máximas en una sola petición a contenedores/lecturas
+	private static final int MAX_LECTURAS_PETICION = 10000;
+	// Una línea JSON por elemento (historial en streaming)
+	private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+	// Contenedores máximos por página del listado y cabecera con el cursor de la siguiente
+	private static final int MAX_CONTENEDORES_PAGINA = 1000;
+	private static final String CABECERA_SIGUIENTE_CURSOR = "X-Siguiente-Cursor";
+	// Contenedores máximos devueltos por una consulta al índice en memoria
+	private static final int MAX_CONTENEDORES_LLENADO = 10000;
+	// Contenedores máximos devueltos de la cola de recogida
+	private static final int MAX_CONTENEDORES_PRIORIDAD = 10000;
+
 	private final EcoembesService ecoembesService;
 	private final AuthService authService;
+	private final ObjectMapper objectMapper;
 
-	public EcoembesController(EcoembesService ecoembesService, AuthService authService) {
+	public EcoembesController(EcoembesService ecoembesService, AuthService authService, ObjectMapper objectMapper) {
 		this.ecoembesService = ecoembesService;
 		this.authService = authService;
+		this.objectMapper = objectMapper;
 	}
 
     //Get estado de los contenedores por entre fechas
     @Operation(
             summary = "Get estado de los contenedores entre unas fechas.",
-            description = "Devuelve todos los estados entre unas fechas ordenados cronológicamente",
+            description = "Devuelve todos los estados entre unas fechas ordenados cronológicamente. Con resolucion hora o dia devuelve "
+                    + "un resumen por periodo (lecturas, mínimo, máximo, media y última cantidad); con auto, los rangos largos se "
+                    + "resumen solos",
             responses = {
                     @ApiResponse(responseCode = "200", description = "OK: lista de los estados ordenados devuleto exitosamente"),
                     @ApiResponse(responseCode = "204", description = "No Content: Contenedor no encontrado || El contenedor no tiene estados"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: id o resolución no válidos"),
                     @ApiResponse(responseCode = "404", description = "No existe ese contenedor"),
                     @ApiResponse(responseCode = "500", description = "Internal server error")
             }
@@ -63,6 +102,8 @@ public class EcoembesController {
             @RequestParam("fecha_inicio") String fecha_inicio,
             @Parameter(name = "fecha_fin", description = "fecha de fin de los estados", required = true, example = "04-01-2025")
             @RequestParam("fecha_fin") String fecha_fin,
+            @Parameter(description = "Resolución: estado (cada lectura), hora, dia o auto (según el rango: hora a partir de 2 días, dia a partir de 90)", example = "auto")
+            @RequestParam(name = "resolucion", defaultValue = EcoembesService.RESOLUCION_AUTO) String resolucion,
             @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
             @RequestParam (name = "token") String token_usuario){
             try {
@@ -81,9 +122,11 @@ public class EcoembesController {
                 Date fecha_fin_format = sdf.parse(fecha_fin);
 
 
-                List<EstadoDTO> dtos = ecoembesService.consulta_entre_fechas(id, fecha_inicio_format, fecha_fin_format);
+                List<EstadoDTO> dtos = ecoembesService.consulta_entre_fechas(id, fecha_inicio_format, fecha_fin_format, resolucion);
 
                 return new ResponseEntity<>(dtos, HttpStatus.OK);
+            } catch (IllegalArgumentException e){
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             } catch (RuntimeException e){
                 System.out.println(e);
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -92,29 +135,288 @@ public class EcoembesController {
             }
     }
 
+    //Get estado de los contenedores entre fechas, en streaming NDJSON
+    @Operation(
+            summary = "Get estado de los contenedores entre unas fechas en NDJSON.",
+            description = "Igual que la consulta anterior pero con Accept: application/x-ndjson: un estado JSON por línea (siempre cada lectura), en orden cronológico, "
+                    + "enviado mientras se lee por páginas. Sirve historiales de cualquier tamaño sin cargarlos enteros en memoria",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: estados enviados uno por línea"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: id o fechas no válidos"),
+                    @ApiResponse(responseCode = "404", description = "No existe ese contenedor"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping(value = "/contenedores/estado/{id_contenedor}", produces = MEDIA_TYPE_NDJSON)
+    public ResponseEntity<StreamingResponseBody> get_estado_fechas_ndjson(
+            @Parameter(name = "id_contenedor", description = "id del contenedor referido", required = true, example = "00001")
+            @PathVariable("id_contenedor") String contenedor,
+            @Parameter(name = "fecha_inicio", description = "fecha de inicio de los estados", required = true, example = "01-01-2025")
+            @RequestParam("fecha_inicio") String fecha_inicio,
+            @Parameter(name = "fecha_fin", description = "fecha de fin de los estados", required = true, example = "04-01-2025")
+            @RequestParam("fecha_fin") String fecha_fin,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+            long id;
+            Date fecha_inicio_format;
+            Date fecha_fin_format;
+            try {
+                id = Long.parseLong(URLDecoder.decode(contenedor, StandardCharsets.UTF_8));
+
+                SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+                sdf.setLenient(false);
+                fecha_inicio_format = sdf.parse(fecha_inicio);
+                fecha_fin_format = sdf.parse(fecha_fin);
+            } catch (Exception e){
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            // Una vez empieza el envío ya no se puede cambiar el código de estado
+            if (!ecoembesService.existe_contenedor(id)) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+
+            ObjectWriter escritor = objectMapper.writerFor(EstadoDTO.class);
+            StreamingResponseBody cuerpo = salida -> {
+                ecoembesService.recorrer_estados(id, fecha_inicio_format, fecha_fin_format, pagina -> {
+                    try {
+                        for (EstadoDTO estado : pagina) {
+                            salida.write(escritor.writeValueAsBytes(estado));
+                            salida.write('\n');
+                        }
+                        salida.flush();
+                    } catch (IOException e) {
+                        // El cliente ha cortado la conexión: se deja de leer
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            };
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(MEDIA_TYPE_NDJSON)).body(cuerpo);
+    }
+
     //Get contenedores
     @Operation(
             summary = "Get contendores.",
-            description = "Devuelve todos los contenedores con su estado actual",
+            description = "Devuelve una página de contenedores con su estado actual (cantidad, color y fecha). Si hay más páginas, "
+                    + "la cabecera X-Siguiente-Cursor trae el cursor para pedir la siguiente con el mismo orden y color",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "OK: lista de los estados ordenados devuleto exitosamente"),
-                    @ApiResponse(responseCode = "204", description = "No hay contenedores"),
-                    @ApiResponse(responseCode = "404", description = "No hay contenedores, o están mal creados"),
+                    @ApiResponse(responseCode = "200", description = "OK: página de contenedores devuelta exitosamente"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: color, orden, cursor o límite no válidos"),
                     @ApiResponse(responseCode = "500", description = "Internal server error")
             }
     )
     @GetMapping("/contenedores")
     public ResponseEntity<List<ContenedorDTO>> get_contenedores(
+            @Parameter(description = "Solo contenedores de este color", example = "Rojo")
+            @RequestParam (name = "color", required = false) String color,
+            @Parameter(description = "Orden: id, o llenado (de más a menos lleno)", example = "llenado")
+            @RequestParam (name = "orden", defaultValue = EcoembesService.ORDEN_ID) String orden,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Siguiente-Cursor)")
+            @RequestParam (name = "cursor", required = false) String cursor,
+            @Parameter(description = "Contenedores por página", example = "100")
+            @RequestParam (name = "limite", defaultValue = "100") int limite,
             @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
             @RequestParam (name = "token") String token_usuario){
         try {
             /*if(!authService.valido(token_usuario)){
                 return new ResponseEntity<>(HttpStatus.METHOD_NOT_ALLOWED);
             }*/
-            return new ResponseEntity<>(ecoembesService.getContenedores(), HttpStatus.OK);
-        } catch (RuntimeException e){
-            System.out.println(e);
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            if (limite <= 0 || limite > MAX_CONTENEDORES_PAGINA) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            PaginaContenedoresDTO pagina = ecoembesService.listar_contenedores(color, orden, cursor, limite);
+            ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+            if (pagina.getSiguienteCursor() != null) {
+                respuesta.header(CABECERA_SIGUIENTE_CURSOR, pagina.getSiguienteCursor());
+            }
+            return respuesta.body(pagina.getContenedores());
+        } catch (IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e){
+            System.err.println("✗ ERROR: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get contenedores según su estado actual, desde memoria
+    @Operation(
+            summary = "Get contenedores por color y/o cantidad, en memoria",
+            description = "Contenedores de un color y/o con cantidad mayor que min_cantidad según su estado actual, en orden de id. "
+                    + "Se responde desde el índice en memoria, sin consultar la base de datos. Devuelve el total y los primeros 'limite'",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: consulta resuelta"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: color, cantidad o límite no válidos"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: el índice se está cargando"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/contenedores/llenado")
+    public ResponseEntity<ConsultaLlenadoDTO> get_contenedores_llenado(
+            @Parameter(description = "Solo contenedores de este color", example = "Naranja")
+            @RequestParam (name = "color", required = false) String color,
+            @Parameter(description = "Solo contenedores con cantidad (nivel de llenado, 0.0-1.0) mayor que esta", example = "0.8")
+            @RequestParam (name = "min_cantidad", required = false) Double min_cantidad,
+            @Parameter(description = "Contenedores devueltos como máximo (0: solo el total)", example = "1000")
+            @RequestParam (name = "limite", defaultValue = "1000") int limite,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            if (limite > MAX_CONTENEDORES_LLENADO) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(ecoembesService.consultar_llenado(color, min_cantidad, limite), HttpStatus.OK);
+        } catch (IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e){
+            System.err.println("✗ ERROR: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get cuántos contenedores hay de cada color, desde memoria
+    @Operation(
+            summary = "Get número de contenedores de cada color",
+            description = "Cuenta los contenedores de cada color según su estado actual, desde el índice en memoria",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: resumen devuelto"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: el índice se está cargando"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/contenedores/llenado/resumen")
+    public ResponseEntity<ResumenLlenadoDTO> get_resumen_llenado(
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            return new ResponseEntity<>(ecoembesService.resumen_llenado(), HttpStatus.OK);
+        } catch (IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get estado actual de un contenedor, desde memoria
+    @Operation(
+            summary = "Get estado actual de un contenedor, en memoria",
+            description = "Cantidad, color y fecha del estado actual de un contenedor, desde el índice en memoria",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: estado actual devuelto"),
+                    @ApiResponse(responseCode = "404", description = "No existe ese contenedor o no tiene estado"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: el índice se está cargando"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/contenedores/llenado/{id_contenedor}")
+    public ResponseEntity<ContenedorDTO> get_llenado_contenedor(
+            @Parameter(name = "id_contenedor", description = "id del contenedor referido", required = true, example = "1")
+            @PathVariable("id_contenedor") long id,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            ContenedorDTO contenedor = ecoembesService.llenado_contenedor(id);
+            if (contenedor == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(contenedor, HttpStatus.OK);
+        } catch (IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get contenedores por orden de recogida según la predicción de llenado
+    @Operation(
+            summary = "Get contenedores en el orden en que se prevé que se llenen",
+            description = "Cola de recogida: primero los contenedores ya llenos y después los que se llenarán antes, según la "
+                    + "velocidad de llenado estimada de su histórico de lecturas. Los que no se están llenando no aparecen",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: cola de recogida devuelta"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: horas o límite no válidos"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: la predicción se está calculando"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/contenedores/prioridad")
+    public ResponseEntity<List<PrioridadContenedorDTO>> get_prioridad_contenedores(
+            @Parameter(description = "Solo contenedores que se llenan en las próximas horas", example = "24")
+            @RequestParam (name = "horas", required = false) Double horas,
+            @Parameter(description = "Contenedores devueltos como máximo", example = "100")
+            @RequestParam (name = "limite", defaultValue = "100") int limite,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            if (limite > MAX_CONTENEDORES_PRIORIDAD) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(ecoembesService.prioridad_contenedores(horas, limite), HttpStatus.OK);
+        } catch (IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e){
+            System.err.println("✗ ERROR: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Post lecturas de los sensores de los contenedores
+    @Operation(
+            summary = "Registra lecturas de llenado de los sensores",
+            description = "Deja las lecturas en una cola y responde al momento; se guardan en segundo plano por lotes y cada contenedor "
+                    + "pasa a tener como estado actual su lectura más reciente. Lecturas de contenedores que no existen se descartan",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Accepted: lecturas encoladas"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: lote vacío, demasiado grande o con una lectura no válida"),
+                    @ApiResponse(responseCode = "429", description = "Too Many Requests: la cola está llena, reintentar más tarde (no se ha encolado ninguna)"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @PostMapping("/contenedores/lecturas")
+    public ResponseEntity<Object> post_lecturas(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Lecturas: contenedorId, fecha y cantidad de cada una",
+                    required = true
+            )
+            @RequestBody List<LecturaDTO> lecturas,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            if (lecturas == null || lecturas.isEmpty() || lecturas.size() > MAX_LECTURAS_PETICION) {
+                return ResponseEntity.badRequest().body("Se admiten entre 1 y " + MAX_LECTURAS_PETICION + " lecturas por petición");
+            }
+            if (!ecoembesService.registrar_lecturas(lecturas)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Cola de lecturas llena");
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(lecturas.size() + " lecturas encoladas");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Error de validación: " + e.getMessage());
+        } catch (Exception e){
+            System.err.println("✗ ERROR: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get métricas de la ingesta de lecturas
+    @Operation(
+            summary = "Get métricas de la ingesta de lecturas",
+            description = "Devuelve lecturas aceptadas, rechazadas (429), guardadas, descartadas y fallidas, el tamaño de la cola y la duración de la última tanda",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: métricas devueltas exitosamente"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/contenedores/lecturas/metricas")
+    public ResponseEntity<MetricasLecturasDTO> get_metricas_lecturas(
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            return new ResponseEntity<>(ecoembesService.metricas_lecturas(), HttpStatus.OK);
         } catch (Exception e){
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -157,6 +459,7 @@ public class EcoembesController {
             responses = {
                     @ApiResponse(responseCode = "200", description = "OK:capacidad devuelta exitosamente"),
                     @ApiResponse(responseCode = "204", description = "No Content: planta inexistente"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: la planta no responde"),
                     @ApiResponse(responseCode = "500", description = "Internal server error")
             }
     )
@@ -178,6 +481,9 @@ public class EcoembesController {
             Date fecha_format = sdf.parse(fecha);
 
             return new ResponseEntity<>(ecoembesService.capacidad_planta_fecha(planta, fecha_format), HttpStatus.OK);
+        } catch (PlantaNoDisponibleException e){
+            // La planta no responde o su circuito está abierto
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         } catch (RuntimeException e){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         } catch (Exception e){
@@ -185,6 +491,96 @@ public class EcoembesController {
         }
     }
 
+    //Get capacidad de todas las plantas en una fecha dada
+    @Operation(
+            summary = "Get capacidad de todas las plantas en una fecha determinada",
+            description = "Consulta todas las plantas a la vez; las que no respondan dentro del plazo aparecen sin capacidad y con el motivo",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: capacidades devueltas exitosamente"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: fecha o plazo inválidos"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/plantas/capacidades")
+    public ResponseEntity<List<CapacidadPlantaDTO>> get_capacidades_plantas(
+            @Parameter(name = "fecha", description = "fecha de la que quiero la capacidad", required = true, example = "01-01-2025")
+            @RequestParam("fecha") String fecha,
+            @Parameter(name = "plazo_ms", description = "tiempo máximo de espera por planta, en milisegundos", example = "2000")
+            @RequestParam(name = "plazo_ms", defaultValue = "2000") long plazo_ms,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            /*if(!authService.valido(token_usuario)){
+                return new ResponseEntity<>(HttpStatus.METHOD_NOT_ALLOWED);
+            }*/
+
+            if (plazo_ms <= 0) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+            sdf.setLenient(false);
+            Date fecha_format = sdf.parse(fecha);
+
+            return new ResponseEntity<>(ecoembesService.capacidades_plantas_fecha(fecha_format, plazo_ms), HttpStatus.OK);
+        } catch (java.text.ParseException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get métricas de la caché de capacidades
+    @Operation(
+            summary = "Get métricas de las consultas de capacidad",
+            description = "Devuelve aciertos/obsoletas/fallos de la caché, consultas reales a las plantas y consultas coalescidas",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: métricas devueltas exitosamente"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/plantas/metricas")
+    public ResponseEntity<MetricasCapacidadesDTO> get_metricas_plantas(
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            return new ResponseEntity<>(ecoembesService.metricas_capacidades(), HttpStatus.OK);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    //Get plan de camiones según la capacidad de las plantas
+    @Operation(
+            summary = "Get plan de camiones para los próximos días",
+            description = "Reparte los contenedores con carga en camiones hacia las plantas sin superar la capacidad de cada planta cada día, "
+                    + "intentando llevar el máximo de toneladas. No crea nada: cada camión del plan se puede crear con camiones_nuevo",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: plan devuelto exitosamente"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: días o plazo inválidos"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/plantas/plan_camiones")
+    public ResponseEntity<PlanCamionesDTO> get_plan_camiones(
+            @Parameter(name = "dias", description = "días a planificar empezando por hoy", example = "10")
+            @RequestParam(name = "dias", defaultValue = "10") int dias,
+            @Parameter(name = "plazo_ms", description = "tiempo máximo de espera por la capacidad de cada planta, en milisegundos", example = "2000")
+            @RequestParam(name = "plazo_ms", defaultValue = "2000") long plazo_ms,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            if (plazo_ms <= 0) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(ecoembesService.plan_camiones(dias, plazo_ms), HttpStatus.OK);
+        } catch (IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     //Post crea camiones que contienen los contenedores que irán a cada planta
     @Operation(
             summary = "Asigna a una planta contenedores sin superar su capacidad",
@@ -195,7 +591,8 @@ public class EcoembesController {
                     @ApiResponse(responseCode = "401", description = "Unauthorized: No puedes crear esto"),
                     @ApiResponse(responseCode = "404", description = "Not Found: Planta no encontrada"),
                     @ApiResponse(responseCode = "409", description = "Conflict: La planta ya está llena"),
-                    @ApiResponse(responseCode = "500", description = "Internal server error")
+                    @ApiResponse(responseCode = "500", description = "Internal server error"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable: la planta no responde")
             })
     @PostMapping("/plantas/{nombre_planta}/camiones_nuevo")
     public ResponseEntity<Object> post_contenedores_plantas(
@@ -214,9 +611,20 @@ public class EcoembesController {
                 return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body("Este usuario no tiene permitido realizar este tipo de consultas.");
             }*/
 
-            ecoembesService.crear_camion(camionDTO, planta);
+            long id = ecoembesService.crear_camion(camionDTO, planta);
+
+            return ResponseEntity.status(HttpStatus.CREATED).body("Camión " + id + " creado exitosamente con " + camionDTO.getContenedores().size() + " contenedores");
+
+        } catch (CapacidadInsuficienteException e) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(e.getMessage());
 
-            return ResponseEntity.status(HttpStatus.CREATED).body("Camión creado exitosamente con " /*+ camionDTO.getContenedores().size()*/ + " contenedores");
+        } catch (PlantaNoDisponibleException e) {
+            // Sin la capacidad de la planta no se puede comprobar que el camión quepa
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("La planta no responde: " + e.getMessage());
 
         } catch (IllegalArgumentException e) {
             System.err.println("✗ ERROR de validación: " + e.getMessage());
@@ -232,4 +640,34 @@ public class EcoembesController {
                     .body("Error al crear el camión: " + e.getMessage());
         }
     }
+
+    //Post crea muchos camiones, de varias plantas, de una vez
+    @Operation(
+            summary = "Crea varios camiones de una vez",
+            description = "Cada camión se valida y se comprueba contra la capacidad de su planta por separado; los válidos se crean juntos "
+                    + "en una transacción. Devuelve el resultado de cada camión en el orden de la petición (estado 201, 400, 409 o 503)",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: lote procesado, ver el estado de cada camión"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request: lote vacío o demasiado grande"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            })
+    @PostMapping("/plantas/camiones_lote")
+    public ResponseEntity<List<ResultadoCamionDTO>> post_camiones_lote(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Camiones a crear: planta, fecha y contenedores de cada uno",
+                    required = true
+            )
+            @RequestBody List<CamionLoteDTO> camiones,
+            @Parameter(description = "Token de autenticación del usuario", required = true, example = "abc123xyz")
+            @RequestParam (name = "token") String token_usuario){
+        try {
+            if (camiones == null || camiones.isEmpty() || camiones.size() > MAX_CAMIONES_LOTE) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(ecoembesService.crear_camiones(camiones), HttpStatus.OK);
+        } catch (Exception e){
+            System.err.println("✗ ERROR: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
\ No newline at end of file
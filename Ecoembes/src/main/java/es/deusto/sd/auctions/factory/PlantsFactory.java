@@ -1,7 +1,9 @@
 package es.deusto.sd.auctions.factory;
 
 import es.deusto.sd.auctions.Gateway.ConSocketGateway;
+import es.deusto.sd.auctions.Gateway.ConfiguracionGateway;
 import es.deusto.sd.auctions.Gateway.PlantaGateway;
+import es.deusto.sd.auctions.Gateway.PlantaGatewayResiliente;
 import es.deusto.sd.auctions.Gateway.PlasSbGateway;
 import es.deusto.sd.auctions.Gateway.Tipo;
 
@@ -18,12 +20,17 @@ public class PlantsFactory {
     }
 
     public static PlantaGateway crear(String url, Tipo tipo, String nombre) {
+        return crear(url, tipo, nombre, ConfiguracionGateway.POR_DEFECTO);
+    }
+
+    // Cada gateway se envuelve con circuit breaker, bulkhead y hedging
+    public static PlantaGateway crear(String url, Tipo tipo, String nombre, ConfiguracionGateway config) {
         switch (tipo) {
             case HTTP -> {
-                return new PlasSbGateway(url, tipo,nombre);
+                return new PlantaGatewayResiliente(new PlasSbGateway(url, tipo, nombre, config), config);
             }
             case Sockets -> {
-                return new ConSocketGateway(url, tipo, nombre);
+                return new PlantaGatewayResiliente(new ConSocketGateway(url, tipo, nombre, true, config), config);
             }
         }
         return null;
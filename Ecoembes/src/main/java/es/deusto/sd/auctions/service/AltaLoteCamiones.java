@@ -0,0 +1,125 @@
+package es.deusto.sd.auctions.service;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserta muchos camiones (y sus filas de camion_contenedor) de una vez.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Camion usa GenerationType.IDENTITY, y con IDENTITY Hibernate no agrupa los INSERT: necesita
+ *   el id de cada camión justo después de insertarlo. Aquí se insertan todos los camiones en un
+ *   solo batchUpdate de JDBC y se recogen sus ids generados (getGeneratedKeys) en el mismo orden
+ * - Con esos ids, las filas de camion_contenedor van en otro batchUpdate, en tandas de tamanoTanda
+ * - Todo en una transacción: o se crean todos los camiones del lote o ninguno
+ * - Cada camión guarda las toneladas con que se aceptó: es lo que tiene comprometido con su
+ *   planta, aunque después lleguen lecturas nuevas de sus contenedores
+ * - Los contenedores del lote se leen en una sola consulta que cruza la tabla con UNNEST(?) de un
+ *   array de ids. Con IN (?, ?, ...) H2 tarda segundos con miles de ids (no usa la clave primaria);
+ *   con UNNEST hace un join por clave primaria y el texto SQL es siempre el mismo
+ * - Las comprobaciones (contenedores, capacidad de las plantas) las hace EcoembesService: aquí
+ *   solo se lee y se escribe
+ */
+class AltaLoteCamiones {
+
+    private static final String SQL_CAMION = "INSERT INTO camion (planta, fecha, toneladas) VALUES (?, ?, ?)";
+    private static final String SQL_CONTENEDOR = "INSERT INTO camion_contenedor (camion_id, contenedor_id) VALUES (?, ?)";
+    private static final String SQL_PESOS = "SELECT c.id, COALESCE(e.cantidad, 0) FROM UNNEST(?) u(id) "
+            + "JOIN contenedor c ON c.id = u.id LEFT JOIN estado e ON e.id = c.estado_id";
+
+    /**
+     * Camión ya validado, listo para insertar, con las toneladas que carga.
+     */
+    record CamionNuevo(String planta, Date fecha, List<Long> contenedores, double toneladas) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanoTanda;
+
+    AltaLoteCamiones(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, int tamanoTanda) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.tamanoTanda = tamanoTanda;
+    }
+
+    /**
+     * Cantidad actual (nivel de llenado, 0 si no tiene estado) de los contenedores que existen entre ids.
+     */
+    Map<Long, Double> leerPesos(Collection<Long> ids) {
+        Map<Long, Double> pesos = new HashMap<>();
+        if (ids.isEmpty()) {
+            return pesos;
+        }
+        Long[] array = ids.toArray(new Long[0]);
+        jdbcTemplate.query(SQL_PESOS,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", array)),
+                rs -> {
+                    pesos.put(rs.getLong(1), rs.getDouble(2));
+                });
+        return pesos;
+    }
+
+    /**
+     * @return El id generado de cada camión, en el mismo orden que camiones
+     */
+    long[] insertar(List<CamionNuevo> camiones) {
+        if (camiones.isEmpty()) {
+            return new long[0];
+        }
+        long inicio = System.nanoTime();
+        long[] ids = transactionTemplate.execute(estado -> {
+            GeneratedKeyHolder claves = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(con -> con.prepareStatement(SQL_CAMION, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setString(1, camiones.get(i).planta());
+                            ps.setTimestamp(2, new Timestamp(camiones.get(i).fecha().getTime()));
+                            ps.setDouble(3, camiones.get(i).toneladas());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return camiones.size();
+                        }
+                    }, claves);
+
+            List<Map<String, Object>> generadas = claves.getKeyList();
+            if (generadas.size() != camiones.size()) {
+                throw new IllegalStateException("Se esperaban " + camiones.size() + " ids generados y llegaron "
+                        + generadas.size());
+            }
+            long[] generados = new long[camiones.size()];
+            List<long[]> filas = new ArrayList<>();
+            for (int i = 0; i < generados.length; i++) {
+                generados[i] = ((Number) generadas.get(i).values().iterator().next()).longValue();
+                for (long contenedor : camiones.get(i).contenedores()) {
+                    filas.add(new long[]{generados[i], contenedor});
+                }
+            }
+
+            jdbcTemplate.batchUpdate(SQL_CONTENEDOR, filas, tamanoTanda, (ps, fila) -> {
+                ps.setLong(1, fila[0]);
+                ps.setLong(2, fila[1]);
+            });
+            return generados;
+        });
+        if (camiones.size() > 1) {
+            long ms = (System.nanoTime() - inicio) / 1_000_000;
+            System.out.println("[LOTE] " + camiones.size() + " camiones insertados en " + ms + " ms");
+        }
+        return ids;
+    }
+}
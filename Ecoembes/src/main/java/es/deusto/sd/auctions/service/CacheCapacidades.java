@@ -0,0 +1,346 @@
+package es.deusto.sd.auctions.service;
+
+import es.deusto.sd.auctions.Gateway.PlantaGateway;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de capacidades por (planta, fecha) delante de los gateways.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Una entrada es "fresca" durante ttlMs: se devuelve sin tocar la red
+ * - Pasado el TTL la entrada queda "obsoleta": se sigue devolviendo al momento y en paralelo
+ *   se pide el valor nuevo a la planta (stale-while-revalidate), así quien llama no espera
+ * - Solo si no hay entrada, o es más vieja que maxObsoletoMs, se espera a la planta
+ * - LRU acotado a maxEntradas (LinkedHashMap en orden de acceso)
+ * - Los fallos no se guardan: la siguiente llamada vuelve a intentarlo
+ * - Single-flight: si varias llamadas necesitan a la vez la misma (planta, fecha), solo
+ *   la primera pregunta a la planta; el resto esperan esa misma respuesta (enVuelo)
+ * - La precarga pide de una vez el rango de fechas que no estén frescas
+ *   (consultarCapacidadesRangoAsync): una petición por planta en vez de una por día
+ * - Plantas suscritas (la planta empuja sus cambios): cada cambio llega y se guarda al momento
+ *   (actualizar), así que sus entradas siguen frescas hasta maxObsoletoMs en vez de ttlMs y
+ *   casi no se pregunta a la planta. Si la suscripción se pierde vuelven a caducar como las demás
+ * - Versiones: cada entrada guarda hasta qué punto (secuencia) está al día su valor. Un cambio
+ *   empujado toma un número nuevo; la respuesta de una consulta toma el que había al lanzarla.
+ *   Así una consulta lanzada antes de un CAMBIO que responda después no pisa el valor nuevo
+ */
+public class CacheCapacidades {
+
+    private static final class Entrada {
+        final double capacidad;
+        final long cargadaEn;
+        // Valor de secuencia hasta el que este valor está al día
+        final long version;
+        // Evita lanzar dos refrescos a la vez de la misma entrada
+        final AtomicBoolean refrescando = new AtomicBoolean();
+
+        Entrada(double capacidad, long cargadaEn, long version) {
+            this.capacidad = capacidad;
+            this.cargadaEn = cargadaEn;
+            this.version = version;
+        }
+    }
+
+    private record Clave(String planta, LocalDate fecha) {}
+
+    private final long ttlMs;
+    private final long maxObsoletoMs;
+    private final Map<Clave, Entrada> entradas;
+    // Consultas a las plantas que aún no han respondido
+    private final ConcurrentHashMap<Clave, CompletableFuture<Double>> enVuelo = new ConcurrentHashMap<>();
+    // Plantas cuya suscripción de cambios está activa
+    private final Set<String> suscritas = ConcurrentHashMap.newKeySet();
+    // Reloj lógico de las versiones: avanza con cada cambio empujado y cada invalidación
+    private final AtomicLong secuencia = new AtomicLong();
+    // Versión de la última invalidación de cada planta: lo consultado antes no se guarda
+    private final ConcurrentHashMap<String, Long> invalidadaEn = new ConcurrentHashMap<>();
+
+    // Métricas
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong obsoletas = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong peticionesPlanta = new AtomicLong();
+    private final AtomicLong coalescidas = new AtomicLong();
+    private final AtomicLong cambiosRecibidos = new AtomicLong();
+
+    public CacheCapacidades(long ttlMs, long maxObsoletoMs, int maxEntradas) {
+        this.ttlMs = ttlMs;
+        this.maxObsoletoMs = maxObsoletoMs;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Clave, Entrada> masAntigua) {
+                return size() > maxEntradas;
+            }
+        };
+    }
+
+    /**
+     * Capacidad de la planta en esa fecha, desde la caché siempre que se pueda.
+     */
+    public double obtener(String planta, PlantaGateway gateway, Date fecha) {
+        try {
+            return obtenerAsync(planta, gateway, aLocalDate(fecha)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Como obtener(), pero sin bloquear: con entrada fresca u obsoleta el futuro ya viene
+     * completado; si no, es la consulta (compartida) a la planta. Devuelve una copia,
+     * así que quien llama puede ponerle un plazo (orTimeout) sin afectar al resto.
+     */
+    public CompletableFuture<Double> obtenerAsync(String planta, PlantaGateway gateway, LocalDate fecha) {
+        Clave clave = new Clave(planta, fecha);
+        Entrada entrada = leer(clave);
+        long edad = entrada == null ? Long.MAX_VALUE : System.currentTimeMillis() - entrada.cargadaEn;
+
+        if (edad < frescuraMs(planta)) {
+            aciertos.incrementAndGet();
+            return CompletableFuture.completedFuture(entrada.capacidad);
+        }
+        if (edad < maxObsoletoMs) {
+            obsoletas.incrementAndGet();
+            refrescar(clave, gateway, entrada);
+            return CompletableFuture.completedFuture(entrada.capacidad);
+        }
+
+        fallos.incrementAndGet();
+        return consultarUnaVez(clave, gateway).copy();
+    }
+
+    /**
+     * Pregunta a la planta sin mirar la caché (aunque guarda la respuesta),
+     * compartiendo la consulta con cualquier otra que ya esté en vuelo.
+     * Devuelve una copia: si quien llama le pone un plazo (orTimeout) no afecta al resto.
+     */
+    public CompletableFuture<Double> consultar(String planta, PlantaGateway gateway, Date fecha) {
+        return consultarUnaVez(new Clave(planta, aLocalDate(fecha)), gateway).copy();
+    }
+
+    /**
+     * Refresca en segundo plano las fechas [desde, desde + dias) de una planta
+     * si no están frescas, con una sola consulta de rango. Lo usa la precarga periódica.
+     */
+    public void precargar(String planta, PlantaGateway gateway, LocalDate desde, int dias) {
+        // Entradas que se van a refrescar (marcadas para que nadie más las refresque a la vez)
+        List<Entrada> marcadas = new ArrayList<>();
+        LocalDate primera = null;
+        LocalDate ultima = null;
+        long frescura = frescuraMs(planta);
+        for (int i = 0; i < dias; i++) {
+            Clave clave = new Clave(planta, desde.plusDays(i));
+            Entrada entrada = leer(clave);
+            if (entrada != null && System.currentTimeMillis() - entrada.cargadaEn < frescura) {
+                continue;
+            }
+            if (entrada != null) {
+                if (!entrada.refrescando.compareAndSet(false, true)) {
+                    continue;
+                }
+                marcadas.add(entrada);
+            }
+            if (primera == null) {
+                primera = clave.fecha();
+            }
+            ultima = clave.fecha();
+        }
+        if (primera == null) {
+            return;
+        }
+
+        peticionesPlanta.incrementAndGet();
+        long version = secuencia.get();
+        CompletableFuture<Map<LocalDate, Double>> consulta;
+        try {
+            consulta = gateway.consultarCapacidadesRangoAsync(primera, ultima);
+        } catch (RuntimeException e) {
+            consulta = CompletableFuture.failedFuture(e);
+        }
+
+        LocalDate inicio = primera;
+        LocalDate fin = ultima;
+        consulta.whenComplete((capacidades, error) -> {
+            if (error == null && capacidades != null) {
+                capacidades.forEach((fecha, capacidad) -> {
+                    if (capacidad != null) {
+                        guardar(new Clave(planta, fecha), capacidad, version);
+                    }
+                });
+            } else {
+                Throwable causa = error instanceof CompletionException ? error.getCause() : error;
+                System.out.println("[CACHE] No se pudo precargar " + planta + " " + inicio + ".." + fin
+                        + ": " + (causa == null ? "respuesta vacía" : causa.getMessage()));
+            }
+            // Las que no se hayan reemplazado (fallo o fecha sin capacidad) se pueden volver a refrescar
+            for (Entrada entrada : marcadas) {
+                entrada.refrescando.set(false);
+            }
+        });
+    }
+
+    /**
+     * Guarda un cambio empujado por la planta: la entrada queda fresca al momento.
+     */
+    public void actualizar(String planta, LocalDate fecha, double capacidad) {
+        cambiosRecibidos.incrementAndGet();
+        guardar(new Clave(planta, fecha), capacidad, secuencia.incrementAndGet());
+    }
+
+    /**
+     * Activa o desactiva el modo suscrita de una planta. Al activarse se olvida lo que había
+     * (pudo cambiar antes de suscribirse) y hay que precargarla de nuevo.
+     */
+    public void setSuscrita(String planta, boolean suscrita) {
+        if (suscrita) {
+            invalidarPlanta(planta);
+            suscritas.add(planta);
+        } else {
+            suscritas.remove(planta);
+        }
+    }
+
+    public boolean isSuscrita(String planta) {
+        return suscritas.contains(planta);
+    }
+
+    public void invalidarPlanta(String planta) {
+        synchronized (entradas) {
+            invalidadaEn.put(planta, secuencia.incrementAndGet());
+            entradas.keySet().removeIf(clave -> clave.planta().equals(planta));
+        }
+    }
+
+    public long getCambiosRecibidos() {
+        return cambiosRecibidos.get();
+    }
+
+    public int getTamano() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getObsoletas() {
+        return obsoletas.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public long getPeticionesPlanta() {
+        return peticionesPlanta.get();
+    }
+
+    public long getCoalescidas() {
+        return coalescidas.get();
+    }
+
+    private long frescuraMs(String planta) {
+        return suscritas.contains(planta) ? Math.max(ttlMs, maxObsoletoMs) : ttlMs;
+    }
+
+    private void refrescar(Clave clave, PlantaGateway gateway, Entrada actual) {
+        if (actual != null && !actual.refrescando.compareAndSet(false, true)) {
+            return;
+        }
+
+        consultarUnaVez(clave, gateway).whenComplete((capacidad, error) -> {
+            if (error != null) {
+                System.out.println("[CACHE] No se pudo refrescar " + clave.planta() + " " + clave.fecha()
+                        + ": " + error.getMessage());
+                if (actual != null) {
+                    actual.refrescando.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Single-flight: devuelve la consulta en vuelo para esa clave o, si no hay, lanza una.
+     */
+    private CompletableFuture<Double> consultarUnaVez(Clave clave, PlantaGateway gateway) {
+        CompletableFuture<Double> nueva = new CompletableFuture<>();
+        CompletableFuture<Double> existente = enVuelo.putIfAbsent(clave, nueva);
+        if (existente != null) {
+            coalescidas.incrementAndGet();
+            return existente;
+        }
+
+        peticionesPlanta.incrementAndGet();
+        long version = secuencia.get();
+        CompletableFuture<Double> consulta;
+        try {
+            consulta = gateway.consultarCapacidadDisponibleAsync(aDate(clave.fecha()));
+        } catch (RuntimeException e) {
+            consulta = CompletableFuture.failedFuture(e);
+        }
+
+        consulta.whenComplete((capacidad, error) -> {
+            // Primero a la caché y luego fuera de enVuelo: así nunca hay un hueco
+            // en el que una llamada no encuentre ni lo uno ni lo otro
+            if (error == null && capacidad != null) {
+                guardar(clave, capacidad, version);
+            }
+            enVuelo.remove(clave, nueva);
+            if (error != null) {
+                nueva.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            } else if (capacidad == null) {
+                nueva.completeExceptionally(new IllegalStateException("La planta no devolvió capacidad"));
+            } else {
+                nueva.complete(capacidad);
+            }
+        });
+        return nueva;
+    }
+
+    private Entrada leer(Clave clave) {
+        synchronized (entradas) {
+            return entradas.get(clave);
+        }
+    }
+
+    /**
+     * Guarda el valor salvo que la entrada (o la planta entera) se haya actualizado
+     * o invalidado después de version: entonces lo guardado es más nuevo.
+     */
+    private void guardar(Clave clave, double capacidad, long version) {
+        synchronized (entradas) {
+            Entrada actual = entradas.get(clave);
+            if ((actual != null && actual.version > version)
+                    || invalidadaEn.getOrDefault(clave.planta(), Long.MIN_VALUE) > version) {
+                return;
+            }
+            entradas.put(clave, new Entrada(capacidad, System.currentTimeMillis(), version));
+        }
+    }
+
+    static LocalDate aLocalDate(Date fecha) {
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    static Date aDate(LocalDate fecha) {
+        return Date.from(fecha.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
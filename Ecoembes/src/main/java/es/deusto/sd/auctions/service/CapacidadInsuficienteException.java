@@ -0,0 +1,14 @@
+package es.deusto.sd.auctions.service;
+
+/**
+ * La planta ha respondido, pero lo que se quiere llevar supera la capacidad que le queda ese día
+ * (descontando los camiones ya creados). Se responde con 409 Conflict.
+ */
+public class CapacidadInsuficienteException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CapacidadInsuficienteException(String mensaje) {
+        super(mensaje);
+    }
+}
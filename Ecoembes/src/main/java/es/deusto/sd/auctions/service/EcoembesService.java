@@ -1,60 +1,194 @@
 package es.deusto.sd.auctions.service;
 
+import es.deusto.sd.auctions.Gateway.CodecFecha;
+import es.deusto.sd.auctions.Gateway.ConSocketGateway;
+import es.deusto.sd.auctions.Gateway.ConfiguracionGateway;
+import es.deusto.sd.auctions.Gateway.OyenteCapacidades;
 import es.deusto.sd.auctions.Gateway.PlantaGateway;
+import es.deusto.sd.auctions.Gateway.PlantaGatewayResiliente;
+import es.deusto.sd.auctions.Gateway.PlantaNoDisponibleException;
+import es.deusto.sd.auctions.Gateway.PlasSbGateway;
+import es.deusto.sd.auctions.Gateway.SuscripcionCambios;
 import es.deusto.sd.auctions.Gateway.Tipo;
 import es.deusto.sd.auctions.dao.*;
+import es.deusto.sd.auctions.dto.CamionLoteDTO;
+import es.deusto.sd.auctions.dto.CamionPlanDTO;
 import es.deusto.sd.auctions.dto.CamionRequestDTO;
+import es.deusto.sd.auctions.dto.CapacidadPlantaDTO;
+import es.deusto.sd.auctions.dto.ConsultaLlenadoDTO;
 import es.deusto.sd.auctions.dto.ContenedorDTO;
 import es.deusto.sd.auctions.dto.EstadoDTO;
+import es.deusto.sd.auctions.dto.LecturaDTO;
+import es.deusto.sd.auctions.dto.MetricasCapacidadesDTO;
+import es.deusto.sd.auctions.dto.MetricasLecturasDTO;
+import es.deusto.sd.auctions.dto.MetricasPlantaDTO;
+import es.deusto.sd.auctions.dto.PaginaContenedoresDTO;
+import es.deusto.sd.auctions.dto.PlanCamionesDTO;
 import es.deusto.sd.auctions.dto.PlantaDeReciclajeDTO;
-import es.deusto.sd.auctions.entity.Camion;
+import es.deusto.sd.auctions.dto.PrioridadContenedorDTO;
+import es.deusto.sd.auctions.dto.ResultadoCamionDTO;
+import es.deusto.sd.auctions.dto.ResumenLlenadoDTO;
 import es.deusto.sd.auctions.entity.Contenedor;
 import es.deusto.sd.auctions.entity.Estado;
+import es.deusto.sd.auctions.entity.ResumenEstado;
 import es.deusto.sd.auctions.factory.PlantsFactory;
+import es.deusto.sd.auctions.service.PlanificadorCamiones.Hueco;
+import es.deusto.sd.auctions.service.PlanificadorCamiones.Plan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 @Service
 public class EcoembesService {
+    // Días máximos que se pueden planificar de una vez
+    private static final int MAX_DIAS_PLAN = 31;
+    // Órdenes del listado de contenedores
+    public static final String ORDEN_ID = "id";
+    public static final String ORDEN_LLENADO = "llenado";
+    // Resoluciones de la consulta del histórico: cada estado, resumen por hora o por día, o según el rango
+    public static final String RESOLUCION_AUTO = "auto";
+    public static final String RESOLUCION_ESTADO = "estado";
+    public static final String RESOLUCION_HORA = "hora";
+    public static final String RESOLUCION_DIA = "dia";
+    private static final long MS_POR_DIA = 86_400_000L;
+
     @Autowired
     private final CamionRepository camionRepository;
     @Autowired
     private final ContenedorRepository contenedorRepository;
     @Autowired
     private final EstadoRepository estadosRepository;
+    @Autowired
+    private final ResumenEstadoRepository resumenEstadoRepository;
 
     private PlantsFactory factory;
     private PlantaGateway[] plantas;
     private HashMap<String, PlantaGateway> plantasMap;
+    // Capacidades ya consultadas a las plantas, por (planta, fecha)
+    private final CacheCapacidades cacheCapacidades;
+    // Las plantas publican su capacidad con estos días de antelación
+    private final int diasHorizonte;
+    // Suscripciones a los cambios que empuja cada planta, por nombre de planta
+    private final Map<String, SuscripcionCambios> suscripciones = new HashMap<>();
+    // Reparto de contenedores en camiones según la capacidad de las plantas
+    private final PlanificadorCamiones planificador;
+    // Un cerrojo por planta: comprobar su capacidad y crear el camión van juntos
+    private final ConcurrentHashMap<String, ReentrantLock> bloqueosPlanta = new ConcurrentHashMap<>();
+    // Inserción por lotes de camiones
+    private final AltaLoteCamiones altaLoteCamiones;
+    // Cola y escritor por lotes de las lecturas de los sensores
+    private final IngestaLecturas ingestaLecturas;
+    // Estado actual de todos los contenedores en memoria
+    private final IndiceContenedores indiceContenedores;
+    // Predicción de cuándo se llena cada contenedor
+    private final PrediccionLlenado prediccionLlenado;
+    // Estados por página al recorrer el histórico de un contenedor
+    private final int tamanoPaginaHistorico;
+    // Con resolución auto, rangos de más de estos días se leen de los resúmenes por hora o por día
+    private final int autoHoraDias;
+    private final int autoDiaDias;
+    // Toneladas de un contenedor lleno: Estado.cantidad es el nivel de llenado (0.0-1.0) y
+    // las plantas publican su capacidad en toneladas. Es la única conversión entre las dos
+    private final double toneladasContenedorLleno;
 
 
     public EcoembesService(CamionRepository camionRepository, ContenedorRepository contenedorRepository,
-                           EstadoRepository estadosRepository) {
+                           EstadoRepository estadosRepository, ResumenEstadoRepository resumenEstadoRepository,
+                           JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate, IngestaLecturas ingestaLecturas,
+                           IndiceContenedores indiceContenedores, PrediccionLlenado prediccionLlenado,
+                           @Value("${ecoembes.cache.ttl-ms:60000}") long ttlCacheMs,
+                           @Value("${ecoembes.cache.max-obsoleto-ms:600000}") long maxObsoletoCacheMs,
+                           @Value("${ecoembes.cache.max-entradas:1000}") int maxEntradasCache,
+                           @Value("${ecoembes.cache.dias-horizonte:10}") int diasHorizonte,
+                           @Value("${ecoembes.plantas.max-conexiones:8}") int maxConexiones,
+                           @Value("${ecoembes.plantas.timeout-conexion-ms:1000}") int timeoutConexionMs,
+                           @Value("${ecoembes.plantas.timeout-lectura-ms:3000}") int timeoutLecturaMs,
+                           @Value("${ecoembes.plantas.circuito.umbral-fallos:5}") int umbralFallos,
+                           @Value("${ecoembes.plantas.circuito.abierto-ms:10000}") long circuitoAbiertoMs,
+                           @Value("${ecoembes.plantas.bulkhead.max-concurrentes:10}") int maxConcurrentes,
+                           @Value("${ecoembes.plantas.hedge.retraso-ms:0}") long retrasoHedgeMs,
+                           @Value("${ecoembes.plantas.suscribir-cambios:true}") boolean suscribirCambios,
+                           @Value("${ecoembes.contenedores.toneladas-lleno:0.1}") double toneladasContenedorLleno,
+                           @Value("${ecoembes.camiones.max-toneladas:10}") double maxToneladasCamion,
+                           @Value("${ecoembes.camiones.max-contenedores:100}") int maxContenedoresCamion,
+                           @Value("${ecoembes.camiones.lote.tamano-tanda:500}") int tamanoTandaCamiones,
+                           @Value("${ecoembes.historico.tamano-pagina:1000}") int tamanoPaginaHistorico,
+                           @Value("${ecoembes.historico.auto-hora-dias:2}") int autoHoraDias,
+                           @Value("${ecoembes.historico.auto-dia-dias:90}") int autoDiaDias) {
         this.camionRepository = camionRepository;
         this.contenedorRepository = contenedorRepository;
         this.estadosRepository = estadosRepository;
+        this.resumenEstadoRepository = resumenEstadoRepository;
+        this.cacheCapacidades = new CacheCapacidades(ttlCacheMs, maxObsoletoCacheMs, maxEntradasCache);
+        this.diasHorizonte = diasHorizonte;
+        this.planificador = new PlanificadorCamiones(maxToneladasCamion, maxContenedoresCamion);
+        this.altaLoteCamiones = new AltaLoteCamiones(jdbcTemplate, transactionTemplate, tamanoTandaCamiones);
+        this.ingestaLecturas = ingestaLecturas;
+        this.indiceContenedores = indiceContenedores;
+        this.prediccionLlenado = prediccionLlenado;
+        if (tamanoPaginaHistorico <= 0) {
+            throw new IllegalArgumentException("El tamaño de página del histórico debe ser positivo");
+        }
+        this.tamanoPaginaHistorico = tamanoPaginaHistorico;
+        if (autoHoraDias < 0 || autoDiaDias < autoHoraDias) {
+            throw new IllegalArgumentException("Los umbrales de resolución del histórico no son válidos");
+        }
+        this.autoHoraDias = autoHoraDias;
+        this.autoDiaDias = autoDiaDias;
+        if (!(toneladasContenedorLleno > 0) || Double.isInfinite(toneladasContenedorLleno)) {
+            throw new IllegalArgumentException("Las toneladas de un contenedor lleno deben ser positivas");
+        }
+        this.toneladasContenedorLleno = toneladasContenedorLleno;
 
         plantas = new  PlantaGateway[2];
         plantasMap = new HashMap();
 
         factory = PlantsFactory.getInstance();
+        ConfiguracionGateway config = new ConfiguracionGateway(maxConexiones, timeoutConexionMs, timeoutLecturaMs,
+                umbralFallos, circuitoAbiertoMs, maxConcurrentes, retrasoHedgeMs);
 
         // PLANTA 1: PlasSB (REST) - Puerto 8083
-        plantas[0] = factory.crear("http://localhost:8085", Tipo.HTTP, "PlasSb");
+        plantas[0] = factory.crear("http://localhost:8085", Tipo.HTTP, "PlasSb", config);
         plantasMap.put("PlasSb", plantas[0]);
         System.out.println("✓ Planta 1 (PlasSB - REST) configurada en http://localhost:8085");
 
         // PLANTA 2: ContSocket (TCP) - Puerto 8090
-        plantas[1] = factory.crear("localhost:8090", Tipo.Sockets, "ConSockets");
+        plantas[1] = factory.crear("localhost:8090", Tipo.Sockets, "ConSockets", config);
         plantasMap.put("ConSocket", plantas[1]);
         System.out.println("✓ Planta 2 (ContSocket - Socket) configurada en localhost:8090");
 
         System.out.println("✓ EcoembesService inicializado con " + plantas.length + " plantas");
 
+        if (suscribirCambios) {
+            for (String planta : plantasMap.keySet()) {
+                SuscripcionCambios suscripcion = plantasMap.get(planta).suscribirCambios(oyenteCapacidades(planta));
+                if (suscripcion != null) {
+                    suscripciones.put(planta, suscripcion);
+                }
+            }
+        }
+
 
         try {
             System.out.println("PlasSb");
@@ -99,25 +233,153 @@ public class EcoembesService {
         }
     }
 
+    //Lleva a la caché los cambios que empuja la planta
+    /*
+    Al conectarse (o si la planta pide recargar) se olvida lo que había de esa planta y se vuelve
+    a precargar el horizonte con una consulta de rango; a partir de ahí cada cambio llega solo.
+     */
+    private OyenteCapacidades oyenteCapacidades(String planta) {
+        return new OyenteCapacidades() {
+            @Override
+            public void cambio(LocalDate fecha, double capacidad) {
+                cacheCapacidades.actualizar(planta, fecha, capacidad);
+            }
+
+            @Override
+            public void sincronizar() {
+                cacheCapacidades.setSuscrita(planta, true);
+                cacheCapacidades.precargar(planta, plantasMap.get(planta), LocalDate.now(), diasHorizonte);
+            }
+
+            @Override
+            public void desconectada() {
+                cacheCapacidades.setSuscrita(planta, false);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void cerrar_suscripciones(){
+        suscripciones.values().forEach(SuscripcionCambios::close);
+    }
+
+    //Post registra lecturas de los sensores de los contenedores
+    public boolean registrar_lecturas(List<LecturaDTO> lecturas){
+        /*
+         * Valida las lecturas y las deja en la cola de ingesta; se escriben después en segundo plano.
+         * Devuelve false si la cola no tiene sitio para todas (no se encola ninguna).
+         * Una lectura no válida invalida la petición entera (IllegalArgumentException).
+         */
+        List<IngestaLecturas.Lectura> validas = new ArrayList<>(lecturas.size());
+        for (int i = 0; i < lecturas.size(); i++) {
+            LecturaDTO lectura = lecturas.get(i);
+            if (lectura == null || lectura.getContenedorId() == null || lectura.getContenedorId() <= 0) {
+                throw new IllegalArgumentException("Lectura " + i + ": contenedorId no válido");
+            }
+            if (lectura.getFecha() == null) {
+                throw new IllegalArgumentException("Lectura " + i + ": falta la fecha");
+            }
+            if (lectura.getCantidad() == null || !Double.isFinite(lectura.getCantidad()) || lectura.getCantidad() < 0) {
+                throw new IllegalArgumentException("Lectura " + i + ": cantidad no válida");
+            }
+            validas.add(new IngestaLecturas.Lectura(lectura.getContenedorId(), lectura.getFecha().getTime(),
+                    lectura.getCantidad()));
+        }
+        return ingestaLecturas.encolar(validas);
+    }
+
+    //Get métricas de la ingesta de lecturas
+    public MetricasLecturasDTO metricas_lecturas(){
+        return ingestaLecturas.metricas();
+    }
+
     //Get estado de los contenedores entre fechas
-    public List<EstadoDTO> consulta_entre_fechas(long id, Date inicio, Date fin){
+    public List<EstadoDTO> consulta_entre_fechas(long id, Date inicio, Date fin, String resolucion){
         /**
          * Este metodo devolverá la lista con un treemap de fecha-estado de un contenedor en concreto.
+         * Con resolución hora o dia devuelve un resumen por periodo de la tabla resumen_estado (los periodos
+         * que empiezan en [inicio, fin)), así que el tamaño depende del número de periodos y no de lecturas.
+         * Con auto (o null) se elige según lo largo del rango.
          */
+        ResumenEstado.resolucion periodo = elegir_resolucion(resolucion, inicio, fin);
 
-        Contenedor contenedor = contenedorRepository.findById(id).orElse(null);
+        List<EstadoDTO> result = new ArrayList<>();
+
+        if (periodo == null) {
+            if (!recorrer_estados(id, inicio, fin, result::addAll)) {
+                return Collections.emptyList();
+            }
+            return result;
+        }
 
-        if (contenedor == null) {
+        if (!contenedorRepository.existsById(id)) {
             return Collections.emptyList();
         }
+        // El periodo en que cae inicio también cuenta
+        Date desde = Timestamp.valueOf(ResumenesEstado.inicio(inicio.getTime(), periodo));
+        for (ResumenHistorico resumen : resumenEstadoRepository.findResumenes(id, periodo, desde, fin)) {
+            result.add(new EstadoDTO(resumen.ultimaCantidad(), resumen.inicio(), resumen.lecturas(),
+                    resumen.minimo(), resumen.maximo(), resumen.suma() / resumen.lecturas()));
+        }
+        return result;
+    }
 
-        List<Estado> estados = estadosRepository.findByContenedorAndFechaBetween(contenedor, inicio, fin);
+    //Resolución del histórico a partir de su nombre: null son los estados sueltos
+    private ResumenEstado.resolucion elegir_resolucion(String resolucion, Date inicio, Date fin){
+        if (resolucion == null || resolucion.equalsIgnoreCase(RESOLUCION_AUTO)) {
+            long dias = (fin.getTime() - inicio.getTime()) / MS_POR_DIA;
+            if (dias > autoDiaDias) {
+                return ResumenEstado.resolucion.Dia;
+            }
+            return dias > autoHoraDias ? ResumenEstado.resolucion.Hora : null;
+        }
+        if (resolucion.equalsIgnoreCase(RESOLUCION_ESTADO)) {
+            return null;
+        }
+        if (resolucion.equalsIgnoreCase(RESOLUCION_HORA)) {
+            return ResumenEstado.resolucion.Hora;
+        }
+        if (resolucion.equalsIgnoreCase(RESOLUCION_DIA)) {
+            return ResumenEstado.resolucion.Dia;
+        }
+        throw new IllegalArgumentException("Resolución no válida: " + resolucion);
+    }
 
-        List<EstadoDTO> result = new ArrayList<>();
+    //Recorre el histórico de un contenedor entre fechas, página a página
+    public boolean recorrer_estados(long id, Date inicio, Date fin, Consumer<List<EstadoDTO>> pagina){
+        /*
+         * Paginación por keyset: cada página empieza justo después del último (fecha, id) de la anterior,
+         * así que cuesta lo mismo la primera que la última y solo hay una página en memoria.
+         * Devuelve false si el contenedor no existe.
+         */
+        if (!contenedorRepository.existsById(id)) {
+            return false;
+        }
 
-        estados.forEach(estado -> {result.add(new EstadoDTO(estado.getCantidad(), estado.getFecha()));});
+        Limit limite = Limit.of(tamanoPaginaHistorico);
+        Date desde = inicio;
+        long desdeId = 0;
+        while (true) {
+            List<EstadoHistorico> estados = estadosRepository.findHistorico(id, desde, desdeId, fin, limite);
+            if (estados.isEmpty()) {
+                break;
+            }
+            List<EstadoDTO> dtos = new ArrayList<>(estados.size());
+            estados.forEach(estado -> {dtos.add(new EstadoDTO(estado.cantidad(), estado.fecha()));});
+            pagina.accept(dtos);
+
+            if (estados.size() < tamanoPaginaHistorico) {
+                break;
+            }
+            EstadoHistorico ultimo = estados.get(estados.size() - 1);
+            desde = ultimo.fecha();
+            desdeId = ultimo.id();
+        }
+        return true;
+    }
 
-        return result;
+    public boolean existe_contenedor(long id){
+        return contenedorRepository.existsById(id);
     }
 
     //Get estado de una planta en una fecha determinada
@@ -126,31 +388,532 @@ public class EcoembesService {
     y después el mismo switch
      */
     public double capacidad_planta_fecha(String planta, Date fecha){
-        double result = plantasMap.get(planta).consultarCapacidadDisponible(fecha);
+        PlantaGateway gateway = plantasMap.get(planta);
+        if (gateway == null) {
+            throw new IllegalArgumentException("La planta " + planta + " no existe");
+        }
+        double result = cacheCapacidades.obtener(planta, gateway, fecha);
         return result;
     }
 
-    //Post crear un camión
-    @Transactional
-    public void crear_camion(CamionRequestDTO dto, String planta) {
-        if(!plantasMap.containsKey(planta) || planta == null){
-            throw new IllegalArgumentException("La planta" + planta + " no existe; o no estas añadiendo ninguna");
+    //Mantiene caliente en la caché el horizonte de días publicado por cada planta
+    @Scheduled(initialDelayString = "${ecoembes.cache.precarga-ms:30000}",
+            fixedDelayString = "${ecoembes.cache.precarga-ms:30000}")
+    public void precargar_capacidades(){
+        LocalDate hoy = LocalDate.now();
+        for (String planta : plantasMap.keySet()) {
+            cacheCapacidades.precargar(planta, plantasMap.get(planta), hoy, diasHorizonte);
         }
+    }
 
-        List<Contenedor> contenedores = contenedorRepository.findAllById(dto.getContenedores());
+    //Get capacidad de todas las plantas en una fecha, preguntando a todas a la vez
+    /*
+    Cada planta se consulta con su versión asíncrona, así que el tiempo total es el de la planta
+    más lenta y no la suma de todas. Si ya hay una consulta igual en vuelo, se comparte. Las que no respondan antes de plazoMs (o fallen) salen con
+    capacidad null y el motivo en error, sin retrasar al resto.
+     */
+    public List<CapacidadPlantaDTO> capacidades_plantas_fecha(Date fecha, long plazoMs){
+        Map<String, CompletableFuture<Double>> consultas = new LinkedHashMap<>();
 
-        Camion camion = new Camion(contenedores, planta, dto.getFecha());
-        camionRepository.save(camion);
+        for (String planta : plantasMap.keySet()) {
+            consultas.put(planta, cacheCapacidades.consultar(planta, plantasMap.get(planta), fecha)
+                    .orTimeout(plazoMs, TimeUnit.MILLISECONDS));
+        }
+
+        List<CapacidadPlantaDTO> result = new ArrayList<>();
+
+        consultas.forEach((planta, consulta) -> {
+            try {
+                result.add(new CapacidadPlantaDTO(planta, consulta.join(), null));
+            } catch (CompletionException e) {
+                String motivo = e.getCause() instanceof TimeoutException
+                        ? "Sin respuesta en " + plazoMs + " ms"
+                        : String.valueOf(e.getCause().getMessage());
+                result.add(new CapacidadPlantaDTO(planta, null, motivo));
+            }
+        });
+
+        return result;
     }
 
-    public List<ContenedorDTO> getContenedores(){
-        ArrayList<ContenedorDTO> result = new ArrayList<>();
+    //Get contadores de la caché de capacidades y de las consultas a las plantas
+    public MetricasCapacidadesDTO metricas_capacidades(){
+        List<MetricasPlantaDTO> metricasPlantas = new ArrayList<>();
+        for (String planta : plantasMap.keySet()) {
+            if (plantasMap.get(planta) instanceof PlantaGatewayResiliente gateway) {
+                long nuevas = 0;
+                long reutilizadas = 0;
+                int libres = 0;
+                if (gateway.getDelegado() instanceof PlasSbGateway plasSb) {
+                    nuevas = plasSb.getConexionesNuevas();
+                    reutilizadas = plasSb.getConexionesReutilizadas();
+                    libres = plasSb.getEstadoPool().getAvailable();
+                } else if (gateway.getDelegado() instanceof ConSocketGateway conSocket) {
+                    nuevas = conSocket.getConexionesCreadas();
+                    reutilizadas = conSocket.getConexionesReutilizadas();
+                    libres = conSocket.getConexionesLibres();
+                }
+
+                metricasPlantas.add(new MetricasPlantaDTO(planta, gateway.getEstadoCircuito().name(),
+                        gateway.getFallosSeguidos(), gateway.getRechazadasCircuito(),
+                        gateway.getRechazadasBulkhead(), gateway.getEnCurso(),
+                        gateway.getHedgesLanzados(), gateway.getHedgesGanados(), nuevas, reutilizadas, libres,
+                        cacheCapacidades.isSuscrita(planta)));
+            }
+        }
 
-        contenedorRepository.findAll().forEach(c ->{result.add(new ContenedorDTO(c.getId(), c.getEstado().getCantidad())); System.out.println(c.toString());});
+        return new MetricasCapacidadesDTO(cacheCapacidades.getAciertos(), cacheCapacidades.getObsoletas(),
+                cacheCapacidades.getFallos(), cacheCapacidades.getPeticionesPlanta(),
+                cacheCapacidades.getCoalescidas(), cacheCapacidades.getTamano(),
+                cacheCapacidades.getCambiosRecibidos(), metricasPlantas);
+    }
+
+    //Post crear un camión
+    /*
+    Es un lote de un solo camión: mismas comprobaciones y misma escritura que crear_camiones.
+     */
+    public long crear_camion(CamionRequestDTO dto, String planta) {
+        ResultadoCamionDTO resultado = crear_camiones(List.of(new CamionLoteDTO(planta, dto.getFecha(), dto.getContenedores()))).get(0);
+        switch (resultado.getEstado()) {
+            case CREADO -> { return resultado.getId(); }
+            case SIN_CAPACIDAD -> throw new CapacidadInsuficienteException(resultado.getError());
+            case PLANTA_NO_DISPONIBLE -> throw new PlantaNoDisponibleException(resultado.getError());
+            default -> throw new IllegalArgumentException(resultado.getError());
+        }
+    }
+
+    //Post crear muchos camiones, de varias plantas, de una vez
+    /*
+    Cada camión se valida por separado y tiene su propio resultado (en el orden de la petición):
+    - 400 si la planta no existe, falta la fecha, no tiene contenedores o tiene más de los que caben,
+      algún contenedor no existe o ya va en otro camión del lote, o pesa más que un camión
+    - 409 si no cabe en la planta ese día: su carga, más la de los camiones ya creados (la que tenían
+      al crearlos, guardada en el camión) y la de los aceptados antes en el lote, no puede superar
+      la capacidad que publica la planta
+    - 503 si la planta no responde
+    Los contenedores se comprueban en una sola consulta y las capacidades se piden todas a la vez.
+    Los aceptados se insertan juntos con JDBC batch en una transacción (AltaLoteCamiones). Desde que
+    se leen los camiones ya creados hasta que se confirma la inserción se tienen los cerrojos de las
+    plantas del lote (en orden de nombre, para no bloquearse con otro lote), así dos lotes
+    simultáneos no pueden usar la misma capacidad libre.
+     */
+    public List<ResultadoCamionDTO> crear_camiones(List<CamionLoteDTO> camiones){
+        long inicio = System.nanoTime();
+        List<SolicitudCamion> solicitudes = new ArrayList<>(camiones.size());
+        Set<Long> enLote = new HashSet<>();
+        for (int i = 0; i < camiones.size(); i++) {
+            SolicitudCamion solicitud = new SolicitudCamion(i, camiones.get(i));
+            solicitudes.add(solicitud);
+            CamionLoteDTO camion = solicitud.camion;
+            if (camion == null || camion.getPlanta() == null || !plantasMap.containsKey(camion.getPlanta())) {
+                solicitud.rechazar(DATOS_INVALIDOS, "La planta " + (camion == null ? null : camion.getPlanta()) + " no existe");
+            } else if (camion.getFecha() == null) {
+                solicitud.rechazar(DATOS_INVALIDOS, "La fecha es obligatoria");
+            } else if (camion.getContenedores() == null || camion.getContenedores().isEmpty()
+                    || camion.getContenedores().size() > planificador.getMaxContenedoresCamion()) {
+                solicitud.rechazar(DATOS_INVALIDOS, "El camión debe tener entre 1 y "
+                        + planificador.getMaxContenedoresCamion() + " contenedores");
+            } else {
+                for (Long contenedor : camion.getContenedores()) {
+                    if (contenedor == null || !enLote.add(contenedor)) {
+                        solicitud.rechazar(DATOS_INVALIDOS, "El contenedor " + contenedor + " está repetido en el lote");
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Todos los contenedores en una consulta
+        Map<Long, Double> pesos = altaLoteCamiones.leerPesos(enLote);
+        for (SolicitudCamion solicitud : solicitudes) {
+            if (solicitud.estado != 0) {
+                continue;
+            }
+            for (Long contenedor : solicitud.camion.getContenedores()) {
+                Double cantidad = pesos.get(contenedor);
+                if (cantidad == null) {
+                    solicitud.rechazar(DATOS_INVALIDOS, "El contenedor " + contenedor + " no existe");
+                    break;
+                }
+                solicitud.toneladas += toneladas(cantidad);
+            }
+            if (solicitud.estado == 0 && solicitud.toneladas > planificador.getMaxToneladasCamion()) {
+                solicitud.rechazar(DATOS_INVALIDOS, "La carga (" + solicitud.toneladas + " t) supera el máximo de un camión ("
+                        + planificador.getMaxToneladasCamion() + " t)");
+            }
+        }
 
+        // Capacidad de cada (planta, día) del lote, todas a la vez y fuera de los cerrojos
+        Map<String, CompletableFuture<Double>> capacidades = new HashMap<>();
+        TreeSet<String> plantasLote = new TreeSet<>();
+        LocalDate primerDia = null;
+        for (SolicitudCamion solicitud : solicitudes) {
+            if (solicitud.estado == 0) {
+                String planta = solicitud.camion.getPlanta();
+                solicitud.dia = CacheCapacidades.aLocalDate(solicitud.camion.getFecha());
+                capacidades.computeIfAbsent(planta + "|" + solicitud.dia,
+                        k -> cacheCapacidades.obtenerAsync(planta, plantasMap.get(planta), solicitud.dia));
+                plantasLote.add(planta);
+                if (primerDia == null || solicitud.dia.isBefore(primerDia)) {
+                    primerDia = solicitud.dia;
+                }
+            }
+        }
+        Map<String, Double> libres = new HashMap<>();
+        Map<String, String> errores = new HashMap<>();
+        capacidades.forEach((clave, consulta) -> {
+            try {
+                libres.put(clave, consulta.join());
+            } catch (CompletionException e) {
+                errores.put(clave, String.valueOf(e.getCause().getMessage()));
+                if (!(e.getCause() instanceof IllegalStateException)) {
+                    libres.put(clave, Double.NaN);
+                }
+            }
+        });
+
+        List<ReentrantLock> cerrojos = new ArrayList<>();
+        for (String planta : plantasLote) {
+            cerrojos.add(bloqueosPlanta.computeIfAbsent(planta, p -> new ReentrantLock()));
+        }
+        cerrojos.forEach(ReentrantLock::lock);
+        try {
+            if (primerDia != null) {
+                for (CargaCamion c : camionRepository.findCargasDesde(CacheCapacidades.aDate(primerDia))) {
+                    String clave = c.planta() + "|" + CacheCapacidades.aLocalDate(c.fecha());
+                    if (libres.containsKey(clave)) {
+                        libres.merge(clave, -c.toneladas(), Double::sum);
+                    }
+                }
+            }
+
+            List<SolicitudCamion> aceptadas = new ArrayList<>();
+            List<AltaLoteCamiones.CamionNuevo> nuevos = new ArrayList<>();
+            for (SolicitudCamion solicitud : solicitudes) {
+                if (solicitud.estado != 0) {
+                    continue;
+                }
+                String planta = solicitud.camion.getPlanta();
+                String clave = planta + "|" + solicitud.dia;
+                Double libre = libres.get(clave);
+                if (libre == null) {
+                    // La planta respondió, pero no admite nada ese día
+                    solicitud.rechazar(SIN_CAPACIDAD, "La planta " + planta + " no tiene capacidad el "
+                            + CodecFecha.formatear(solicitud.dia) + ": " + errores.get(clave));
+                } else if (libre.isNaN()) {
+                    solicitud.rechazar(PLANTA_NO_DISPONIBLE, "La planta no responde: " + errores.get(clave));
+                } else if (PlanificadorCamiones.aGramos(solicitud.toneladas) > PlanificadorCamiones.aGramos(libre)) {
+                    solicitud.rechazar(SIN_CAPACIDAD, "A la planta " + planta + " solo le quedan " + Math.max(0, libre)
+                            + " t el " + CodecFecha.formatear(solicitud.dia) + ": no caben " + solicitud.toneladas + " t más");
+                } else {
+                    libres.put(clave, libre - solicitud.toneladas);
+                    aceptadas.add(solicitud);
+                    nuevos.add(new AltaLoteCamiones.CamionNuevo(planta, solicitud.camion.getFecha(),
+                            solicitud.camion.getContenedores(), solicitud.toneladas));
+                }
+            }
+
+            long[] ids = altaLoteCamiones.insertar(nuevos);
+            for (int i = 0; i < ids.length; i++) {
+                aceptadas.get(i).estado = CREADO;
+                aceptadas.get(i).id = ids[i];
+            }
+        } finally {
+            cerrojos.forEach(ReentrantLock::unlock);
+        }
+
+        List<ResultadoCamionDTO> result = new ArrayList<>(solicitudes.size());
+        int creados = 0;
+        for (SolicitudCamion s : solicitudes) {
+            result.add(new ResultadoCamionDTO(s.indice, s.camion == null ? null : s.camion.getPlanta(),
+                    s.estado, s.id, s.toneladas, s.error));
+            if (s.estado == CREADO) {
+                creados++;
+            }
+        }
+        if (camiones.size() > 1) {
+            System.out.println("[CAMIONES] Lote de " + camiones.size() + " camiones: " + creados + " creados en "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+        }
         return result;
     }
 
+    // Estados de cada camión de un lote (códigos HTTP de camiones_nuevo)
+    private static final int CREADO = 201;
+    private static final int DATOS_INVALIDOS = 400;
+    private static final int SIN_CAPACIDAD = 409;
+    private static final int PLANTA_NO_DISPONIBLE = 503;
+
+    // Un camión del lote mientras se valida
+    private static final class SolicitudCamion {
+        final int indice;
+        final CamionLoteDTO camion;
+        LocalDate dia;
+        double toneladas;
+        // 0 mientras siga siendo válido
+        int estado;
+        Long id;
+        String error;
+
+        SolicitudCamion(int indice, CamionLoteDTO camion) {
+            this.indice = indice;
+            this.camion = camion;
+        }
+
+        void rechazar(int estado, String error) {
+            this.estado = estado;
+            this.error = error;
+        }
+    }
+
+    //Get plan de camiones para los próximos días
+    /*
+    Reparte los contenedores con carga (salvo los que ya van en un camión de hoy en adelante) entre
+    las plantas y los días [hoy, hoy + dias), sin superar la capacidad que le queda a cada planta cada
+    día. Las capacidades se piden todas a la vez a través de la caché; un (planta, día) que falla o no
+    responde en plazoMs se queda fuera del plan y se indica en avisos. El plan no crea nada: cada
+    camión se puede crear después con crear_camion.
+     */
+    public PlanCamionesDTO plan_camiones(int dias, long plazoMs){
+        if (dias < 1 || dias > MAX_DIAS_PLAN) {
+            throw new IllegalArgumentException("Se pueden planificar entre 1 y " + MAX_DIAS_PLAN + " días");
+        }
+        long inicio = System.nanoTime();
+        LocalDate hoy = LocalDate.now();
+
+        // Lo ya comprometido: contenedores en camiones y toneladas por (planta, día)
+        Date desde = CacheCapacidades.aDate(hoy);
+        Set<Long> enCamion = new HashSet<>(camionRepository.findContenedoresDesde(desde));
+        Map<String, Double> comprometidas = new HashMap<>();
+        for (CargaCamion c : camionRepository.findCargasDesde(desde)) {
+            comprometidas.merge(c.planta() + "|" + CacheCapacidades.aLocalDate(c.fecha()), c.toneladas(), Double::sum);
+        }
+
+        // Todas las capacidades a la vez; en orden cronológico (PRIMER_AJUSTE lo aprovecha)
+        Map<Hueco, CompletableFuture<Double>> consultas = new LinkedHashMap<>();
+        for (int d = 0; d < dias; d++) {
+            LocalDate fecha = hoy.plusDays(d);
+            for (String planta : plantasMap.keySet()) {
+                consultas.put(new Hueco(planta, fecha, 0), cacheCapacidades.obtenerAsync(planta, plantasMap.get(planta), fecha)
+                        .orTimeout(plazoMs, TimeUnit.MILLISECONDS));
+            }
+        }
+        List<Hueco> huecos = new ArrayList<>();
+        List<String> avisos = new ArrayList<>();
+        consultas.forEach((hueco, consulta) -> {
+            try {
+                double libre = consulta.join() - comprometidas.getOrDefault(hueco.planta() + "|" + hueco.fecha(), 0.0);
+                if (libre > 0) {
+                    huecos.add(new Hueco(hueco.planta(), hueco.fecha(), libre));
+                }
+            } catch (CompletionException e) {
+                // Que la planta no tenga capacidad ese día es una respuesta válida: simplemente no hay hueco
+                if (!(e.getCause() instanceof IllegalStateException)) {
+                    String motivo = e.getCause() instanceof TimeoutException
+                            ? "Sin respuesta en " + plazoMs + " ms"
+                            : String.valueOf(e.getCause().getMessage());
+                    avisos.add(hueco.planta() + " " + CodecFecha.formatear(hueco.fecha()) + ": " + motivo);
+                }
+            }
+        });
+
+        // El índice en memoria tiene lo mismo que la consulta; mientras se carga, se pregunta a la base de datos
+        List<PesoContenedor> pesos = indiceContenedores.isListo()
+                ? indiceContenedores.pesos() : contenedorRepository.findPesos();
+        pesos.removeIf(p -> enCamion.contains(p.id()));
+        long[] ids = new long[pesos.size()];
+        double[] toneladas = new double[pesos.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pesos.get(i).id();
+            toneladas[i] = toneladas(pesos.get(i).cantidad());
+        }
+
+        Plan plan = planificador.planificar(ids, toneladas, huecos);
+
+        List<CamionPlanDTO> camiones = new ArrayList<>(plan.camiones().size());
+        plan.camiones().forEach(c -> camiones.add(new CamionPlanDTO(c.planta(), CacheCapacidades.aDate(c.fecha()),
+                Arrays.stream(c.contenedores()).boxed().toList(), c.toneladas())));
+
+        long milisegundos = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        System.out.println("[PLAN] " + ids.length + " contenedores, " + huecos.size() + " huecos -> "
+                + camiones.size() + " camiones, " + plan.toneladasAsignadas() + " t (" + plan.heuristica()
+                + ") en " + milisegundos + " ms");
+
+        return new PlanCamionesDTO(plan.heuristica().name(), plan.toneladasAsignadas(), plan.contenedoresAsignados(),
+                plan.toneladasSinAsignar(), plan.contenedoresSinAsignar(), milisegundos, camiones, avisos);
+    }
+
+    // Peso de un contenedor con ese nivel de llenado, en las toneladas de las capacidades de las plantas
+    private double toneladas(double cantidad) {
+        return cantidad * toneladasContenedorLleno;
+    }
+
+    //Get una página de contenedores con su estado actual
+    /*
+    Paginación por cursor (keyset): la página empieza justo después del último contenedor de la anterior,
+    así que cualquier página es una sola consulta que recorre un índice y se para en el límite.
+    - color: solo contenedores de ese color (Verde, Naranja, Rojo), o null para todos
+    - orden: ORDEN_ID (por id) u ORDEN_LLENADO (de más a menos lleno)
+    - cursor: el siguienteCursor de la página anterior, o null para la primera. Es opaco para el
+      cliente y solo vale con el mismo orden con que se obtuvo
+    Solo salen contenedores que tienen algún estado.
+     */
+    public PaginaContenedoresDTO listar_contenedores(String color, String orden, String cursor, int limite){
+        if (limite <= 0) {
+            throw new IllegalArgumentException("El límite debe ser positivo");
+        }
+        Estado.tipo tipo = parsear_color(color);
+        boolean porLlenado;
+        if (orden == null || orden.isBlank() || orden.equals(ORDEN_ID)) {
+            porLlenado = false;
+        } else if (orden.equals(ORDEN_LLENADO)) {
+            porLlenado = true;
+        } else {
+            throw new IllegalArgumentException("Orden no válido: " + orden);
+        }
+
+        // Posición de la que parte la página: (cantidad, id) del último contenedor ya devuelto
+        double desdeCantidad = Double.MAX_VALUE;
+        long desdeId = porLlenado ? Long.MAX_VALUE : 0;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] partes;
+            try {
+                partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+                if (!partes[0].equals(porLlenado ? ORDEN_LLENADO : ORDEN_ID) || partes.length != (porLlenado ? 3 : 2)) {
+                    throw new IllegalArgumentException();
+                }
+                if (porLlenado) {
+                    desdeCantidad = Double.parseDouble(partes[1]);
+                }
+                desdeId = Long.parseLong(partes[partes.length - 1]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Cursor no válido para este orden");
+            }
+        }
+
+        Limit lim = Limit.of(limite);
+        List<ContenedorDTO> contenedores;
+        if (porLlenado) {
+            contenedores = tipo == null
+                    ? contenedorRepository.findPaginaPorLlenado(desdeCantidad, desdeId, lim)
+                    : contenedorRepository.findPaginaPorColorYLlenado(tipo, desdeCantidad, desdeId, lim);
+        } else {
+            contenedores = tipo == null
+                    ? contenedorRepository.findPagina(desdeId, lim)
+                    : contenedorRepository.findPaginaPorColor(tipo, desdeId, lim);
+        }
+
+        // Una página incompleta es la última
+        String siguiente = null;
+        if (contenedores.size() == limite) {
+            ContenedorDTO ultimo = contenedores.get(contenedores.size() - 1);
+            String posicion = porLlenado
+                    ? ORDEN_LLENADO + ":" + ultimo.getCantidad() + ":" + ultimo.getId()
+                    : ORDEN_ID + ":" + ultimo.getId();
+            siguiente = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(posicion.getBytes(StandardCharsets.UTF_8));
+        }
+        return new PaginaContenedoresDTO(contenedores, siguiente);
+    }
+
+    //Color de llenado a partir de su nombre (sin distinguir mayúsculas), o null si no se indica
+    private static Estado.tipo parsear_color(String color){
+        if (color == null || color.isBlank()) {
+            return null;
+        }
+        for (Estado.tipo t : Estado.tipo.values()) {
+            if (t.name().equalsIgnoreCase(color.trim())) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException("Color no válido: " + color);
+    }
+
+    //Get contenedores según su estado actual, desde el índice en memoria
+    /*
+    Contenedores de un color y/o con cantidad mayor que minCantidad (los dos opcionales), en orden de id.
+    Devuelve el total y los primeros limite. No toca la base de datos: IllegalStateException si el índice
+    aún se está cargando.
+     */
+    public ConsultaLlenadoDTO consultar_llenado(String color, Double minCantidad, int limite){
+        if (limite < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+        if (minCantidad != null && minCantidad.isNaN()) {
+            throw new IllegalArgumentException("min_cantidad no válida");
+        }
+        Estado.tipo tipo = parsear_color(color);
+        if (!indiceContenedores.isListo()) {
+            throw new IllegalStateException("El índice de contenedores se está cargando");
+        }
+        long inicio = System.nanoTime();
+        List<ContenedorDTO> contenedores = new ArrayList<>(Math.min(limite, 1024));
+        int total = indiceContenedores.consultar(tipo, minCantidad, limite, contenedores);
+        long microsegundos = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio);
+        return new ConsultaLlenadoDTO(total, microsegundos, contenedores);
+    }
+
+    //Get estado actual de un contenedor desde el índice en memoria (null si no existe o no tiene estado)
+    public ContenedorDTO llenado_contenedor(long id){
+        if (!indiceContenedores.isListo()) {
+            throw new IllegalStateException("El índice de contenedores se está cargando");
+        }
+        return indiceContenedores.buscar(id);
+    }
+
+    //Get cuántos contenedores hay de cada color
+    public ResumenLlenadoDTO resumen_llenado(){
+        if (!indiceContenedores.isListo()) {
+            throw new IllegalStateException("El índice de contenedores se está cargando");
+        }
+        int[] cuentas = indiceContenedores.contarPorTipo();
+        Map<String, Integer> porColor = new LinkedHashMap<>();
+        for (Estado.tipo t : Estado.tipo.values()) {
+            porColor.put(t.name(), cuentas[t.ordinal()]);
+        }
+        return new ResumenLlenadoDTO(indiceContenedores.getTamano(), porColor, indiceContenedores.getMsConstruccion());
+    }
+
+    //Get contenedores en el orden en que se prevé que se llenen
+    /*
+    Los primeros limite contenedores de la cola de recogida: primero los que ya están llenos (desde hace más
+    tiempo) y después los que se llenarán antes según su velocidad de llenado. Con horas, solo los que se
+    llenan antes de ahora + horas. Los que no se están llenando no aparecen. IllegalStateException mientras
+    se calcula la primera predicción.
+     */
+    public List<PrioridadContenedorDTO> prioridad_contenedores(Double horas, int limite){
+        if (limite < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+        if (horas != null && horas.isNaN()) {
+            throw new IllegalArgumentException("horas no válidas");
+        }
+        if (!prediccionLlenado.isListo()) {
+            throw new IllegalStateException("La predicción de llenado se está calculando");
+        }
+        long ahora = System.currentTimeMillis();
+        long hasta = Long.MAX_VALUE;
+        if (horas != null && horas * 3_600_000 < Long.MAX_VALUE - ahora) {
+            hasta = ahora + (long) (horas * 3_600_000);
+        }
+        List<PrioridadContenedorDTO> resultado = new ArrayList<>();
+        for (PrediccionLlenado.Prediccion p : prediccionLlenado.primeros(hasta, limite)) {
+            Double tasaHora = Double.isNaN(p.tasa()) ? null : p.tasa() * 3_600_000;
+            resultado.add(new PrioridadContenedorDTO(p.contenedor(), p.cantidad(), new Date(p.fecha()), tasaHora,
+                    new Date(p.instante()), (p.instante() - ahora) / 3_600_000.0));
+        }
+        return resultado;
+    }
+
+    //Rellena la copia del estado actual en contenedores guardados antes de que existiera
+    @PostConstruct
+    public void completar_estado_actual(){
+        int actualizados = contenedorRepository.completarEstadoActual();
+        if (actualizados > 0) {
+            System.out.println("[CONTENEDORES] Estado actual copiado en " + actualizados + " contenedores");
+        }
+    }
+
     @Transactional
     public List<PlantaDeReciclajeDTO> getPlantas(){
         List<PlantaDeReciclajeDTO> result = new ArrayList<>();
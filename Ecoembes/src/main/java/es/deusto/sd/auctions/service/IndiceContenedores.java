@@ -0,0 +1,322 @@
+package es.deusto.sd.auctions.service;
+
+import es.deusto.sd.auctions.dao.PesoContenedor;
+import es.deusto.sd.auctions.dto.ContenedorDTO;
+import es.deusto.sd.auctions.entity.Estado;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Estado actual de todos los contenedores en memoria, para responder sin ir a la base de datos.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Arrays primitivos paralelos (id, cantidad, fecha en epoch ms, ordinal de Estado.tipo) en
+ *   vez de un objeto por contenedor: 200.000 contenedores ocupan unos 5 MB y recorrer las
+ *   cantidades es recorrer un double[] contiguo
+ * - Los ids se guardan ordenados: el hueco de un contenedor se busca por búsqueda binaria.
+ *   Los contenedores nuevos tienen ids crecientes (IDENTITY), así que casi siempre se añaden al final
+ * - Un BitSet por color marca los huecos de ese color: saber si un contenedor es Rojo es un
+ *   bit, contar los Rojos es cardinality() y recorrerlos es nextSetBit
+ * - Se construye con una sola consulta cuando la aplicación está lista (después de
+ *   DataInitializer) y IngestaLecturas lo actualiza tras confirmar cada tanda. Igual que el
+ *   puntero contenedor.estado_id, una lectura solo reemplaza a otra más antigua o igual, así
+ *   que da igual el orden en que lleguen la construcción y las actualizaciones
+ * - StampedLock: la consulta de un contenedor es una lectura optimista sin bloqueo; los
+ *   recorridos toman el cerrojo de lectura (varios a la vez) y las actualizaciones el de escritura
+ */
+@Component
+class IndiceContenedores {
+
+    private static final String SQL_ESTADOS = "SELECT c.id, e.cantidad, e.fecha, e.estado FROM contenedor c "
+            + "LEFT JOIN estado e ON e.id = c.estado_id ORDER BY c.id";
+    private static final Estado.tipo[] TIPOS = Estado.tipo.values();
+    // Ordinal de un contenedor sin estado
+    private static final byte SIN_ESTADO = -1;
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StampedLock cerrojo = new StampedLock();
+
+    // Protegidos por cerrojo. Los huecos [0, tamano) están ocupados y ordenados por id
+    private long[] ids = new long[CAPACIDAD_INICIAL];
+    private double[] cantidades = new double[CAPACIDAD_INICIAL];
+    private long[] fechas = new long[CAPACIDAD_INICIAL];
+    private byte[] tipos = new byte[CAPACIDAD_INICIAL];
+    private final BitSet[] porTipo = new BitSet[TIPOS.length];
+    private int tamano;
+
+    private volatile boolean listo;
+    private volatile long msConstruccion;
+
+    IndiceContenedores(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (int t = 0; t < porTipo.length; t++) {
+            porTipo[t] = new BitSet();
+        }
+    }
+
+    /**
+     * Carga el estado actual de todos los contenedores con una sola consulta.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        long inicio = System.nanoTime();
+        long sello = cerrojo.writeLock();
+        try {
+            // Lo que haya llegado antes por actualizar() se vuelve a aplicar encima si es más nuevo
+            long[] idsPrevios = Arrays.copyOf(ids, tamano);
+            double[] cantidadesPrevias = Arrays.copyOf(cantidades, tamano);
+            long[] fechasPrevias = Arrays.copyOf(fechas, tamano);
+            byte[] tiposPrevios = Arrays.copyOf(tipos, tamano);
+
+            tamano = 0;
+            for (BitSet bits : porTipo) {
+                bits.clear();
+            }
+            jdbcTemplate.query(SQL_ESTADOS, rs -> {
+                String estado = rs.getString(4);
+                if (estado == null) {
+                    anadir(rs.getLong(1), 0, 0, SIN_ESTADO);
+                } else {
+                    anadir(rs.getLong(1), rs.getDouble(2), rs.getTimestamp(3).getTime(),
+                            (byte) Estado.tipo.valueOf(estado).ordinal());
+                }
+            });
+            for (int i = 0; i < idsPrevios.length; i++) {
+                if (tiposPrevios[i] != SIN_ESTADO) {
+                    aplicar(idsPrevios[i], cantidadesPrevias[i], fechasPrevias[i], tiposPrevios[i]);
+                }
+            }
+            listo = true;
+        } finally {
+            cerrojo.unlockWrite(sello);
+        }
+        msConstruccion = (System.nanoTime() - inicio) / 1_000_000;
+        System.out.println("[INDICE] " + tamano + " contenedores cargados en memoria en " + msConstruccion + " ms");
+    }
+
+    /**
+     * Aplica las lecturas más recientes de una tanda ya confirmada (mismo índice en los tres arrays).
+     */
+    void actualizar(long[] contenedores, double[] cantidades, long[] fechas) {
+        long sello = cerrojo.writeLock();
+        try {
+            for (int i = 0; i < contenedores.length; i++) {
+                aplicar(contenedores[i], cantidades[i], fechas[i], (byte) Estado.calcularTipo(cantidades[i]).ordinal());
+            }
+        } finally {
+            cerrojo.unlockWrite(sello);
+        }
+    }
+
+    boolean isListo() {
+        return listo;
+    }
+
+    long getMsConstruccion() {
+        return msConstruccion;
+    }
+
+    /**
+     * Estado actual de un contenedor, o null si no está o no tiene estado.
+     */
+    ContenedorDTO buscar(long id) {
+        long sello = cerrojo.tryOptimisticRead();
+        ContenedorDTO resultado = leer(id);
+        if (!cerrojo.validate(sello)) {
+            // Alguien escribió mientras se leía: se repite con el cerrojo de lectura
+            sello = cerrojo.readLock();
+            try {
+                resultado = leer(id);
+            } finally {
+                cerrojo.unlockRead(sello);
+            }
+        }
+        return resultado;
+    }
+
+    private ContenedorDTO leer(long id) {
+        // Copias locales: con la lectura optimista los arrays pueden cambiar a mitad
+        long[] ids = this.ids;
+        double[] cantidades = this.cantidades;
+        long[] fechas = this.fechas;
+        byte[] tipos = this.tipos;
+        int i = Arrays.binarySearch(ids, 0, Math.min(tamano, ids.length), id);
+        // Si los arrays crecen a mitad de la lectura pueden ser de tamaños distintos (validate lo detecta)
+        if (i < 0 || i >= cantidades.length || i >= fechas.length || i >= tipos.length || tipos[i] == SIN_ESTADO) {
+            return null;
+        }
+        return new ContenedorDTO(ids[i], cantidades[i], TIPOS[tipos[i]], new Date(fechas[i]));
+    }
+
+    /**
+     * Contenedores por color, en el orden de Estado.tipo.
+     */
+    int[] contarPorTipo() {
+        long sello = cerrojo.readLock();
+        try {
+            int[] cuentas = new int[porTipo.length];
+            for (int t = 0; t < cuentas.length; t++) {
+                cuentas[t] = porTipo[t].cardinality();
+            }
+            return cuentas;
+        } finally {
+            cerrojo.unlockRead(sello);
+        }
+    }
+
+    int getTamano() {
+        long sello = cerrojo.readLock();
+        try {
+            return tamano;
+        } finally {
+            cerrojo.unlockRead(sello);
+        }
+    }
+
+    /**
+     * Contenedores con cantidad mayor que minCantidad (null: todos los que tienen estado),
+     * solo de ese color si tipo no es null, en orden de id.
+     *
+     * @param encontrados Recibe los primeros limite contenedores
+     * @return Cuántos cumplen la condición en total
+     */
+    int consultar(Estado.tipo tipo, Double minCantidad, int limite, List<ContenedorDTO> encontrados) {
+        long sello = cerrojo.readLock();
+        try {
+            if (minCantidad == null && tipo != null) {
+                // Solo color: el total es la cardinalidad y basta recorrer los primeros bits
+                BitSet bits = porTipo[tipo.ordinal()];
+                for (int i = bits.nextSetBit(0); i >= 0 && encontrados.size() < limite; i = bits.nextSetBit(i + 1)) {
+                    encontrados.add(dto(i));
+                }
+                return bits.cardinality();
+            }
+            // Con umbral hay que mirar cada cantidad: una pasada por los arrays es más rápida que saltar
+            // de bit en bit cuando el color tiene muchos contenedores
+            double min = minCantidad == null ? Double.NEGATIVE_INFINITY : minCantidad;
+            byte buscado = tipo == null ? SIN_ESTADO : (byte) tipo.ordinal();
+            int i = 0;
+            for (; i < tamano && encontrados.size() < limite; i++) {
+                if (cantidades[i] > min && (tipo == null ? tipos[i] != SIN_ESTADO : tipos[i] == buscado)) {
+                    encontrados.add(dto(i));
+                }
+            }
+            // El resto solo se cuenta, sin saltos (& en vez de &&): con cantidades repartidas al azar
+            // un if falla la predicción en casi la mitad de las iteraciones
+            int total = encontrados.size();
+            if (tipo == null) {
+                for (; i < tamano; i++) {
+                    total += (cantidades[i] > min & tipos[i] != SIN_ESTADO) ? 1 : 0;
+                }
+            } else {
+                for (; i < tamano; i++) {
+                    total += (cantidades[i] > min & tipos[i] == buscado) ? 1 : 0;
+                }
+            }
+            return total;
+        } finally {
+            cerrojo.unlockRead(sello);
+        }
+    }
+
+    /**
+     * Id y cantidad de los contenedores con algo dentro, como ContenedorRepository.findPesos().
+     */
+    List<PesoContenedor> pesos() {
+        long sello = cerrojo.readLock();
+        try {
+            List<PesoContenedor> pesos = new ArrayList<>();
+            for (int i = 0; i < tamano; i++) {
+                if (tipos[i] != SIN_ESTADO && cantidades[i] > 0) {
+                    pesos.add(new PesoContenedor(ids[i], cantidades[i]));
+                }
+            }
+            return pesos;
+        } finally {
+            cerrojo.unlockRead(sello);
+        }
+    }
+
+    private ContenedorDTO dto(int i) {
+        return new ContenedorDTO(ids[i], cantidades[i], TIPOS[tipos[i]], new Date(fechas[i]));
+    }
+
+    // Los métodos siguientes se llaman con el cerrojo de escritura
+
+    /**
+     * Añade al final (los ids llegan ordenados de la consulta).
+     */
+    private void anadir(long id, double cantidad, long fecha, byte tipo) {
+        asegurarCapacidad();
+        ids[tamano] = id;
+        cantidades[tamano] = cantidad;
+        fechas[tamano] = fecha;
+        tipos[tamano] = tipo;
+        if (tipo != SIN_ESTADO) {
+            porTipo[tipo].set(tamano);
+        }
+        tamano++;
+    }
+
+    private void aplicar(long id, double cantidad, long fecha, byte tipo) {
+        int i = Arrays.binarySearch(ids, 0, tamano, id);
+        if (i < 0) {
+            i = insertar(-i - 1, id);
+        } else if (tipos[i] != SIN_ESTADO) {
+            if (fechas[i] > fecha) {
+                // Lectura atrasada: el contenedor ya tiene un estado más nuevo
+                return;
+            }
+            porTipo[tipos[i]].clear(i);
+        }
+        cantidades[i] = cantidad;
+        fechas[i] = fecha;
+        tipos[i] = tipo;
+        porTipo[tipo].set(i);
+    }
+
+    /**
+     * Abre el hueco posicion para un contenedor que no estaba (creado después de construir el índice).
+     */
+    private int insertar(int posicion, long id) {
+        asegurarCapacidad();
+        int mover = tamano - posicion;
+        if (mover > 0) {
+            System.arraycopy(ids, posicion, ids, posicion + 1, mover);
+            System.arraycopy(cantidades, posicion, cantidades, posicion + 1, mover);
+            System.arraycopy(fechas, posicion, fechas, posicion + 1, mover);
+            System.arraycopy(tipos, posicion, tipos, posicion + 1, mover);
+            // Los huecos desplazados cambian de bit en su color
+            for (BitSet bits : porTipo) {
+                for (int i = bits.previousSetBit(tamano - 1); i >= posicion; i = bits.previousSetBit(i - 1)) {
+                    bits.clear(i);
+                    bits.set(i + 1);
+                }
+            }
+        }
+        ids[posicion] = id;
+        tipos[posicion] = SIN_ESTADO;
+        tamano++;
+        return posicion;
+    }
+
+    private void asegurarCapacidad() {
+        if (tamano == ids.length) {
+            int nueva = ids.length * 2;
+            ids = Arrays.copyOf(ids, nueva);
+            cantidades = Arrays.copyOf(cantidades, nueva);
+            fechas = Arrays.copyOf(fechas, nueva);
+            tipos = Arrays.copyOf(tipos, nueva);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package es.deusto.sd.auctions.service;
+
+import es.deusto.sd.auctions.dto.MetricasLecturasDTO;
+import es.deusto.sd.auctions.entity.Estado;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recibe las lecturas de los sensores y las escribe en la tabla estado en segundo plano.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Las lecturas entran en una ArrayBlockingQueue acotada y la petición responde en cuanto
+ *   están en la cola. Si una petición no cabe entera se rechaza entera (429): el sensor la
+ *   reenvía más tarde sin tener que saber qué parte entró
+ * - Un único hilo escritor vacía la cola en tandas de hasta tamanoTanda lecturas: con carga
+ *   las tandas salen grandes solas y sin carga cada lectura se escribe al momento
+ * - Cada tanda es una transacción de JDBC: un batchUpdate de INSERT en estado (con los ids
+ *   generados) y otro que mueve contenedor.estado_id (y su copia de cantidad y color) a la
+ *   lectura más reciente de cada contenedor. Estado y Contenedor usan IDENTITY, así que con
+ *   JPA serían tres sentencias sueltas por lectura, como hace DataInitializer
+ * - El puntero solo avanza si la lectura es más nueva que el estado actual: una lectura
+ *   atrasada se guarda en el histórico pero no pisa el estado del contenedor
+ * - Las lecturas de contenedores que no existen se descartan antes de insertar (consulta con
+ *   UNNEST de los ids de la tanda, como AltaLoteCamiones), así una lectura mala no tumba la tanda
+ * - En la misma transacción se suman las lecturas a sus resúmenes por hora y día (ResumenesEstado).
+ *   El escritor no empieza hasta que ResumenesEstado ha rellenado los del histórico al arrancar
+ * - Tras confirmar cada tanda se actualiza IndiceContenedores con la lectura más reciente de
+ *   cada contenedor y PrediccionLlenado con todas las lecturas guardadas
+ * - Al parar la aplicación se escriben las lecturas que queden en la cola
+ */
+@Component
+class IngestaLecturas {
+
+    private static final String SQL_EXISTENTES = "SELECT c.id FROM UNNEST(?) u(id) JOIN contenedor c ON c.id = u.id";
+    private static final String SQL_ESTADO = "INSERT INTO estado (estado, fecha, cantidad, contenedor_id) VALUES (?, ?, ?, ?)";
+    private static final String SQL_PUNTERO = "UPDATE contenedor c SET estado_id = ?, cantidad = ?, llenado = ? WHERE c.id = ? "
+            + "AND NOT EXISTS (SELECT 1 FROM estado e WHERE e.id = c.estado_id AND e.fecha > ?)";
+    // Espera máxima del escritor antes de volver a mirar si hay que parar
+    private static final long ESPERA_MS = 200;
+
+    /**
+     * Lectura ya validada tal como se guarda en la cola.
+     */
+    record Lectura(long contenedor, long fecha, double cantidad) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final IndiceContenedores indice;
+    private final PrediccionLlenado prediccion;
+    private final ResumenesEstado resumenes;
+    private final int tamanoTanda;
+    private final int capacidadCola;
+    private final ArrayBlockingQueue<Lectura> cola;
+    private final Thread escritor;
+    private volatile boolean cerrada;
+
+    // Métricas
+    private final AtomicLong aceptadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong guardadas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong fallidas = new AtomicLong();
+    private final AtomicLong tandas = new AtomicLong();
+    private volatile long msUltimaTanda;
+
+    IngestaLecturas(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, IndiceContenedores indice,
+                    PrediccionLlenado prediccion, ResumenesEstado resumenes,
+                    @Value("${ecoembes.lecturas.capacidad-cola:200000}") int capacidadCola,
+                    @Value("${ecoembes.lecturas.tamano-tanda:5000}") int tamanoTanda) {
+        if (capacidadCola <= 0 || tamanoTanda <= 0) {
+            throw new IllegalArgumentException("La cola y la tanda de lecturas deben ser positivas");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.indice = indice;
+        this.prediccion = prediccion;
+        this.resumenes = resumenes;
+        this.capacidadCola = capacidadCola;
+        this.tamanoTanda = tamanoTanda;
+        this.cola = new ArrayBlockingQueue<>(capacidadCola);
+
+        this.escritor = new Thread(this::escribir, "ecoembes-lecturas");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /**
+     * Encola todas las lecturas o ninguna.
+     *
+     * @return false si no caben en la cola (o la ingesta está parada)
+     */
+    boolean encolar(List<Lectura> lecturas) {
+        // Solo se añade dentro de este cerrojo y el escritor solo quita: el hueco comprobado no se pierde
+        synchronized (cola) {
+            if (cerrada || cola.remainingCapacity() < lecturas.size()) {
+                rechazadas.addAndGet(lecturas.size());
+                return false;
+            }
+            cola.addAll(lecturas);
+        }
+        aceptadas.addAndGet(lecturas.size());
+        return true;
+    }
+
+    MetricasLecturasDTO metricas() {
+        return new MetricasLecturasDTO(aceptadas.get(), rechazadas.get(), guardadas.get(), descartadas.get(),
+                fallidas.get(), cola.size(), capacidadCola, tandas.get(), msUltimaTanda);
+    }
+
+    private void escribir() {
+        try {
+            // Mientras se rellenan los resúmenes del histórico, las lecturas esperan en la cola
+            resumenes.esperarRelleno();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        List<Lectura> tanda = new ArrayList<>(tamanoTanda);
+        while (!cerrada || !cola.isEmpty()) {
+            try {
+                Lectura primera = cola.poll(ESPERA_MS, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                tanda.add(primera);
+                cola.drainTo(tanda, tamanoTanda - 1);
+                guardar(tanda);
+            } catch (InterruptedException e) {
+                // Solo se interrumpe al cerrar si el vaciado tarda demasiado
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                fallidas.addAndGet(tanda.size());
+                System.err.println("[LECTURAS] Error guardando " + tanda.size() + " lecturas: " + e.getMessage());
+            } finally {
+                tanda.clear();
+            }
+        }
+    }
+
+    private void guardar(List<Lectura> tanda) {
+        long inicio = System.nanoTime();
+        List<Lectura> validas = filtrarExistentes(tanda);
+        descartadas.addAndGet(tanda.size() - validas.size());
+        if (validas.isEmpty()) {
+            return;
+        }
+
+        // Lectura más reciente de cada contenedor en la tanda (a igual fecha, la última en llegar)
+        Map<Long, Integer> ultima = new HashMap<>();
+        for (int i = 0; i < validas.size(); i++) {
+            ultima.merge(validas.get(i).contenedor(), i,
+                    (actual, nueva) -> validas.get(nueva).fecha() >= validas.get(actual).fecha() ? nueva : actual);
+        }
+        List<Integer> punteros = new ArrayList<>(ultima.values());
+
+        transactionTemplate.executeWithoutResult(estado -> {
+            GeneratedKeyHolder claves = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(con -> con.prepareStatement(SQL_ESTADO, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            Lectura lectura = validas.get(i);
+                            ps.setString(1, Estado.calcularTipo(lectura.cantidad()).name());
+                            ps.setTimestamp(2, new Timestamp(lectura.fecha()));
+                            ps.setDouble(3, lectura.cantidad());
+                            ps.setLong(4, lectura.contenedor());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return validas.size();
+                        }
+                    }, claves);
+
+            List<Map<String, Object>> generadas = claves.getKeyList();
+            if (generadas.size() != validas.size()) {
+                throw new IllegalStateException("Se esperaban " + validas.size() + " ids generados y llegaron "
+                        + generadas.size());
+            }
+
+            jdbcTemplate.batchUpdate(SQL_PUNTERO, punteros, punteros.size(), (ps, i) -> {
+                Lectura lectura = validas.get(i);
+                ps.setLong(1, ((Number) generadas.get(i).values().iterator().next()).longValue());
+                ps.setDouble(2, lectura.cantidad());
+                ps.setString(3, Estado.calcularTipo(lectura.cantidad()).name());
+                ps.setLong(4, lectura.contenedor());
+                ps.setTimestamp(5, new Timestamp(lectura.fecha()));
+            });
+
+            resumenes.registrar(validas);
+        });
+
+        // Solo lo confirmado llega al índice en memoria
+        long[] contenedores = new long[punteros.size()];
+        double[] cantidades = new double[punteros.size()];
+        long[] fechas = new long[punteros.size()];
+        for (int k = 0; k < contenedores.length; k++) {
+            Lectura lectura = validas.get(punteros.get(k));
+            contenedores[k] = lectura.contenedor();
+            cantidades[k] = lectura.cantidad();
+            fechas[k] = lectura.fecha();
+        }
+        indice.actualizar(contenedores, cantidades, fechas);
+        prediccion.actualizar(validas);
+
+        guardadas.addAndGet(validas.size());
+        tandas.incrementAndGet();
+        msUltimaTanda = (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private List<Lectura> filtrarExistentes(List<Lectura> tanda) {
+        Set<Long> ids = new HashSet<>();
+        for (Lectura lectura : tanda) {
+            ids.add(lectura.contenedor());
+        }
+        Long[] array = ids.toArray(new Long[0]);
+        Set<Long> existentes = new HashSet<>();
+        jdbcTemplate.query(SQL_EXISTENTES,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", array)),
+                rs -> {
+                    existentes.add(rs.getLong(1));
+                });
+        if (existentes.size() == ids.size()) {
+            return tanda;
+        }
+        List<Lectura> validas = new ArrayList<>(tanda.size());
+        for (Lectura lectura : tanda) {
+            if (existentes.contains(lectura.contenedor())) {
+                validas.add(lectura);
+            }
+        }
+        return validas;
+    }
+
+    @PreDestroy
+    public void cerrar() throws InterruptedException {
+        cerrada = true;
+        // El escritor vacía lo que queda en la cola antes de terminar
+        escritor.join(30_000);
+        if (escritor.isAlive()) {
+            escritor.interrupt();
+            System.err.println("[LECTURAS] Se pierden " + cola.size() + " lecturas sin guardar al cerrar");
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package es.deusto.sd.auctions.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Reparte contenedores en camiones hacia (planta, día) sin superar la capacidad de cada
+ * planta ese día, intentando llevar el máximo de toneladas.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Es un problema de mochilas múltiples (NP-difícil), así que se resuelve con heurísticas
+ *   de bin packing sobre los contenedores ordenados de más a menos pesado ("decreasing"):
+ *   PRIMER_AJUSTE (el primer hueco en que cabe; con los huecos en orden cronológico, lo
+ *   antes posible), MEJOR_AJUSTE (el hueco que queda más justo) y PEOR_AJUSTE (el hueco
+ *   con más sitio, reparte la carga)
+ * - Las tres heurísticas se calculan en paralelo y se queda la que más toneladas asigna.
+ *   A igualdad gana la primera de la lista: si sobra capacidad, todo sale lo antes posible
+ * - Después, los contenedores de cada (planta, día) se empaquetan en camiones con
+ *   best-fit decreasing respetando maxToneladasCamion y maxContenedoresCamion.
+ *   Cada (planta, día) es independiente, así que también se empaquetan en paralelo
+ * - El paralelismo usa el ForkJoinPool común (parallelSort y parallel streams): el
+ *   planificador no tiene hilos propios
+ * - Pesos en gramos (long): las sumas son exactas y "sin superar la capacidad" es estricto
+ * - Un contenedor más pesado que un camión no se puede llevar nunca: queda sin asignar
+ */
+public class PlanificadorCamiones {
+
+    public enum Heuristica { PRIMER_AJUSTE, MEJOR_AJUSTE, PEOR_AJUSTE }
+
+    /**
+     * Capacidad libre de una planta un día, en toneladas.
+     */
+    public record Hueco(String planta, LocalDate fecha, double capacidad) {}
+
+    /**
+     * Un camión planificado: contenedores que lleva y toneladas totales.
+     */
+    public record CamionPlan(String planta, LocalDate fecha, long[] contenedores, double toneladas) {}
+
+    public record Plan(List<CamionPlan> camiones, Heuristica heuristica, double toneladasAsignadas,
+                       int contenedoresAsignados, double toneladasSinAsignar, int contenedoresSinAsignar) {}
+
+    private static final double GRAMOS_POR_TONELADA = 1_000_000.0;
+
+    private final long maxGramosCamion;
+    private final int maxContenedoresCamion;
+
+    public PlanificadorCamiones(double maxToneladasCamion, int maxContenedoresCamion) {
+        if (maxToneladasCamion <= 0 || maxContenedoresCamion <= 0) {
+            throw new IllegalArgumentException("Los límites del camión deben ser positivos");
+        }
+        this.maxGramosCamion = aGramos(maxToneladasCamion);
+        this.maxContenedoresCamion = maxContenedoresCamion;
+    }
+
+    /**
+     * @param ids       Id de cada contenedor
+     * @param toneladas Peso de cada contenedor (mismo índice que ids)
+     * @param huecos    Capacidad libre de cada (planta, día)
+     */
+    public Plan planificar(long[] ids, double[] toneladas, List<Hueco> huecos) {
+        if (ids.length != toneladas.length) {
+            throw new IllegalArgumentException("ids y toneladas deben tener la misma longitud");
+        }
+
+        long[] pesos = new long[ids.length];
+        for (int i = 0; i < pesos.length; i++) {
+            pesos[i] = Math.max(0, aGramos(toneladas[i]));
+        }
+        int[] orden = ordenDecreciente(pesos);
+
+        long[] capacidades = new long[huecos.size()];
+        for (int h = 0; h < capacidades.length; h++) {
+            capacidades[h] = Math.max(0, (long) Math.floor(huecos.get(h).capacidad() * GRAMOS_POR_TONELADA));
+        }
+
+        // Cada heurística trabaja sobre su propia copia de las capacidades
+        Asignacion mejor = Arrays.stream(Heuristica.values()).parallel()
+                .map(heuristica -> asignar(heuristica, orden, pesos, capacidades))
+                .reduce((a, b) -> b.total > a.total ? b : a)
+                .orElseThrow();
+
+        // Contenedores de cada hueco, en el mismo orden decreciente
+        int[] porHueco = new int[capacidades.length];
+        for (int i : orden) {
+            if (mejor.hueco[i] >= 0) {
+                porHueco[mejor.hueco[i]]++;
+            }
+        }
+        int[][] contenidos = new int[capacidades.length][];
+        for (int h = 0; h < contenidos.length; h++) {
+            contenidos[h] = new int[porHueco[h]];
+            porHueco[h] = 0;
+        }
+        long sinAsignar = 0;
+        int numSinAsignar = 0;
+        for (int i : orden) {
+            int h = mejor.hueco[i];
+            if (h >= 0) {
+                contenidos[h][porHueco[h]++] = i;
+            } else if (pesos[i] > 0) {
+                sinAsignar += pesos[i];
+                numSinAsignar++;
+            }
+        }
+
+        List<CamionPlan> camiones = IntStream.range(0, contenidos.length).parallel()
+                .mapToObj(h -> empaquetar(contenidos[h], pesos).stream()
+                        .map(carga -> camion(huecos.get(h), carga, ids, pesos))
+                        .toList())
+                .flatMap(List::stream)
+                .toList();
+
+        return new Plan(camiones, mejor.heuristica, mejor.total / GRAMOS_POR_TONELADA,
+                ids.length - numSinAsignar - contarVacios(pesos), sinAsignar / GRAMOS_POR_TONELADA, numSinAsignar);
+    }
+
+    public double getMaxToneladasCamion() {
+        return maxGramosCamion / GRAMOS_POR_TONELADA;
+    }
+
+    public int getMaxContenedoresCamion() {
+        return maxContenedoresCamion;
+    }
+
+    public static long aGramos(double toneladas) {
+        return Math.round(toneladas * GRAMOS_POR_TONELADA);
+    }
+
+    /**
+     * Índices de los contenedores de más a menos pesado. Se ordena una clave (peso, índice)
+     * empaquetada en un long con parallelSort: sin objetos y con fork/join.
+     */
+    private static int[] ordenDecreciente(long[] pesos) {
+        long[] claves = new long[pesos.length];
+        for (int i = 0; i < pesos.length; i++) {
+            claves[i] = (Math.min(pesos[i], Integer.MAX_VALUE) << 32) | i;
+        }
+        Arrays.parallelSort(claves);
+        int[] orden = new int[claves.length];
+        for (int i = 0; i < claves.length; i++) {
+            orden[i] = (int) claves[claves.length - 1 - i];
+        }
+        return orden;
+    }
+
+    private static final class Asignacion {
+        final Heuristica heuristica;
+        // Hueco de cada contenedor (-1 si no se asigna)
+        final int[] hueco;
+        long total;
+
+        Asignacion(Heuristica heuristica, int contenedores) {
+            this.heuristica = heuristica;
+            this.hueco = new int[contenedores];
+            Arrays.fill(hueco, -1);
+        }
+    }
+
+    private Asignacion asignar(Heuristica heuristica, int[] orden, long[] pesos, long[] capacidades) {
+        long[] libre = capacidades.clone();
+        Asignacion asignacion = new Asignacion(heuristica, pesos.length);
+        // Cualquier contenedor más pesado que el hueco más grande ya no cabe en ninguno
+        long maxLibre = maximo(libre);
+
+        for (int i : orden) {
+            long peso = pesos[i];
+            if (peso == 0 || peso > maxGramosCamion || peso > maxLibre) {
+                continue;
+            }
+            int elegido = -1;
+            for (int h = 0; h < libre.length; h++) {
+                if (libre[h] < peso) {
+                    continue;
+                }
+                if (elegido < 0) {
+                    elegido = h;
+                    if (heuristica == Heuristica.PRIMER_AJUSTE) {
+                        break;
+                    }
+                } else if (heuristica == Heuristica.MEJOR_AJUSTE ? libre[h] < libre[elegido] : libre[h] > libre[elegido]) {
+                    elegido = h;
+                }
+            }
+            if (elegido >= 0) {
+                boolean eraMaximo = libre[elegido] == maxLibre;
+                libre[elegido] -= peso;
+                asignacion.hueco[i] = elegido;
+                asignacion.total += peso;
+                if (eraMaximo) {
+                    maxLibre = maximo(libre);
+                }
+            }
+        }
+        return asignacion;
+    }
+
+    /**
+     * Best-fit decreasing dentro de un (planta, día): cada contenedor va al camión abierto
+     * donde quede más justo; si no cabe en ninguno se abre otro.
+     *
+     * @return Los índices de los contenedores de cada camión
+     */
+    private List<int[]> empaquetar(int[] contenido, long[] pesos) {
+        // Como mucho un camión por contenedor
+        int[][] cargas = new int[contenido.length][];
+        int[] cuenta = new int[contenido.length];
+        long[] libre = new long[contenido.length];
+        int numCamiones = 0;
+        // Camiones que aún admiten contenedores
+        int[] abiertos = new int[contenido.length];
+        int numAbiertos = 0;
+
+        for (int i : contenido) {
+            long peso = pesos[i];
+            int elegido = -1;
+            for (int a = 0; a < numAbiertos; a++) {
+                int c = abiertos[a];
+                if (libre[c] >= peso && (elegido < 0 || libre[c] < libre[abiertos[elegido]])) {
+                    elegido = a;
+                }
+            }
+            if (elegido < 0) {
+                cargas[numCamiones] = new int[maxContenedoresCamion];
+                libre[numCamiones] = maxGramosCamion;
+                abiertos[numAbiertos] = numCamiones++;
+                elegido = numAbiertos++;
+            }
+            int c = abiertos[elegido];
+            cargas[c][cuenta[c]++] = i;
+            libre[c] -= peso;
+            if (cuenta[c] == maxContenedoresCamion || libre[c] == 0) {
+                abiertos[elegido] = abiertos[--numAbiertos];
+            }
+        }
+
+        List<int[]> camiones = new ArrayList<>(numCamiones);
+        for (int c = 0; c < numCamiones; c++) {
+            camiones.add(Arrays.copyOf(cargas[c], cuenta[c]));
+        }
+        return camiones;
+    }
+
+    private static CamionPlan camion(Hueco hueco, int[] carga, long[] ids, long[] pesos) {
+        long[] contenedores = new long[carga.length];
+        long gramos = 0;
+        for (int k = 0; k < carga.length; k++) {
+            contenedores[k] = ids[carga[k]];
+            gramos += pesos[carga[k]];
+        }
+        return new CamionPlan(hueco.planta(), hueco.fecha(), contenedores, gramos / GRAMOS_POR_TONELADA);
+    }
+
+    private static long maximo(long[] valores) {
+        long max = 0;
+        for (long v : valores) {
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    private static int contarVacios(long[] pesos) {
+        int vacios = 0;
+        for (long p : pesos) {
+            if (p == 0) {
+                vacios++;
+            }
+        }
+        return vacios;
+    }
+}
@@ -0,0 +1,264 @@
+package es.deusto.sd.auctions.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Predice cuándo se llenará cada contenedor a partir de su histórico de estados y mantiene los
+ * contenedores ordenados por ese instante: el primero es el que antes hay que recoger.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Modelo por contenedor: velocidad de llenado como media móvil exponencial de la pendiente
+ *   entre lecturas seguidas. El peso de cada pendiente depende del tiempo entre las dos lecturas
+ *   (1 - 2^(-dt/vidaMedia)), así que da igual que el sensor mande una lectura por minuto o por
+ *   día. Solo se guarda la última lectura y la velocidad: cada lectura nueva es O(1)
+ * - Una lectura menor que la anterior es una recogida: cambia la referencia pero no la velocidad
+ * - Lleno es cantidad LLENO, donde Estado.calcularTipo pasa a Rojo. Se guarda el instante
+ *   absoluto en que se llenará (fecha + (LLENO - cantidad) / velocidad) y no el tiempo que
+ *   falta: el orden no cambia al pasar el tiempo y un contenedor solo se recoloca cuando llega
+ *   una lectura suya. Uno que ya está lleno se ordena por el momento en que se llenó y uno que
+ *   no se está llenando queda fuera de la cola
+ * - La cola es un ConcurrentSkipListSet ordenado por (instante, id) junto a un ConcurrentHashMap
+ *   por id: recolocar un contenedor es O(log n) y los primeros se leen sin bloqueo. Solo escriben
+ *   el hilo de IngestaLecturas (tras confirmar cada tanda) y el recálculo completo
+ * - El recálculo completo relee el histórico con un parallel stream sobre el ForkJoinPool común,
+ *   como PlanificadorCamiones: los contenedores se reparten en tramos de contenedoresPorTarea ids
+ *   y cada tramo es una consulta que sale ya ordenada del índice idx_estado_contenedor_fecha.
+ *   Muchos tramos pequeños reparten bien la carga aunque un contenedor tenga un año de lecturas
+ * - Se recalcula al arrancar y cada recalculo-ms: así entran también las lecturas atrasadas, que
+ *   la actualización incremental ignora. Lo que llega de la ingesta durante un recálculo se guarda
+ *   y se vuelve a aplicar sobre el resultado; si ya estaba en el histórico leído, es igual o más
+ *   vieja que la última lectura del modelo y no cambia nada
+ */
+@Component
+class PrediccionLlenado {
+
+    // Cantidad a partir de la cual un contenedor está lleno (Rojo en Estado.calcularTipo)
+    static final double LLENO = 1.0;
+
+    private static final String SQL_IDS = "SELECT id FROM contenedor ORDER BY id";
+    private static final String SQL_HISTORICO = "SELECT contenedor_id, fecha, cantidad FROM estado "
+            + "WHERE contenedor_id >= ? AND contenedor_id <= ? ORDER BY contenedor_id, fecha, id";
+    private static final double MS_POR_HORA = 3_600_000.0;
+
+    /**
+     * Modelo de un contenedor tras su última lectura. tasa en cantidad por ms (NaN hasta tener dos
+     * lecturas seguidas sin recogida en medio); instante en epoch ms, Long.MAX_VALUE si no se llena.
+     */
+    record Prediccion(long contenedor, long fecha, double cantidad, double tasa, long instante) {}
+
+    private record Predicciones(ConcurrentHashMap<Long, Prediccion> porContenedor,
+                                ConcurrentSkipListSet<Prediccion> cola) {}
+
+    private static final Comparator<Prediccion> POR_INSTANTE =
+            Comparator.comparingLong(Prediccion::instante).thenComparingLong(Prediccion::contenedor);
+    private static final Comparator<IngestaLecturas.Lectura> POR_CONTENEDOR_Y_FECHA =
+            Comparator.comparingLong(IngestaLecturas.Lectura::contenedor).thenComparingLong(IngestaLecturas.Lectura::fecha);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final double vidaMediaMs;
+    private final int contenedoresPorTarea;
+
+    private volatile Predicciones predicciones = nuevas();
+    // Cerrojo de las escrituras: aplicar lecturas de la ingesta y publicar un recálculo
+    private final Object escritura = new Object();
+    // Lecturas llegadas durante un recálculo (null si no hay ninguno en marcha). Protegido por escritura
+    private List<IngestaLecturas.Lectura> pendientes;
+    private final AtomicBoolean recalculando = new AtomicBoolean();
+
+    private volatile boolean listo;
+
+    PrediccionLlenado(JdbcTemplate jdbcTemplate,
+                      @Value("${ecoembes.prediccion.vida-media-horas:24}") double vidaMediaHoras,
+                      @Value("${ecoembes.prediccion.contenedores-por-tarea:2000}") int contenedoresPorTarea) {
+        if (!(vidaMediaHoras > 0) || contenedoresPorTarea <= 0) {
+            throw new IllegalArgumentException("La vida media y los contenedores por tarea deben ser positivos");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.vidaMediaMs = vidaMediaHoras * MS_POR_HORA;
+        this.contenedoresPorTarea = contenedoresPorTarea;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        recalcular();
+    }
+
+    /**
+     * Rehace el modelo de todos los contenedores desde el histórico, en paralelo.
+     */
+    @Scheduled(initialDelayString = "${ecoembes.prediccion.recalculo-ms:3600000}",
+            fixedDelayString = "${ecoembes.prediccion.recalculo-ms:3600000}")
+    public void recalcular() {
+        if (!recalculando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long inicio = System.nanoTime();
+            synchronized (escritura) {
+                pendientes = new ArrayList<>();
+            }
+            List<Long> ids = jdbcTemplate.queryForList(SQL_IDS, Long.class);
+            Predicciones nuevas = nuevas();
+            int tareas = (ids.size() + contenedoresPorTarea - 1) / contenedoresPorTarea;
+            IntStream.range(0, tareas).parallel().forEach(t -> {
+                int primero = t * contenedoresPorTarea;
+                int ultimo = Math.min(ids.size(), primero + contenedoresPorTarea) - 1;
+                recalcularTramo(ids.get(primero), ids.get(ultimo), nuevas);
+            });
+            synchronized (escritura) {
+                for (IngestaLecturas.Lectura lectura : pendientes) {
+                    aplicar(nuevas, lectura.contenedor(), lectura.fecha(), lectura.cantidad());
+                }
+                pendientes = null;
+                predicciones = nuevas;
+            }
+            listo = true;
+            long msRecalculo = (System.nanoTime() - inicio) / 1_000_000;
+            System.out.println("[PREDICCION] " + nuevas.porContenedor().size() + " contenedores con lecturas, "
+                    + tareas + " tareas en paralelo, recalculado en " + msRecalculo + " ms");
+        } catch (RuntimeException e) {
+            synchronized (escritura) {
+                pendientes = null;
+            }
+            System.err.println("[PREDICCION] Error recalculando la predicción de llenado: " + e.getMessage());
+        } finally {
+            recalculando.set(false);
+        }
+    }
+
+    /**
+     * Aplica las lecturas de una tanda ya confirmada, en cualquier orden.
+     */
+    void actualizar(List<IngestaLecturas.Lectura> lecturas) {
+        IngestaLecturas.Lectura[] ordenadas = lecturas.toArray(new IngestaLecturas.Lectura[0]);
+        // Las de un mismo contenedor, de la más vieja a la más nueva
+        Arrays.sort(ordenadas, POR_CONTENEDOR_Y_FECHA);
+        synchronized (escritura) {
+            if (pendientes != null) {
+                pendientes.addAll(Arrays.asList(ordenadas));
+            }
+            Predicciones actuales = predicciones;
+            for (IngestaLecturas.Lectura lectura : ordenadas) {
+                aplicar(actuales, lectura.contenedor(), lectura.fecha(), lectura.cantidad());
+            }
+        }
+    }
+
+    /**
+     * Los primeros limite contenedores que se llenan antes de hasta (epoch ms), del más urgente al menos.
+     */
+    List<Prediccion> primeros(long hasta, int limite) {
+        List<Prediccion> resultado = new ArrayList<>(Math.min(limite, 1024));
+        // Mientras se recoloca un contenedor puede aparecer dos veces: vale la primera
+        Set<Long> vistos = new HashSet<>();
+        for (Prediccion prediccion : predicciones.cola()) {
+            if (resultado.size() >= limite || prediccion.instante() > hasta) {
+                break;
+            }
+            if (vistos.add(prediccion.contenedor())) {
+                resultado.add(prediccion);
+            }
+        }
+        return resultado;
+    }
+
+    boolean isListo() {
+        return listo;
+    }
+
+    private void recalcularTramo(long desde, long hasta, Predicciones destino) {
+        Prediccion[] actual = new Prediccion[1];
+        jdbcTemplate.query(SQL_HISTORICO, ps -> {
+            ps.setLong(1, desde);
+            ps.setLong(2, hasta);
+        }, rs -> {
+            long contenedor = rs.getLong(1);
+            Prediccion anterior = actual[0];
+            if (anterior != null && anterior.contenedor() != contenedor) {
+                publicar(destino, null, anterior);
+                anterior = null;
+            }
+            actual[0] = siguiente(anterior, contenedor, rs.getTimestamp(2).getTime(), rs.getDouble(3));
+        });
+        if (actual[0] != null) {
+            publicar(destino, null, actual[0]);
+        }
+    }
+
+    private void aplicar(Predicciones destino, long contenedor, long fecha, double cantidad) {
+        Prediccion anterior = destino.porContenedor().get(contenedor);
+        Prediccion nueva = siguiente(anterior, contenedor, fecha, cantidad);
+        if (nueva != anterior) {
+            publicar(destino, anterior, nueva);
+        }
+    }
+
+    private static void publicar(Predicciones destino, Prediccion anterior, Prediccion nueva) {
+        destino.porContenedor().put(nueva.contenedor(), nueva);
+        // Primero la nueva y luego quitar la vieja: quien recorra la cola no pierde el contenedor
+        if (nueva.instante() != Long.MAX_VALUE) {
+            destino.cola().add(nueva);
+        }
+        if (anterior != null) {
+            destino.cola().remove(anterior);
+        }
+    }
+
+    /**
+     * Modelo tras una lectura. Si la lectura no es más nueva que la última, devuelve anterior tal cual.
+     */
+    Prediccion siguiente(Prediccion anterior, long contenedor, long fecha, double cantidad) {
+        if (anterior == null) {
+            return new Prediccion(contenedor, fecha, cantidad, Double.NaN,
+                    cantidad >= LLENO ? fecha : Long.MAX_VALUE);
+        }
+        if (fecha <= anterior.fecha()) {
+            return anterior;
+        }
+        long dt = fecha - anterior.fecha();
+        double tasa = anterior.tasa();
+        boolean recogido = cantidad < anterior.cantidad();
+        if (!recogido) {
+            double pendiente = (cantidad - anterior.cantidad()) / dt;
+            tasa = Double.isNaN(tasa) ? pendiente : tasa + (1 - Math.pow(2, -dt / vidaMediaMs)) * (pendiente - tasa);
+        }
+
+        long instante;
+        if (cantidad >= LLENO) {
+            if (!recogido && anterior.cantidad() >= LLENO) {
+                instante = anterior.instante();
+            } else if (!recogido) {
+                // Se llenó entre las dos lecturas
+                instante = anterior.fecha() + (long) (dt * (LLENO - anterior.cantidad()) / (cantidad - anterior.cantidad()));
+            } else {
+                instante = fecha;
+            }
+        } else if (tasa > 0) {
+            double falta = (LLENO - cantidad) / tasa;
+            instante = falta >= Long.MAX_VALUE - fecha ? Long.MAX_VALUE : fecha + (long) falta;
+        } else {
+            instante = Long.MAX_VALUE;
+        }
+        return new Prediccion(contenedor, fecha, cantidad, tasa, instante);
+    }
+
+    private static Predicciones nuevas() {
+        return new Predicciones(new ConcurrentHashMap<>(), new ConcurrentSkipListSet<>(POR_INSTANTE));
+    }
+}
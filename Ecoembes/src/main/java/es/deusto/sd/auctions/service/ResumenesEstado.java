@@ -0,0 +1,236 @@
+package es.deusto.sd.auctions.service;
+
+import es.deusto.sd.auctions.entity.ResumenEstado;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Resúmenes por hora y por día del histórico de cada contenedor (lecturas, mínimo, máximo, media y
+ * última lectura), para consultar rangos largos sin leer cada estado.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Tabla resumen_estado (entidad ResumenEstado), una fila por (contenedor, resolución, inicio).
+ *   Se guarda la suma y no la media: una lectura más del mismo periodo solo suma
+ * - IngestaLecturas llama a registrar() dentro de la transacción de cada tanda: las lecturas se
+ *   agrupan en memoria por periodo y cada periodo es una fila de un UPDATE por lotes por la clave
+ *   única; los periodos que no existían (0 filas actualizadas) van después en un INSERT por lotes.
+ *   Medido en H2, es bastante más rápido que MERGE ... USING y vale porque solo escribe el hilo de
+ *   la ingesta. Los estados y sus resúmenes se confirman juntos
+ * - Los periodos se calculan en Java con la zona horaria del servidor, la misma con la que se
+ *   guardan las fechas de estado (TIMESTAMP sin zona)
+ * - Al arrancar, si la tabla está vacía y hay estados (base de datos de antes de los resúmenes, o
+ *   recién llenada por DataInitializer), se rellena en una transacción recorriendo el histórico por
+ *   tramos de contenedores con el índice (contenedor_id, fecha, id, cantidad): las lecturas llegan
+ *   ya agrupadas por contenedor y en orden, y cada periodo se cierra en cuanto cambia
+ * - Hasta que termina el relleno la ingesta no escribe (las lecturas esperan en su cola): así
+ *   ninguna lectura se cuenta dos veces ni se queda fuera
+ */
+@Component
+class ResumenesEstado {
+
+    private static final String SQL_HAY_RESUMENES = "SELECT EXISTS (SELECT 1 FROM resumen_estado)";
+    private static final String SQL_IDS = "SELECT id FROM contenedor ORDER BY id";
+    private static final String SQL_HISTORICO = "SELECT contenedor_id, fecha, cantidad FROM estado "
+            + "WHERE contenedor_id >= ? AND contenedor_id <= ? ORDER BY contenedor_id, fecha, id";
+    private static final String COLUMNAS =
+            "contenedor_id, resolucion, inicio, lecturas, minimo, maximo, suma, ultima_fecha, ultima_cantidad";
+    private static final String SQL_INSERTAR = "INSERT INTO resumen_estado (" + COLUMNAS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // A igual fecha gana la lectura que llega después, como en el puntero contenedor.estado_id
+    private static final String SQL_SUMAR = "UPDATE resumen_estado SET lecturas = lecturas + ?, minimo = LEAST(minimo, ?), "
+            + "maximo = GREATEST(maximo, ?), suma = suma + ?, "
+            + "ultima_cantidad = CASE WHEN ? >= ultima_fecha THEN ? ELSE ultima_cantidad END, "
+            + "ultima_fecha = GREATEST(ultima_fecha, ?) WHERE contenedor_id = ? AND resolucion = ? AND inicio = ?";
+    // Filas por batch de JDBC y contenedores por consulta al rellenar
+    private static final int TANDA = 1000;
+    private static final int CONTENEDORES_POR_TRAMO = 2000;
+    private static final ResumenEstado.resolucion[] RESOLUCIONES = ResumenEstado.resolucion.values();
+
+    private static final Comparator<Periodo> EN_ORDEN_DEL_INDICE = Comparator
+            .comparingLong((Periodo p) -> p.clave.contenedor())
+            .thenComparing(p -> p.clave.resolucion().name())
+            .thenComparing(p -> p.clave.inicio());
+
+    private record Clave(long contenedor, ResumenEstado.resolucion resolucion, LocalDateTime inicio) {}
+
+    /**
+     * Lecturas de un contenedor en un periodo.
+     */
+    private static final class Periodo {
+        private final Clave clave;
+        private long lecturas;
+        private double minimo = Double.POSITIVE_INFINITY;
+        private double maximo = Double.NEGATIVE_INFINITY;
+        private double suma;
+        private long ultimaFecha = Long.MIN_VALUE;
+        private double ultimaCantidad;
+
+        Periodo(Clave clave) {
+            this.clave = clave;
+        }
+
+        void anadir(long fecha, double cantidad) {
+            lecturas++;
+            minimo = Math.min(minimo, cantidad);
+            maximo = Math.max(maximo, cantidad);
+            suma += cantidad;
+            if (fecha >= ultimaFecha) {
+                ultimaFecha = fecha;
+                ultimaCantidad = cantidad;
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CountDownLatch relleno = new CountDownLatch(1);
+
+    ResumenesEstado(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Comienzo de la hora o del día de una fecha (epoch ms), en hora local.
+     */
+    static LocalDateTime inicio(long fecha, ResumenEstado.resolucion resolucion) {
+        LocalDateTime momento = LocalDateTime.ofInstant(Instant.ofEpochMilli(fecha), ZoneId.systemDefault());
+        return momento.truncatedTo(resolucion == ResumenEstado.resolucion.Hora ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+    }
+
+    /**
+     * Calcula los resúmenes del histórico si la tabla está vacía. Después deja escribir a la ingesta.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rellenar() {
+        try {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(SQL_HAY_RESUMENES, Boolean.class))) {
+                return;
+            }
+            long inicio = System.nanoTime();
+            Integer escritos = transactionTemplate.execute(estado -> rellenarDesdeHistorico());
+            if (escritos != null && escritos > 0) {
+                System.out.println("[RESUMENES] " + escritos + " resúmenes por hora y día calculados del histórico en "
+                        + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[RESUMENES] Error rellenando los resúmenes del histórico: " + e.getMessage());
+        } finally {
+            relleno.countDown();
+        }
+    }
+
+    /**
+     * Espera a que termine el relleno del arranque.
+     */
+    void esperarRelleno() throws InterruptedException {
+        relleno.await();
+    }
+
+    /**
+     * Suma las lecturas de una tanda a sus resúmenes. Se llama dentro de la transacción de la tanda.
+     */
+    void registrar(List<IngestaLecturas.Lectura> lecturas) {
+        Map<Clave, Periodo> periodos = new HashMap<>();
+        for (IngestaLecturas.Lectura lectura : lecturas) {
+            for (ResumenEstado.resolucion resolucion : RESOLUCIONES) {
+                Clave clave = new Clave(lectura.contenedor(), resolucion, inicio(lectura.fecha(), resolucion));
+                periodos.computeIfAbsent(clave, Periodo::new).anadir(lectura.fecha(), lectura.cantidad());
+            }
+        }
+        // En el orden del índice (contenedor_id, resolucion, inicio): filas vecinas caen en las mismas páginas
+        List<Periodo> lista = new ArrayList<>(periodos.values());
+        lista.sort(EN_ORDEN_DEL_INDICE);
+        int[][] actualizadas = jdbcTemplate.batchUpdate(SQL_SUMAR, lista, TANDA, (ps, periodo) -> {
+            Timestamp ultimaFecha = new Timestamp(periodo.ultimaFecha);
+            ps.setLong(1, periodo.lecturas);
+            ps.setDouble(2, periodo.minimo);
+            ps.setDouble(3, periodo.maximo);
+            ps.setDouble(4, periodo.suma);
+            ps.setTimestamp(5, ultimaFecha);
+            ps.setDouble(6, periodo.ultimaCantidad);
+            ps.setTimestamp(7, ultimaFecha);
+            ps.setLong(8, periodo.clave.contenedor());
+            ps.setString(9, periodo.clave.resolucion().name());
+            ps.setTimestamp(10, Timestamp.valueOf(periodo.clave.inicio()));
+        });
+        List<Periodo> nuevos = new ArrayList<>();
+        int k = 0;
+        for (int[] tanda : actualizadas) {
+            for (int filas : tanda) {
+                if (filas == 0) {
+                    nuevos.add(lista.get(k));
+                }
+                k++;
+            }
+        }
+        insertar(nuevos);
+    }
+
+    private int rellenarDesdeHistorico() {
+        List<Long> ids = jdbcTemplate.queryForList(SQL_IDS, Long.class);
+        int escritos = 0;
+        for (int primero = 0; primero < ids.size(); primero += CONTENEDORES_POR_TRAMO) {
+            long desde = ids.get(primero);
+            long hasta = ids.get(Math.min(ids.size(), primero + CONTENEDORES_POR_TRAMO) - 1);
+            List<Periodo> cerrados = new ArrayList<>();
+            // Periodo abierto de cada resolución: se cierra al cambiar de contenedor o de periodo
+            Periodo[] abiertos = new Periodo[RESOLUCIONES.length];
+            jdbcTemplate.query(SQL_HISTORICO, ps -> {
+                ps.setLong(1, desde);
+                ps.setLong(2, hasta);
+            }, rs -> {
+                long contenedor = rs.getLong(1);
+                long fecha = rs.getTimestamp(2).getTime();
+                double cantidad = rs.getDouble(3);
+                for (int r = 0; r < RESOLUCIONES.length; r++) {
+                    Clave clave = new Clave(contenedor, RESOLUCIONES[r], inicio(fecha, RESOLUCIONES[r]));
+                    if (abiertos[r] == null || !abiertos[r].clave.equals(clave)) {
+                        if (abiertos[r] != null) {
+                            cerrados.add(abiertos[r]);
+                        }
+                        abiertos[r] = new Periodo(clave);
+                    }
+                    abiertos[r].anadir(fecha, cantidad);
+                }
+            });
+            for (Periodo abierto : abiertos) {
+                if (abierto != null) {
+                    cerrados.add(abierto);
+                }
+            }
+            insertar(cerrados);
+            escritos += cerrados.size();
+        }
+        return escritos;
+    }
+
+    private void insertar(List<Periodo> periodos) {
+        jdbcTemplate.batchUpdate(SQL_INSERTAR, periodos, TANDA, (ps, periodo) -> {
+            ps.setLong(1, periodo.clave.contenedor());
+            ps.setString(2, periodo.clave.resolucion().name());
+            ps.setTimestamp(3, Timestamp.valueOf(periodo.clave.inicio()));
+            ps.setLong(4, periodo.lecturas);
+            ps.setDouble(5, periodo.minimo);
+            ps.setDouble(6, periodo.maximo);
+            ps.setDouble(7, periodo.suma);
+            ps.setTimestamp(8, new Timestamp(periodo.ultimaFecha));
+            ps.setDouble(9, periodo.ultimaCantidad);
+        });
+    }
+}
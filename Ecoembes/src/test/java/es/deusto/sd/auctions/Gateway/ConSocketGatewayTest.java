@@ -0,0 +1,134 @@
+package es.deusto.sd.auctions.Gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ConSocketGatewayTest {
+
+    // Sin pool: construirlo no abre ninguna conexión
+    private final ConSocketGateway gateway = new ConSocketGateway("localhost:8090", null, "ConSocket", false);
+
+    @Test
+    void okDevuelveLaCapacidad() {
+        assertEquals(123.45, gateway.parsearRespuestaCapacidad("OK|123.45"));
+    }
+
+    @Test
+    void sinCapacidadParaLaFechaEsIllegalState() {
+        assertThrows(IllegalStateException.class, () -> gateway.parsearRespuestaCapacidad(
+                "ERROR|No hay capacidad disponible para la fecha: 05-12-2024"));
+    }
+
+    @Test
+    void servidorSaturadoEsPlantaNoDisponible() {
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.parsearRespuestaCapacidad(
+                "ERROR|Servidor saturado, inténtelo más tarde"));
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.parsearRespuestaRango(
+                "ERROR|Servidor saturado, inténtelo más tarde", new TreeMap<>()));
+    }
+
+    @Test
+    void unaRespuestaIlegibleEsPlantaNoDisponible() {
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.parsearRespuestaCapacidad("OK|mucho"));
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.parsearRespuestaCapacidad("HOLA"));
+    }
+
+    @Test
+    void elRangoSoloTraeLasFechasConCapacidad() {
+        Map<LocalDate, Double> capacidades = new TreeMap<>();
+        gateway.parsearRespuestaRango("OK|05-12-2024=123.45;07-12-2024=80.0", capacidades);
+
+        assertEquals(Map.of(LocalDate.of(2024, 12, 5), 123.45, LocalDate.of(2024, 12, 7), 80.0), capacidades);
+    }
+
+    @Test
+    void unRangoRechazadoEsIllegalState() {
+        assertThrows(IllegalStateException.class, () -> gateway.parsearRespuestaRango(
+                "ERROR|Rango inválido: desde debe ser anterior o igual a hasta", new TreeMap<>()));
+    }
+
+    /**
+     * ContSocket de prueba: atiende cada conexión en su hilo con el manejador,
+     * que recibe el número de conexión (desde 1) y sus streams.
+     */
+    private interface Manejador {
+        void atender(int conexion, BufferedReader in, PrintWriter out) throws IOException;
+    }
+
+    private static ServerSocket servidor(AtomicInteger conexiones, Manejador manejador) throws IOException {
+        ServerSocket servidor = new ServerSocket(0);
+        Thread.ofVirtual().start(() -> {
+            while (!servidor.isClosed()) {
+                try {
+                    Socket socket = servidor.accept();
+                    int numero = conexiones.incrementAndGet();
+                    Thread.ofVirtual().start(() -> {
+                        try (socket) {
+                            manejador.atender(numero, new BufferedReader(new InputStreamReader(socket.getInputStream())),
+                                    new PrintWriter(socket.getOutputStream(), true));
+                        } catch (IOException e) {
+                            // El cliente cerró
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        return servidor;
+    }
+
+    private static ConSocketGateway conPool(ServerSocket servidor) {
+        return new ConSocketGateway("localhost:" + servidor.getLocalPort(), Tipo.Sockets, "ConSocket", true,
+                new ConfiguracionGateway(2, 500, 300, 5, 10_000, 10, 0));
+    }
+
+    @Test
+    void unTimeoutDeLecturaNoSeReintenta() throws Exception {
+        AtomicInteger conexiones = new AtomicInteger();
+        // Lee el comando y no contesta nunca
+        try (ServerSocket servidor = servidor(conexiones, (n, in, out) -> {
+            in.readLine();
+            in.readLine();
+        })) {
+            ConSocketGateway gateway = conPool(servidor);
+
+            assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(new Date()));
+            assertEquals(1, conexiones.get());
+        }
+    }
+
+    @Test
+    void unaConexionDelPoolCerradaPorElServidorSeReintentaConOtra() throws Exception {
+        AtomicInteger conexiones = new AtomicInteger();
+        // La primera conexión responde una vez y el servidor la cierra; las siguientes siguen abiertas
+        try (ServerSocket servidor = servidor(conexiones, (n, in, out) -> {
+            while (in.readLine() != null) {
+                out.println(n == 1 ? "OK|5.0" : "OK|7.0");
+                if (n == 1) {
+                    return;
+                }
+            }
+        })) {
+            ConSocketGateway gateway = conPool(servidor);
+
+            assertEquals(5.0, gateway.consultarCapacidadDisponible(new Date()));
+            assertEquals(7.0, gateway.consultarCapacidadDisponible(new Date()));
+            assertEquals(2, conexiones.get());
+        }
+    }
+}
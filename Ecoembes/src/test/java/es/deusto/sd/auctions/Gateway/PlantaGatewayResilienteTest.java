@@ -0,0 +1,199 @@
+package es.deusto.sd.auctions.Gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import es.deusto.sd.auctions.Gateway.PlantaGatewayResiliente.EstadoCircuito;
+
+class PlantaGatewayResilienteTest {
+
+    private static final Date FECHA = new Date();
+
+    /**
+     * Planta de prueba: cada consulta devuelve la siguiente respuesta programada
+     * (o un futuro que no se completa si no queda ninguna).
+     */
+    private static final class PlantaFalsa implements PlantaGateway {
+        final Deque<CompletableFuture<Double>> respuestas = new ArrayDeque<>();
+        final AtomicInteger llamadas = new AtomicInteger();
+
+        PlantaFalsa responde(double capacidad) {
+            respuestas.add(CompletableFuture.completedFuture(capacidad));
+            return this;
+        }
+
+        PlantaFalsa falla(RuntimeException error) {
+            respuestas.add(CompletableFuture.failedFuture(error));
+            return this;
+        }
+
+        PlantaFalsa responde(CompletableFuture<Double> respuesta) {
+            respuestas.add(respuesta);
+            return this;
+        }
+
+        @Override
+        public double consultarCapacidadDisponible(Date fecha) {
+            return consultarCapacidadDisponibleAsync(fecha).join();
+        }
+
+        @Override
+        public synchronized CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha) {
+            llamadas.incrementAndGet();
+            CompletableFuture<Double> respuesta = respuestas.poll();
+            return respuesta != null ? respuesta : new CompletableFuture<>();
+        }
+
+        @Override
+        public Tipo getTipo() {
+            return null;
+        }
+
+        @Override
+        public String getNombre() {
+            return "Falsa";
+        }
+    }
+
+    private static ConfiguracionGateway config(int umbralFallos, long circuitoAbiertoMs, int maxConcurrentes,
+                                               long retrasoHedgeMs) {
+        return new ConfiguracionGateway(1, 100, 100, umbralFallos, circuitoAbiertoMs, maxConcurrentes,
+                retrasoHedgeMs);
+    }
+
+    private static PlantaNoDisponibleException caida() {
+        return new PlantaNoDisponibleException("sin respuesta");
+    }
+
+    @Test
+    void elCircuitoSeAbreTrasUmbralFallosSeguidos() {
+        PlantaFalsa planta = new PlantaFalsa().falla(caida()).falla(caida()).falla(caida());
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(3, 60_000, 10, 0));
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+            assertEquals(EstadoCircuito.CERRADO, gateway.getEstadoCircuito());
+        }
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(EstadoCircuito.ABIERTO, gateway.getEstadoCircuito());
+        assertEquals(3, gateway.getFallosSeguidos());
+
+        // Abierto: falla al momento sin preguntar a la planta
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(3, planta.llamadas.get());
+        assertEquals(1, gateway.getRechazadasCircuito());
+    }
+
+    @Test
+    void unExitoReiniciaLaCuentaDeFallos() {
+        PlantaFalsa planta = new PlantaFalsa().falla(caida()).responde(5.0).falla(caida());
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(2, 60_000, 10, 0));
+
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(5.0, gateway.consultarCapacidadDisponible(FECHA));
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+
+        assertEquals(EstadoCircuito.CERRADO, gateway.getEstadoCircuito());
+        assertEquals(1, gateway.getFallosSeguidos());
+    }
+
+    @Test
+    void sinCapacidadParaLaFechaNoEsUnFalloDeLaPlanta() {
+        PlantaFalsa planta = new PlantaFalsa();
+        for (int i = 0; i < 5; i++) {
+            planta.falla(new IllegalStateException("sin capacidad"));
+        }
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(2, 60_000, 10, 0));
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalStateException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        }
+        assertEquals(EstadoCircuito.CERRADO, gateway.getEstadoCircuito());
+        assertEquals(0, gateway.getFallosSeguidos());
+    }
+
+    @Test
+    void pasadoElPlazoDejaPasarUnaSolaPruebaYSiVaBienSeCierra() throws InterruptedException {
+        CompletableFuture<Double> prueba = new CompletableFuture<>();
+        PlantaFalsa planta = new PlantaFalsa().falla(caida()).responde(prueba);
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(1, 200, 10, 0));
+
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(EstadoCircuito.ABIERTO, gateway.getEstadoCircuito());
+        Thread.sleep(300);
+        assertEquals(EstadoCircuito.SEMIABIERTO, gateway.getEstadoCircuito());
+
+        CompletableFuture<Double> enPrueba = gateway.consultarCapacidadDisponibleAsync(FECHA);
+        // Mientras la prueba no termina, el resto sigue fallando rápido
+        CompletionException rechazo = assertThrows(CompletionException.class,
+                () -> gateway.consultarCapacidadDisponibleAsync(FECHA).join());
+        assertEquals(PlantaNoDisponibleException.class, rechazo.getCause().getClass());
+        assertEquals(2, planta.llamadas.get());
+
+        prueba.complete(7.0);
+        assertEquals(7.0, enPrueba.join());
+        assertEquals(EstadoCircuito.CERRADO, gateway.getEstadoCircuito());
+        assertEquals(0, gateway.getFallosSeguidos());
+    }
+
+    @Test
+    void unaPruebaFallidaVuelveAAbrirElCircuito() throws InterruptedException {
+        PlantaFalsa planta = new PlantaFalsa().falla(caida()).falla(caida());
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(1, 200, 10, 0));
+
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        Thread.sleep(300);
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+
+        assertEquals(EstadoCircuito.ABIERTO, gateway.getEstadoCircuito());
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(2, planta.llamadas.get());
+    }
+
+    @Test
+    void elBulkheadRechazaPorEncimaDeMaxConcurrentes() {
+        CompletableFuture<Double> lenta = new CompletableFuture<>();
+        PlantaFalsa planta = new PlantaFalsa().responde(lenta).responde(3.0);
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(5, 60_000, 1, 0));
+
+        CompletableFuture<Double> primera = gateway.consultarCapacidadDisponibleAsync(FECHA);
+        assertEquals(1, gateway.getEnCurso());
+        assertThrows(PlantaNoDisponibleException.class, () -> gateway.consultarCapacidadDisponible(FECHA));
+        assertEquals(1, gateway.getRechazadasBulkhead());
+
+        lenta.complete(1.0);
+        assertEquals(1.0, primera.join());
+        assertEquals(0, gateway.getEnCurso());
+        assertEquals(3.0, gateway.consultarCapacidadDisponible(FECHA));
+    }
+
+    @Test
+    void elHedgeGanaSiElPrimerIntentoTarda() throws InterruptedException {
+        CompletableFuture<Double> segundo = new CompletableFuture<>();
+        PlantaFalsa planta = new PlantaFalsa().responde(new CompletableFuture<>()).responde(segundo);
+        PlantaGatewayResiliente gateway = new PlantaGatewayResiliente(planta, config(5, 60_000, 10, 20));
+
+        CompletableFuture<Double> resultado = gateway.consultarCapacidadDisponibleAsync(FECHA);
+        for (int i = 0; i < 500 && planta.llamadas.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, gateway.getHedgesLanzados());
+        assertEquals(2, gateway.getEnCurso());
+
+        // Se completa desde este hilo: al volver, el hedge ya está contado
+        segundo.complete(4.0);
+        assertEquals(4.0, resultado.join());
+        assertEquals(1, gateway.getHedgesGanados());
+        assertEquals(1, gateway.getEnCurso());
+        assertEquals(EstadoCircuito.CERRADO, gateway.getEstadoCircuito());
+    }
+}
@@ -0,0 +1,116 @@
+package es.deusto.sd.auctions.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import es.deusto.sd.auctions.Gateway.PlantaGateway;
+import es.deusto.sd.auctions.Gateway.Tipo;
+
+class CacheCapacidadesTest {
+
+    private static final String PLANTA = "ConSocket";
+    private static final LocalDate DIA = LocalDate.of(2025, 1, 1);
+
+    /**
+     * Planta cuyas respuestas se completan a mano desde la prueba.
+     */
+    private static final class PlantaLenta implements PlantaGateway {
+        CompletableFuture<Double> respuesta = new CompletableFuture<>();
+        CompletableFuture<Map<LocalDate, Double>> respuestaRango = new CompletableFuture<>();
+        final AtomicInteger llamadas = new AtomicInteger();
+
+        @Override
+        public double consultarCapacidadDisponible(Date fecha) {
+            return consultarCapacidadDisponibleAsync(fecha).join();
+        }
+
+        @Override
+        public CompletableFuture<Double> consultarCapacidadDisponibleAsync(Date fecha) {
+            llamadas.incrementAndGet();
+            return respuesta;
+        }
+
+        @Override
+        public CompletableFuture<Map<LocalDate, Double>> consultarCapacidadesRangoAsync(LocalDate desde,
+                                                                                        LocalDate hasta) {
+            llamadas.incrementAndGet();
+            return respuestaRango;
+        }
+
+        @Override
+        public Tipo getTipo() {
+            return Tipo.Sockets;
+        }
+
+        @Override
+        public String getNombre() {
+            return PLANTA;
+        }
+    }
+
+    private static CacheCapacidades cacheSuscrita() {
+        CacheCapacidades cache = new CacheCapacidades(1_000, 600_000, 100);
+        cache.setSuscrita(PLANTA, true);
+        return cache;
+    }
+
+    @Test
+    void unaConsultaLanzadaAntesDeUnCambioNoPisaElValorEmpujado() {
+        CacheCapacidades cache = cacheSuscrita();
+        PlantaLenta planta = new PlantaLenta();
+
+        CompletableFuture<Double> consulta = cache.obtenerAsync(PLANTA, planta, DIA);
+        cache.actualizar(PLANTA, DIA, 40.0);
+        planta.respuesta.complete(100.0);
+
+        // Quien preguntó recibe lo que respondió la planta, pero la caché se queda con el cambio
+        assertEquals(100.0, consulta.join());
+        assertEquals(40.0, cache.obtenerAsync(PLANTA, planta, DIA).join());
+        assertEquals(1, planta.llamadas.get());
+    }
+
+    @Test
+    void unaPrecargaLanzadaAntesDeUnCambioNoPisaElValorEmpujado() {
+        CacheCapacidades cache = cacheSuscrita();
+        PlantaLenta planta = new PlantaLenta();
+
+        cache.precargar(PLANTA, planta, DIA, 2);
+        cache.actualizar(PLANTA, DIA, 40.0);
+        planta.respuestaRango.complete(Map.of(DIA, 100.0, DIA.plusDays(1), 70.0));
+
+        assertEquals(40.0, cache.obtenerAsync(PLANTA, planta, DIA).join());
+        assertEquals(70.0, cache.obtenerAsync(PLANTA, planta, DIA.plusDays(1)).join());
+        assertEquals(1, planta.llamadas.get());
+    }
+
+    @Test
+    void unaConsultaLanzadaDespuesDeUnCambioSiLoActualiza() {
+        CacheCapacidades cache = cacheSuscrita();
+        PlantaLenta planta = new PlantaLenta();
+
+        cache.actualizar(PLANTA, DIA, 40.0);
+        planta.respuesta.complete(35.0);
+        assertEquals(35.0, cache.consultar(PLANTA, planta, CacheCapacidades.aDate(DIA)).join());
+
+        assertEquals(35.0, cache.obtenerAsync(PLANTA, planta, DIA).join());
+    }
+
+    @Test
+    void loConsultadoAntesDeInvalidarLaPlantaNoSeGuarda() {
+        CacheCapacidades cache = new CacheCapacidades(60_000, 600_000, 100);
+        PlantaLenta planta = new PlantaLenta();
+
+        cache.obtenerAsync(PLANTA, planta, DIA);
+        cache.setSuscrita(PLANTA, true);
+        planta.respuesta.complete(100.0);
+
+        assertEquals(0, cache.getTamano());
+    }
+}
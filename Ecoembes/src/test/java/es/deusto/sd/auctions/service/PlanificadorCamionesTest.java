@@ -0,0 +1,132 @@
+package es.deusto.sd.auctions.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import es.deusto.sd.auctions.service.PlanificadorCamiones.CamionPlan;
+import es.deusto.sd.auctions.service.PlanificadorCamiones.Heuristica;
+import es.deusto.sd.auctions.service.PlanificadorCamiones.Hueco;
+import es.deusto.sd.auctions.service.PlanificadorCamiones.Plan;
+
+class PlanificadorCamionesTest {
+
+    private static final LocalDate HOY = LocalDate.of(2025, 1, 1);
+    private static final double MAX_TONELADAS = 10;
+    private static final int MAX_CONTENEDORES = 8;
+
+    private final PlanificadorCamiones planificador = new PlanificadorCamiones(MAX_TONELADAS, MAX_CONTENEDORES);
+
+    private static String clave(String planta, LocalDate fecha) {
+        return planta + "|" + fecha;
+    }
+
+    @Test
+    void ningunHuecoNiCamionSeSuperaYNingunContenedorSeRepite() {
+        Random random = new Random(42);
+        long[] ids = new long[3_000];
+        double[] toneladas = new double[ids.length];
+        Map<Long, Long> gramosPorId = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1_000 + i;
+            // Algunos vacíos y algunos más pesados que un camión
+            toneladas[i] = random.nextInt(20) == 0 ? 0 : random.nextDouble() * MAX_TONELADAS * 1.1;
+            gramosPorId.put(ids[i], PlanificadorCamiones.aGramos(toneladas[i]));
+        }
+        List<Hueco> huecos = List.of(
+                new Hueco("ConSocket", HOY, 1_234.5),
+                new Hueco("PlasSb", HOY, 987.65),
+                new Hueco("ConSocket", HOY.plusDays(1), 3_000),
+                new Hueco("PlasSb", HOY.plusDays(1), 0.4));
+
+        Plan plan = planificador.planificar(ids, toneladas, huecos);
+
+        Map<String, Long> cargaPorHueco = new HashMap<>();
+        Set<Long> vistos = new HashSet<>();
+        long totalGramos = 0;
+        for (CamionPlan camion : plan.camiones()) {
+            assertTrue(camion.contenedores().length >= 1 && camion.contenedores().length <= MAX_CONTENEDORES,
+                    "Camión con " + camion.contenedores().length + " contenedores");
+            long gramos = 0;
+            for (long id : camion.contenedores()) {
+                assertTrue(vistos.add(id), "El contenedor " + id + " va en dos camiones");
+                gramos += gramosPorId.get(id);
+            }
+            assertTrue(gramos <= PlanificadorCamiones.aGramos(MAX_TONELADAS), "Camión con " + gramos + " g");
+            assertEquals(gramos, PlanificadorCamiones.aGramos(camion.toneladas()));
+            cargaPorHueco.merge(clave(camion.planta(), camion.fecha()), gramos, Long::sum);
+            totalGramos += gramos;
+        }
+        for (Hueco hueco : huecos) {
+            long carga = cargaPorHueco.getOrDefault(clave(hueco.planta(), hueco.fecha()), 0L);
+            assertTrue(carga <= PlanificadorCamiones.aGramos(hueco.capacidad()),
+                    hueco + " con " + carga + " g");
+        }
+
+        assertEquals(vistos.size(), plan.contenedoresAsignados());
+        assertEquals(totalGramos, PlanificadorCamiones.aGramos(plan.toneladasAsignadas()));
+        long vacios = gramosPorId.values().stream().filter(g -> g == 0).count();
+        assertEquals(ids.length - vacios, plan.contenedoresAsignados() + plan.contenedoresSinAsignar());
+    }
+
+    @Test
+    void unContenedorMasPesadoQueUnCamionQuedaSinAsignar() {
+        long[] ids = {1, 2};
+        double[] toneladas = {MAX_TONELADAS + 0.5, 3};
+        List<Hueco> huecos = List.of(new Hueco("ConSocket", HOY, 1_000));
+
+        Plan plan = planificador.planificar(ids, toneladas, huecos);
+
+        assertEquals(1, plan.contenedoresSinAsignar());
+        assertEquals(MAX_TONELADAS + 0.5, plan.toneladasSinAsignar());
+        assertEquals(1, plan.contenedoresAsignados());
+        assertEquals(1, plan.camiones().size());
+        assertEquals(2, plan.camiones().get(0).contenedores()[0]);
+    }
+
+    @Test
+    void losLimitesDeCadaCamionPartenLaCargaDeUnHueco() {
+        // 20 contenedores de 1 t: por número caben 8 por camión
+        long[] ids = new long[20];
+        double[] toneladas = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+            toneladas[i] = 1;
+        }
+
+        Plan plan = planificador.planificar(ids, toneladas, List.of(new Hueco("ConSocket", HOY, 100)));
+
+        assertEquals(3, plan.camiones().size());
+        assertEquals(List.of(8, 8, 4), plan.camiones().stream().map(c -> c.contenedores().length).toList());
+
+        // 4 contenedores de 6 t: por peso, uno por camión
+        Plan pesados = planificador.planificar(new long[]{1, 2, 3, 4}, new double[]{6, 6, 6, 6},
+                List.of(new Hueco("ConSocket", HOY, 100)));
+        assertEquals(4, pesados.camiones().size());
+    }
+
+    @Test
+    void aIgualdadGanaPrimerAjusteYTodoSaleLoAntesPosible() {
+        long[] ids = {1, 2, 3, 4};
+        double[] toneladas = {4, 3, 2, 1};
+        // Cabe todo en cualquiera de los dos días: las tres heurísticas asignan lo mismo
+        List<Hueco> huecos = List.of(
+                new Hueco("ConSocket", HOY, 50),
+                new Hueco("ConSocket", HOY.plusDays(1), 50));
+
+        Plan plan = planificador.planificar(ids, toneladas, huecos);
+
+        assertEquals(Heuristica.PRIMER_AJUSTE, plan.heuristica());
+        assertEquals(10.0, plan.toneladasAsignadas());
+        assertTrue(plan.camiones().stream().allMatch(c -> c.fecha().equals(HOY)));
+    }
+}
@@ -0,0 +1,91 @@
+package es.deusto.sd.auctions.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import es.deusto.sd.auctions.service.PrediccionLlenado.Prediccion;
+
+class PrediccionLlenadoTest {
+
+    private static final long ID = 7;
+    private static final long HORA = 3_600_000;
+    private static final double POR_HORA = 0.1 / HORA;
+
+    // siguiente() no usa la base de datos
+    private final PrediccionLlenado prediccion = new PrediccionLlenado(null, 24, 100);
+
+    private static void assertInstante(long esperado, Prediccion p) {
+        assertTrue(Math.abs(esperado - p.instante()) <= 1, "Instante " + p.instante() + ", esperado " + esperado);
+    }
+
+    @Test
+    void laPrimeraLecturaNoTieneVelocidad() {
+        Prediccion p = prediccion.siguiente(null, ID, 0, 0.2);
+
+        assertTrue(Double.isNaN(p.tasa()));
+        assertEquals(Long.MAX_VALUE, p.instante());
+        // Ya llena: se ordena por el momento de la lectura
+        assertEquals(5 * HORA, prediccion.siguiente(null, ID, 5 * HORA, 1.0).instante());
+    }
+
+    @Test
+    void llenandoseA01PorHoraSePrediceCuandoLlegaA1() {
+        Prediccion p = prediccion.siguiente(null, ID, 0, 0.2);
+        p = prediccion.siguiente(p, ID, HORA, 0.3);
+        p = prediccion.siguiente(p, ID, 2 * HORA, 0.4);
+
+        // Con la misma pendiente siempre, la media móvil es esa pendiente
+        assertEquals(POR_HORA, p.tasa(), 1e-15);
+        assertInstante(8 * HORA, p);
+    }
+
+    @Test
+    void unaRecogidaCambiaLaReferenciaPeroNoLaVelocidad() {
+        Prediccion p = prediccion.siguiente(null, ID, 0, 0.2);
+        p = prediccion.siguiente(p, ID, HORA, 0.3);
+        p = prediccion.siguiente(p, ID, 3 * HORA, 0.05);
+
+        assertEquals(POR_HORA, p.tasa(), 1e-15);
+        assertInstante(3 * HORA + 95 * HORA / 10, p);
+    }
+
+    @Test
+    void siSeLlenoEntreDosLecturasSeInterpolaElMomento() {
+        Prediccion p = prediccion.siguiente(null, ID, 0, 0.2);
+        p = prediccion.siguiente(p, ID, HORA, 0.3);
+        p = prediccion.siguiente(p, ID, 3 * HORA, 0.05);
+        // De 0.05 a 1.05 en 10 h: llegó a 1.0 a las 9.5 h de la recogida
+        p = prediccion.siguiente(p, ID, 13 * HORA, 1.05);
+        assertInstante(3 * HORA + 95 * HORA / 10, p);
+
+        // Otra lectura estando ya lleno conserva el momento en que se llenó
+        long lleno = p.instante();
+        p = prediccion.siguiente(p, ID, 14 * HORA, 1.2);
+        assertEquals(lleno, p.instante());
+    }
+
+    @Test
+    void unaLecturaAtrasadaNoCambiaNada() {
+        Prediccion p = prediccion.siguiente(null, ID, 0, 0.2);
+        p = prediccion.siguiente(p, ID, HORA, 0.3);
+
+        assertSame(p, prediccion.siguiente(p, ID, HORA, 0.9));
+        assertSame(p, prediccion.siguiente(p, ID, HORA / 2, 0.9));
+    }
+
+    @Test
+    void sinLlenarseOTanDespacioQueNoCabeEnUnLongNoSeLlena() {
+        Prediccion quieto = prediccion.siguiente(null, ID, 0, 0.5);
+        quieto = prediccion.siguiente(quieto, ID, HORA, 0.5);
+        assertEquals(0, quieto.tasa());
+        assertEquals(Long.MAX_VALUE, quieto.instante());
+
+        // (1 - 0) / 1e-300 por ms se sale de un long: no debe dar la vuelta a negativo
+        Prediccion lento = prediccion.siguiente(null, ID, 0, 0);
+        lento = prediccion.siguiente(lento, ID, 1, 1e-300);
+        assertEquals(Long.MAX_VALUE, lento.instante());
+    }
+}
@@ -0,0 +1,121 @@
+package com.contsocket;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Calendario de capacidades en un anillo de celdas primitivas indexado por día epoch.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - La celda de un día es (diaEpoch % DIAS): sin HashMap, sin claves String y sin Double en caja
+ * - Cada celda es un long que empaqueta el día (24 bits altos) y los kilos (40 bits bajos).
+ *   Así un único compareAndSet comprueba a la vez que la celda sigue siendo de ese día
+ *   y que hay capacidad suficiente, aunque el anillo reutilice la celda para otro día
+ * - Se usan kilos enteros (no double) para poder hacer CAS y no acumular errores de redondeo
+ * - DIAS cubre más de 11 años: de sobra para el horizonte de 10 días de la planta
+ */
+final class CalendarioCapacidades {
+
+    static final int DIAS = 4096;
+    static final long SIN_CAPACIDAD_REGISTRADA = -1;
+    static final long CAPACIDAD_INSUFICIENTE = -2;
+
+    private static final int BITS_KILOS = 40;
+    private static final long MASCARA_KILOS = (1L << BITS_KILOS) - 1;
+    private static final long VACIA = -1L;
+
+    private final AtomicLongArray celdas = new AtomicLongArray(DIAS);
+
+    CalendarioCapacidades() {
+        for (int i = 0; i < DIAS; i++) {
+            celdas.set(i, VACIA);
+        }
+    }
+
+    /**
+     * Fija la capacidad de un día (sustituye a cualquier día que ocupase la celda).
+     */
+    void fijar(int dia, long kilos) {
+        celdas.set(celda(dia), empaquetar(dia, kilos));
+    }
+
+    /**
+     * @return Kilos disponibles ese día, o SIN_CAPACIDAD_REGISTRADA
+     */
+    long consultar(int dia) {
+        long valor = celdas.get(celda(dia));
+        if (valor == VACIA || diaDe(valor) != dia) {
+            return SIN_CAPACIDAD_REGISTRADA;
+        }
+        return valor & MASCARA_KILOS;
+    }
+
+    /**
+     * Resta kilos con un bucle CAS sin bajar nunca de cero.
+     *
+     * @return Kilos que había antes de restar, o SIN_CAPACIDAD_REGISTRADA / CAPACIDAD_INSUFICIENTE
+     */
+    long restar(int dia, long kilos) {
+        int i = celda(dia);
+        while (true) {
+            long valor = celdas.get(i);
+            if (valor == VACIA || diaDe(valor) != dia) {
+                return SIN_CAPACIDAD_REGISTRADA;
+            }
+            long disponibles = valor & MASCARA_KILOS;
+            if (disponibles < kilos) {
+                return CAPACIDAD_INSUFICIENTE;
+            }
+            if (celdas.compareAndSet(i, valor, valor - kilos)) {
+                return disponibles;
+            }
+        }
+    }
+
+    /**
+     * Devuelve kilos a un día (al liberar una reserva).
+     *
+     * @return false si el día ya no está en el calendario
+     */
+    boolean sumar(int dia, long kilos) {
+        int i = celda(dia);
+        while (true) {
+            long valor = celdas.get(i);
+            if (valor == VACIA || diaDe(valor) != dia) {
+                return false;
+            }
+            long nuevos = Math.min((valor & MASCARA_KILOS) + kilos, MASCARA_KILOS);
+            if (celdas.compareAndSet(i, valor, empaquetar(dia, nuevos))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Recorre los días registrados (para depuración).
+     */
+    void recorrer(VisitanteDia visitante) {
+        for (int i = 0; i < DIAS; i++) {
+            long valor = celdas.get(i);
+            if (valor != VACIA) {
+                visitante.visitar(diaDe(valor), valor & MASCARA_KILOS);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface VisitanteDia {
+        void visitar(int dia, long kilos);
+    }
+
+    private static int celda(int dia) {
+        return Math.floorMod(dia, DIAS);
+    }
+
+    private static int diaDe(long valor) {
+        return (int) (valor >>> BITS_KILOS);
+    }
+
+    private static long empaquetar(int dia, long kilos) {
+        return ((long) dia << BITS_KILOS) | (kilos & MASCARA_KILOS);
+    }
+}
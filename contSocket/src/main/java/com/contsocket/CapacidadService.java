@@ -1,64 +1,146 @@
 package com.contsocket;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 /**
  * Servicio que gestiona las capacidades disponibles de la planta por fecha.
  *
  * DECISIÓN DE DISEÑO:
- * - Usa HashMap para almacenamiento en memoria (prototipo)
+ * - Las capacidades viven en un CalendarioCapacidades: un anillo de longs primitivos
+ *   indexado por día epoch, compartido por todos los hilos de clientes
+ * - Cada capacidad se guarda en kilogramos enteros y se resta con compareAndSet (CAS),
+ *   sin locks, y al ser entera no acumula errores de redondeo de double
  * - Formato de fecha: "dd-MM-yyyy" (igual que en tu proyecto Ecoembes)
  * - Inicializa con datos para los próximos 10 días
+ * - Con un DiarioCapacidades, cada cambio se guarda en disco antes de confirmarlo y al
+ *   arrancar se recupera el estado guardado; solo se generan los días que falten
+ * - Cada cambio confirmado avisa a los oyentes (suscripciones SUSCRIBIR) con el día
+ *   que ha cambiado; ellos leen el valor cuando lo envían
  *
  * RESPONSABILIDADES:
  * - Almacenar capacidades por fecha
  * - Consultar capacidad disponible
  * - Reducir capacidad cuando se asignan contenedores
+ * - Reservar capacidad de forma atómica y liberar reservas
  */
 public class CapacidadService {
 
-    // Almacena: "dd-MM-yyyy" -> capacidad en toneladas
-    private Map<String, Double> capacidadesPorFecha;
-    private SimpleDateFormat dateFormat;
+    // Códigos de error de reservar()
+    public static final long SIN_CAPACIDAD_REGISTRADA = CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA;
+    public static final long CAPACIDAD_INSUFICIENTE = CalendarioCapacidades.CAPACIDAD_INSUFICIENTE;
 
+    private static final double KG_POR_TONELADA = 1000.0;
+
+    /**
+     * Una reserva hecha con RESERVAR, necesaria para poder devolverla con LIBERAR.
+     */
+    record Reserva(int dia, long kilos) {}
+
+    // Día epoch -> capacidad en kilogramos
+    private final CalendarioCapacidades calendario;
+    // Almacena: id de reserva -> reserva
+    private final Map<Long, Reserva> reservas;
+    private final AtomicLong secuenciaReservas;
+    // null si el servicio solo guarda en memoria
+    private final DiarioCapacidades diario;
+    // Se recorre en cada cambio y se modifica solo al suscribirse o desconectarse
+    private final CopyOnWriteArrayList<IntConsumer> oyentes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Servicio solo en memoria: al reiniciar se pierden los cambios.
+     */
     public CapacidadService() {
-        this.capacidadesPorFecha = new HashMap<>();
-        this.dateFormat = new SimpleDateFormat("dd-MM-yyyy");
+        this(null);
+    }
 
-        Date fecha = new Date(125,00,01);
+    /**
+     * @param diario Diario donde se guardan los cambios (null para trabajar solo en memoria)
+     */
+    public CapacidadService(DiarioCapacidades diario) {
+        this.calendario = new CalendarioCapacidades();
+        this.reservas = new ConcurrentHashMap<>();
+        this.secuenciaReservas = new AtomicLong();
+        this.diario = diario;
 
-        String date  = dateFormat.format(fecha);
+        if (diario != null) {
+            restaurar(diario);
+        }
 
-        capacidadesPorFecha.put(date, 100.0);
+        fijarSiFalta((int) LocalDate.of(2025, 1, 1).toEpochDay(), aKilos(100.0));
 
         // Inicializamos con datos de prueba
         inicializarCapacidades();
     }
 
+    /**
+     * Carga en memoria lo recuperado del diario.
+     */
+    private void restaurar(DiarioCapacidades diario) {
+        diario.getDiasRecuperados().forEach(calendario::fijar);
+        reservas.putAll(diario.getReservasRecuperadas());
+        secuenciaReservas.set(diario.getSecuenciaRecuperada());
+    }
+
+    /**
+     * Registra un oyente que recibirá el día epoch de cada capacidad que cambie.
+     * Se llama desde el hilo que hizo el cambio, así que no debe bloquear.
+     */
+    public void anadirOyente(IntConsumer oyente) {
+        oyentes.add(oyente);
+    }
+
+    public void quitarOyente(IntConsumer oyente) {
+        oyentes.remove(oyente);
+    }
+
+    private void avisarCambio(int dia) {
+        for (IntConsumer oyente : oyentes) {
+            oyente.accept(dia);
+        }
+    }
+
+    /**
+     * Guarda y cierra el diario (si lo hay).
+     */
+    public void cerrar() {
+        if (diario != null) {
+            diario.cerrar();
+        }
+    }
+
     /**
      * Inicializa capacidades para los próximos 10 días.
      * Según el proyecto: "información disponible con 10 días de antelación"
      */
     private void inicializarCapacidades() {
-        long unDiaEnMillis = 24 * 60 * 60 * 1000L;
-        Date hoy = new Date();
+        int hoy = (int) LocalDate.now().toEpochDay();
 
         System.out.println("\n=== INICIALIZANDO CAPACIDADES ===");
 
         for (int i = 0; i < 10; i++) {
-            Date fecha = new Date(hoy.getTime() + (i * unDiaEnMillis));
-            String fechaStr = dateFormat.format(fecha);
+            int dia = hoy + i;
+
+            // Los días recuperados del diario conservan su capacidad
+            long guardados = calendario.consultar(dia);
+            if (guardados >= 0) {
+                System.out.println("  " + formatear(dia) + " -> " + aToneladas(guardados) + " toneladas (recuperada)");
+                continue;
+            }
 
             // Capacidad aleatoria entre 80 y 150 toneladas
             double capacidad = 80 + (Math.random() * 70);
             capacidad = Math.round(capacidad * 100.0) / 100.0; // 2 decimales
 
-            capacidadesPorFecha.put(fechaStr, capacidad);
+            fijarSiFalta(dia, aKilos(capacidad));
 
-            System.out.println("  " + fechaStr + " -> " + capacidad + " toneladas");
+            System.out.println("  " + formatear(dia) + " -> " + capacidad + " toneladas");
         }
 
         System.out.println("==================================\n");
@@ -71,17 +153,31 @@ public class CapacidadService {
      * @return Capacidad en toneladas, o -1 si no hay capacidad para esa fecha
      */
     public double consultarCapacidad(String fechaStr) {
-        Double capacidad = capacidadesPorFecha.get(fechaStr);
+        long kilos = consultarKilos(leerFecha(fechaStr));
 
-        if (capacidad == null) {
-            System.out.println("[CAPACIDAD] No disponible para: " + fechaStr);
+        if (kilos < 0) {
+            if (Trazas.ACTIVAS) System.out.println("[CAPACIDAD] No disponible para: " + fechaStr);
             return -1;
         }
 
-        System.out.println("[CAPACIDAD] Fecha: " + fechaStr + " -> " + capacidad + " ton");
+        double capacidad = aToneladas(kilos);
+        if (Trazas.ACTIVAS) System.out.println("[CAPACIDAD] Fecha: " + fechaStr + " -> " + capacidad + " ton");
         return capacidad;
     }
 
+    /**
+     * Versión primitiva de consultarCapacidad, sin Strings ni objetos.
+     *
+     * @param dia Día epoch
+     * @return Kilos disponibles, o SIN_CAPACIDAD_REGISTRADA
+     */
+    public long consultarKilos(int dia) {
+        if (dia < 0) {
+            return SIN_CAPACIDAD_REGISTRADA;
+        }
+        return calendario.consultar(dia);
+    }
+
     /**
      * Reduce la capacidad disponible cuando se asignan contenedores.
      *
@@ -90,35 +186,134 @@ public class CapacidadService {
      * @return true si se pudo restar, false si no hay suficiente capacidad
      */
     public boolean reducirCapacidad(String fechaStr, double cantidadARestar) {
-        Double capacidadActual = capacidadesPorFecha.get(fechaStr);
+        int dia = leerFecha(fechaStr);
+        long kilosARestar = aKilos(cantidadARestar);
+        long anterior = dia < 0 ? SIN_CAPACIDAD_REGISTRADA : calendario.restar(dia, kilosARestar);
 
-        if (capacidadActual == null) {
+        if (anterior == SIN_CAPACIDAD_REGISTRADA) {
             System.out.println("[ERROR] No hay capacidad registrada para: " + fechaStr);
             return false;
         }
 
-        if (capacidadActual < cantidadARestar) {
+        if (anterior == CAPACIDAD_INSUFICIENTE) {
             System.out.println("[ERROR] Capacidad insuficiente. Disponible: " +
-                    capacidadActual + ", Solicitado: " + cantidadARestar);
+                    aToneladas(calendario.consultar(dia)) + ", Solicitado: " + cantidadARestar);
             return false;
         }
 
-        double nuevaCapacidad = capacidadActual - cantidadARestar;
-        capacidadesPorFecha.put(fechaStr, nuevaCapacidad);
+        try {
+            registrar(DiarioCapacidades.REDUCIR, dia, 0, kilosARestar);
+        } catch (UncheckedIOException e) {
+            calendario.sumar(dia, kilosARestar);
+            return false;
+        }
 
+        avisarCambio(dia);
         System.out.println("[CAPACIDAD REDUCIDA] " + fechaStr + ": " +
-                capacidadActual + " -> " + nuevaCapacidad + " toneladas");
+                aToneladas(anterior) + " -> " + aToneladas(anterior - kilosARestar) + " toneladas");
         return true;
     }
 
+    /**
+     * Reserva capacidad de forma atómica: o se resta entera o no se resta nada.
+     * Aunque cientos de clientes reserven a la vez para el mismo día, nunca se
+     * concede más capacidad de la que había.
+     *
+     * @param dia Día epoch (ParserProtocolo.leerFecha)
+     * @param kilosReserva Kilos a reservar (positivos), ya leídos con ParserProtocolo.leerKilos
+     * @return Id de la reserva, o SIN_CAPACIDAD_REGISTRADA / CAPACIDAD_INSUFICIENTE
+     * @throws UncheckedIOException si no se pudo guardar en el diario (la reserva se deshace)
+     */
+    public long reservar(int dia, long kilosReserva) {
+        long resultado = calendario.restar(dia, kilosReserva);
+        if (resultado < 0) {
+            return resultado;
+        }
+
+        long id = secuenciaReservas.incrementAndGet();
+        try {
+            registrar(DiarioCapacidades.RESERVAR, dia, id, kilosReserva);
+        } catch (UncheckedIOException e) {
+            calendario.sumar(dia, kilosReserva);
+            throw e;
+        }
+        // Solo se publica cuando ya es duradera: nadie puede liberarla antes
+        reservas.put(id, new Reserva(dia, kilosReserva));
+        avisarCambio(dia);
+        if (Trazas.ACTIVAS) System.out.println("[RESERVA " + id + "] " + formatear(dia) + ": " +
+                aToneladas(kilosReserva) + " toneladas");
+        return id;
+    }
+
+    /**
+     * Libera una reserva y devuelve su capacidad al día correspondiente.
+     *
+     * @param reservaId Id devuelto por reservar()
+     * @return true si la reserva existía, false si no (o ya se había liberado)
+     * @throws UncheckedIOException si no se pudo guardar en el diario (la reserva se conserva)
+     */
+    public boolean liberar(long reservaId) {
+        // remove() es atómico: una reserva solo puede liberarse una vez
+        Reserva reserva = reservas.remove(reservaId);
+        if (reserva == null) {
+            return false;
+        }
+
+        calendario.sumar(reserva.dia(), reserva.kilos());
+        try {
+            registrar(DiarioCapacidades.LIBERAR, reserva.dia(), reservaId, reserva.kilos());
+        } catch (UncheckedIOException e) {
+            calendario.restar(reserva.dia(), reserva.kilos());
+            reservas.put(reservaId, reserva);
+            throw e;
+        }
+        avisarCambio(reserva.dia());
+        if (Trazas.ACTIVAS) System.out.println("[RESERVA " + reservaId + " LIBERADA] " + formatear(reserva.dia()) +
+                ": " + aToneladas(reserva.kilos()) + " toneladas");
+        return true;
+    }
+
+    private void fijarSiFalta(int dia, long kilos) {
+        if (calendario.consultar(dia) >= 0) {
+            return;
+        }
+        calendario.fijar(dia, kilos);
+        registrar(DiarioCapacidades.FIJAR, dia, 0, kilos);
+    }
+
+    private void registrar(int tipo, int dia, long reservaId, long kilos) {
+        if (diario != null) {
+            diario.registrar(tipo, dia, reservaId, kilos);
+        }
+    }
+
+    private static int leerFecha(String fechaStr) {
+        byte[] bytes = fechaStr.getBytes(StandardCharsets.ISO_8859_1);
+        return ParserProtocolo.leerFecha(bytes, 0, bytes.length);
+    }
+
+    private static String formatear(int dia) {
+        byte[] salida = new byte[10];
+        ParserProtocolo.escribirFecha(dia, salida, 0);
+        return new String(salida, StandardCharsets.ISO_8859_1);
+    }
+
+    private static long aKilos(double toneladas) {
+        return Math.round(toneladas * KG_POR_TONELADA);
+    }
+
+    private static double aToneladas(long kilos) {
+        return kilos / KG_POR_TONELADA;
+    }
+
     /**
      * Método de utilidad para ver todas las capacidades (debugging)
      */
     public void mostrarTodasCapacidades() {
         System.out.println("\n=== CAPACIDADES ACTUALES ===");
-        capacidadesPorFecha.forEach((fecha, capacidad) -> {
-            System.out.println("  " + fecha + " -> " + capacidad + " ton");
+        calendario.recorrer((dia, kilos) -> {
+            System.out.println("  " + formatear(dia) + " -> " + aToneladas(kilos) + " ton");
         });
         System.out.println("============================\n");
     }
-}
\ No newline at end of file
+}
@@ -2,31 +2,61 @@ package com.contsocket;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Maneja la comunicación con UN cliente conectado.
- * Cada cliente tiene su propia instancia ejecutándose en su propio Thread.
+ * Cada cliente tiene su propia instancia ejecutándose en su propio Thread (de plataforma o virtual).
  *
  * PATRÓN DE DISEÑO APLICADO:
  * - Command Pattern (implícito): Cada línea recibida es un comando que se parsea y ejecuta
  * - Strategy Pattern (implícito): Diferentes estrategias de procesamiento según el comando
  *
+ * La interpretación de los comandos vive en ProcesadorComandos (compartido con el motor NIO).
+ *
  * PROTOCOLO DE COMUNICACIÓN:
  * 1. CAPACIDAD|dd-MM-yyyy          -> OK|123.45 o ERROR|mensaje
  * 2. NOTIFICAR|numContenedores|numEnvases -> OK|mensaje o ERROR|mensaje
- * 3. SALIR                         -> ADIOS
+ * 3. CAPACIDAD_RANGO / RESERVAR / LIBERAR / METRICAS (ver ProcesadorComandos)
+ * 4. SALIR                         -> ADIOS
+ * 5. SUSCRIBIR                     -> el hilo pasa a enviar solo CAMBIO y LATIDO (transmitirCambios)
+ *
+ * Las líneas se leen y responden sobre dos arrays de bytes reutilizados, de modo
+ * que una consulta CAPACIDAD no crea objetos (con -Dcontsocket.trazas=false).
  */
 public class ClientHandler implements Runnable {
 
+    // Longitud máxima de una línea de comando
+    static final int TAMANO_LINEA = 4096;
+    private static final int LINEA_DEMASIADO_LARGA = -2;
+    private static final byte[] ERROR_LINEA_LARGA =
+            "ERROR|Línea demasiado larga\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUSCRITO =
+            (ProcesadorComandos.SUSCRITO + "\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LATIDO =
+            (ProcesadorComandos.LATIDO + "\n").getBytes(StandardCharsets.US_ASCII);
+    // Espacio que puede ocupar una línea CAMBIO (con su '\n')
+    private static final int MAX_LINEA_CAMBIO = 64;
+
     private Socket clientSocket;
-    private CapacidadService capacidadService;
-    private BufferedReader in;
-    private PrintWriter out;
+    private ProcesadorComandos procesador;
+    // Se ejecuta al terminar la sesión (libera el hueco reservado en el servidor)
+    private Runnable alTerminar;
+    private InputStream in;
+    private OutputStream out;
     private String clientId;
 
-    public ClientHandler(Socket socket, CapacidadService capacidadService) {
+    // Buffers reutilizados durante toda la sesión: leer y responder no crea objetos
+    private final byte[] entrada = new byte[TAMANO_LINEA];
+    private final byte[] salida = new byte[TAMANO_LINEA];
+    // Bytes válidos en entrada y bytes de la línea actual (con su '\n') ya procesados
+    private int disponibles;
+    private int consumidos;
+
+    public ClientHandler(Socket socket, ProcesadorComandos procesador, Runnable alTerminar) {
         this.clientSocket = socket;
-        this.capacidadService = capacidadService;
+        this.procesador = procesador;
+        this.alTerminar = alTerminar;
         // Identificador único para debugging
         this.clientId = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
     }
@@ -45,147 +75,132 @@ public class ClientHandler implements Runnable {
             System.err.println("[ERROR] Cliente " + clientId + ": " + e.getMessage());
         } finally {
             cerrarRecursos();
+            alTerminar.run();
         }
     }
 
     /**
      * Configura los streams de entrada/salida.
      *
-     * BufferedReader: Para leer líneas completas de texto
-     * PrintWriter: Para escribir respuestas (con auto-flush activado)
+     * Se usan los streams del socket directamente: las líneas se separan a mano
+     * sobre el array entrada y cada respuesta se envía con un único write().
      */
     private void configurarStreams() throws IOException {
-        in = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream())
-        );
-
-        out = new PrintWriter(
-                clientSocket.getOutputStream(),
-                true  // auto-flush: envía datos inmediatamente sin esperar
-        );
+        in = clientSocket.getInputStream();
+        out = clientSocket.getOutputStream();
     }
 
     /**
      * Bucle principal que lee comandos del cliente y los procesa.
      */
     private void procesarComandos() throws IOException {
-        String lineaRecibida;
+        int longitud;
 
-        // readLine() es BLOQUEANTE: espera hasta que llegue una línea completa
-        while ((lineaRecibida = in.readLine()) != null) {
-            System.out.println("[" + clientId + "] Recibido: " + lineaRecibida);
+        // leerLinea() es BLOQUEANTE: espera hasta que llegue una línea completa
+        while ((longitud = leerLinea()) >= 0 || longitud == LINEA_DEMASIADO_LARGA) {
+            if (longitud == LINEA_DEMASIADO_LARGA) {
+                out.write(ERROR_LINEA_LARGA);
+                break;
+            }
+            if (Trazas.ACTIVAS) {
+                System.out.println("[" + clientId + "] Recibido: " +
+                        new String(entrada, 0, longitud, StandardCharsets.UTF_8));
+            }
 
-            // Procesar el comando y obtener respuesta
-            String respuesta = procesarComando(lineaRecibida);
+            if (procesador.esSuscripcion(entrada, 0, longitud)) {
+                transmitirCambios();
+                break;
+            }
+
+            // Procesar el comando y escribir la respuesta en el buffer de salida
+            int n = procesador.procesarComando(entrada, 0, longitud, salida);
+            salida[n] = '\n';
 
             // Enviar respuesta al cliente
-            out.println(respuesta);
-            System.out.println("[" + clientId + "] Enviado: " + respuesta);
+            out.write(salida, 0, n + 1);
+            if (Trazas.ACTIVAS) {
+                System.out.println("[" + clientId + "] Enviado: " +
+                        new String(salida, 0, n, StandardCharsets.UTF_8));
+            }
 
             // Si el cliente dice SALIR, terminamos la conexión
-            if (lineaRecibida.trim().equalsIgnoreCase("SALIR")) {
+            if (procesador.esSalida(entrada, 0, longitud)) {
                 break;
             }
         }
     }
 
     /**
-     * Procesa un comando recibido y devuelve la respuesta apropiada.
-     *
-     * Este es el corazón del protocolo de comunicación.
-     *
-     * @param comando Comando recibido del cliente
-     * @return Respuesta a enviar al cliente
-     */
-    private String procesarComando(String comando) {
-        // Validación básica
-        if (comando == null || comando.trim().isEmpty()) {
-            return "ERROR|Comando vacío";
-        }
-
-        // Parsear el comando separando por |
-        String[] partes = comando.split("\\|");
-        String tipoComando = partes[0].trim().toUpperCase();
-
-        // Delegar según el tipo de comando
-        switch (tipoComando) {
-            case "CAPACIDAD":
-                return procesarConsultaCapacidad(partes);
-
-            case "NOTIFICAR":
-                return procesarNotificacion(partes);
-
-            case "SALIR":
-                return "ADIOS";
-
-            default:
-                return "ERROR|Comando desconocido: " + tipoComando +
-                        ". Comandos válidos: CAPACIDAD, NOTIFICAR, SALIR";
-        }
-    }
-
-    /**
-     * Procesa el comando: CAPACIDAD|dd-MM-yyyy
-     *
-     * Responde: OK|123.45 si hay capacidad
-     *           ERROR|mensaje si no hay o formato incorrecto
+     * Modo SUSCRIBIR: desde aquí la conexión solo envía CAMBIO (agrupando en un write()
+     * los que haya pendientes) y LATIDO cuando pasa LATIDO_MS sin cambios.
+     * Termina cuando el cliente cierra (falla una escritura) o deja de leer y su cola se desborda.
      */
-    private String procesarConsultaCapacidad(String[] partes) {
-        // Validar formato
-        if (partes.length != 2) {
-            return "ERROR|Formato incorrecto. Use: CAPACIDAD|dd-MM-yyyy";
-        }
-
-        String fecha = partes[1].trim();
-
-        // Validación básica del formato de fecha (opcional pero recomendable)
-        if (!fecha.matches("\\d{2}-\\d{2}-\\d{4}")) {
-            return "ERROR|Formato de fecha inválido. Use: dd-MM-yyyy";
-        }
-
-        // Consultar capacidad
-        double capacidad = capacidadService.consultarCapacidad(fecha);
-
-        if (capacidad < 0) {
-            return "ERROR|No hay capacidad disponible para la fecha: " + fecha;
+    private void transmitirCambios() throws IOException {
+        CapacidadService capacidadService = procesador.getCapacidadService();
+        ColaCambios cola = new ColaCambios(null);
+        capacidadService.anadirOyente(cola);
+        System.out.println("[SUSCRIPCIÓN] " + clientId + " recibe los cambios de capacidad");
+        try {
+            out.write(SUSCRITO);
+            while (true) {
+                int[] dias = cola.esperar(ProcesadorComandos.LATIDO_MS);
+                if (cola.isDesbordada()) {
+                    System.out.println("[SUSCRIPCIÓN] " + clientId + " no lee los cambios: se cierra");
+                    return;
+                }
+                if (dias.length == 0) {
+                    out.write(LATIDO);
+                    continue;
+                }
+                int pos = 0;
+                for (int dia : dias) {
+                    if (pos + MAX_LINEA_CAMBIO > salida.length) {
+                        out.write(salida, 0, pos);
+                        pos = 0;
+                    }
+                    pos = procesador.escribirCambio(dia, salida, pos);
+                    salida[pos++] = '\n';
+                }
+                out.write(salida, 0, pos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            capacidadService.quitarOyente(cola);
         }
-
-        return "OK|" + capacidad;
     }
 
     /**
-     * Procesa el comando: NOTIFICAR|numContenedores|numEnvases
+     * Deja la siguiente línea al principio de entrada (sin '\r\n') y devuelve su longitud.
      *
-     * Responde: OK|mensaje si se procesó correctamente
-     *           ERROR|mensaje si hay algún problema
+     * @return Longitud de la línea, -1 si el cliente cerró, o LINEA_DEMASIADO_LARGA
      */
-    private String procesarNotificacion(String[] partes) {
-        // Validar formato
-        if (partes.length != 3) {
-            return "ERROR|Formato incorrecto. Use: NOTIFICAR|numContenedores|numEnvases";
+    private int leerLinea() throws IOException {
+        // Descartar la línea anterior moviendo lo que quede detrás al principio
+        if (consumidos > 0) {
+            System.arraycopy(entrada, consumidos, entrada, 0, disponibles - consumidos);
+            disponibles -= consumidos;
+            consumidos = 0;
         }
 
-        try {
-            int numContenedores = Integer.parseInt(partes[1].trim());
-            int numEnvases = Integer.parseInt(partes[2].trim());
-
-            // Validar que sean números positivos
-            if (numContenedores <= 0 || numEnvases <= 0) {
-                return "ERROR|Los números deben ser positivos";
+        int buscados = 0;
+        while (true) {
+            for (int i = buscados; i < disponibles; i++) {
+                if (entrada[i] == '\n') {
+                    consumidos = i + 1;
+                    return i > 0 && entrada[i - 1] == '\r' ? i - 1 : i;
+                }
             }
+            buscados = disponibles;
 
-            // Log de la notificación
-            System.out.println("[NOTIFICACIÓN] " + numContenedores +
-                    " contenedores con " + numEnvases + " envases");
-
-            // En una implementación real, aquí se haría algo con esta información
-            // Por ejemplo: actualizar base de datos, enviar emails, etc.
-
-            return "OK|Notificación recibida: " + numContenedores +
-                    " contenedores, " + numEnvases + " envases";
-
-        } catch (NumberFormatException e) {
-            return "ERROR|Los valores de contenedores y envases deben ser números enteros";
+            if (disponibles == entrada.length) {
+                return LINEA_DEMASIADO_LARGA;
+            }
+            int leidos = in.read(entrada, disponibles, entrada.length - disponibles);
+            if (leidos < 0) {
+                return -1;
+            }
+            disponibles += leidos;
         }
     }
 
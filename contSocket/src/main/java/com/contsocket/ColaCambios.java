@@ -0,0 +1,82 @@
+package com.contsocket;
+
+import java.util.LinkedHashSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Días con cambios pendientes de enviar a un suscriptor (SUSCRIBIR).
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Se encolan días, no valores: la capacidad se lee al enviar, así el último CAMBIO
+ *   de cada día siempre lleva su valor más reciente aunque los cambios lleguen desordenados
+ * - Un día que ya está pendiente no se repite: mil reservas seguidas del mismo día
+ *   producen un solo CAMBIO si el suscriptor no ha podido leerlas aún
+ * - Acotada a MAX_PENDIENTES: un suscriptor que no lee se marca como desbordado y se le
+ *   cierra la conexión (al reconectar vuelve a pedir todo), en vez de acumular memoria
+ * - anadir() nunca bloquea: se llama desde los hilos que cambian la capacidad
+ */
+final class ColaCambios implements IntConsumer {
+
+    static final int MAX_PENDIENTES = 4096;
+
+    private final LinkedHashSet<Integer> pendientes = new LinkedHashSet<>();
+    private final Runnable alPasarANoVacia;
+    private boolean desbordada;
+
+    /**
+     * @param alPasarANoVacia Se ejecuta cuando llega un cambio a la cola vacía (puede ser null)
+     */
+    ColaCambios(Runnable alPasarANoVacia) {
+        this.alPasarANoVacia = alPasarANoVacia;
+    }
+
+    @Override
+    public void accept(int dia) {
+        boolean estabaVacia;
+        synchronized (this) {
+            if (desbordada) {
+                return;
+            }
+            if (pendientes.size() >= MAX_PENDIENTES && !pendientes.contains(dia)) {
+                desbordada = true;
+                pendientes.clear();
+            } else {
+                pendientes.add(dia);
+            }
+            estabaVacia = pendientes.size() == 1 || desbordada;
+            notifyAll();
+        }
+        if (estabaVacia && alPasarANoVacia != null) {
+            alPasarANoVacia.run();
+        }
+    }
+
+    /**
+     * Saca todos los días pendientes sin esperar.
+     */
+    synchronized int[] vaciar() {
+        int[] dias = new int[pendientes.size()];
+        int i = 0;
+        for (int dia : pendientes) {
+            dias[i++] = dia;
+        }
+        pendientes.clear();
+        return dias;
+    }
+
+    /**
+     * Espera hasta ms milisegundos a que haya cambios y los saca.
+     *
+     * @return Los días pendientes (vacío si pasó el plazo sin cambios)
+     */
+    synchronized int[] esperar(long ms) throws InterruptedException {
+        if (pendientes.isEmpty() && !desbordada) {
+            wait(ms);
+        }
+        return vaciar();
+    }
+
+    synchronized boolean isDesbordada() {
+        return desbordada;
+    }
+}
@@ -1,8 +1,13 @@
 package com.contsocket;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Servidor principal de ContSocket Ltd.
@@ -21,19 +26,55 @@ import java.net.Socket;
  * 2. Escuchar en un puerto TCP
  * 3. Aceptar clientes y crear handlers
  * 4. Mantener el servidor ejecutándose
+ *
+ * MOTORES:
+ * - hilos (por defecto): este servidor, un Thread de plataforma por cliente
+ * - virtual: este servidor, un hilo virtual (Java 21) por cliente
+ * - nio: ContSocketServerNio, Selector con pocos hilos de E/S
+ * Se elige al arrancar con el argumento --motor=hilos|virtual|nio
+ * (o la propiedad de sistema -Dcontsocket.motor=...).
+ *
+ * LÍMITE DE SESIONES:
+ * - Un Semaphore limita las sesiones simultáneas (--max-sesiones=N, por defecto 1000)
+ * - El hilo de accept() nunca espera: si no hay hueco, la conexión pasa a una sala de espera
+ *   (un hilo virtual por conexión, como mucho MAX_EN_COLA) que aguarda ESPERA_HUECO_MS
+ * - Si la sala está llena o no queda hueco a tiempo, la conexión se rechaza con un ERROR y se
+ *   cierra, en vez de crear hilos sin límite hasta agotar la memoria
+ *
+ * PERSISTENCIA:
+ * - Las capacidades se guardan en un DiarioCapacidades en el directorio --datos=DIR
+ *   (por defecto "datos"); con --datos= vacío se trabaja solo en memoria
  */
 public class ContSocketServer {
 
     // Puerto en el que escucha el servidor
     // Diferente del puerto de tu servidor Ecoembes (8080)
     private static final int PUERTO = 8090;
+    // Conexiones pendientes que el sistema operativo encola antes de accept()
+    private static final int BACKLOG = 512;
+    private static final int MAX_SESIONES = 1000;
+    // Directorio del diario y la instantánea de capacidades
+    private static final String DIRECTORIO_DATOS = "datos";
+    // Tiempo máximo que una conexión aceptada espera un hueco libre
+    private static final long ESPERA_HUECO_MS = 2000;
+    // Conexiones aceptadas que pueden esperar hueco a la vez; el resto se rechaza al momento
+    private static final int MAX_EN_COLA = BACKLOG;
 
     private ServerSocket serverSocket;
-    private CapacidadService capacidadService;
+    private ProcesadorComandos procesador;
     private boolean ejecutando;
+    private final Semaphore sesiones;
+    private final MetricasServidor metricas;
+    private final Thread.Builder constructorHilos;
+    private final Thread.Builder constructorEspera = Thread.ofVirtual().name("espera-hueco-", 0);
 
-    public ContSocketServer() {
-        this.capacidadService = new CapacidadService();
+    public ContSocketServer(CapacidadService capacidadService, boolean hilosVirtuales, int maxSesiones) {
+        this.metricas = new MetricasServidor(maxSesiones);
+        this.procesador = new ProcesadorComandos(capacidadService, metricas);
+        this.sesiones = new Semaphore(maxSesiones);
+        this.constructorHilos = hilosVirtuales
+                ? Thread.ofVirtual().name("cliente-virtual-", 0)
+                : Thread.ofPlatform().name("cliente-", 0);
         this.ejecutando = true;
     }
 
@@ -41,12 +82,12 @@ public class ContSocketServer {
      * Inicia el servidor y comienza a aceptar clientes.
      *
      * Este método se queda en un bucle infinito aceptando conexiones.
-     * Por cada cliente que se conecta, crea un nuevo Thread.
+     * Por cada cliente que se conecta, crea un nuevo Thread si queda hueco.
      */
     public void iniciar() {
         try {
             // Crear el ServerSocket que escucha en el puerto
-            serverSocket = new ServerSocket(PUERTO);
+            serverSocket = new ServerSocket(PUERTO, BACKLOG);
 
             imprimirBanner();
 
@@ -56,14 +97,14 @@ public class ContSocketServer {
                     // accept() es BLOQUEANTE: se queda esperando hasta que un cliente se conecta
                     // Cuando un cliente se conecta, devuelve un Socket para comunicarse con él
                     Socket clientSocket = serverSocket.accept();
+                    metricas.conexionAceptada();
 
-                    // Crear un handler para este cliente
-                    ClientHandler handler = new ClientHandler(clientSocket, capacidadService);
-
-                    // Ejecutar el handler en un nuevo Thread
-                    // Esto permite que el servidor siga aceptando más clientes
-                    Thread clientThread = new Thread(handler);
-                    clientThread.start();
+                    // Reservar un hueco antes de crear el hilo, sin bloquear el bucle de accept()
+                    if (sesiones.tryAcquire()) {
+                        iniciarSesion(clientSocket);
+                    } else {
+                        esperarHueco(clientSocket);
+                    }
 
                     // PREGUNTA PARA REFLEXIONAR:
                     // ¿Qué pasaría si no usáramos Threads?
@@ -85,6 +126,68 @@ public class ContSocketServer {
         }
     }
 
+    /**
+     * Crea el handler y su hilo. Se llama con el hueco ya reservado.
+     */
+    private void iniciarSesion(Socket clientSocket) {
+        // Crear un handler para este cliente
+        ClientHandler handler = new ClientHandler(clientSocket, procesador, this::liberarSesion);
+
+        // Ejecutar el handler en un nuevo Thread
+        // Esto permite que el servidor siga aceptando más clientes
+        metricas.sesionIniciada();
+        constructorHilos.start(handler);
+    }
+
+    /**
+     * Deja la conexión esperando un hueco en un hilo virtual, fuera del bucle de accept().
+     * Si ya hay MAX_EN_COLA conexiones esperando, se rechaza sin esperar.
+     */
+    private void esperarHueco(Socket clientSocket) {
+        if (metricas.entraEnCola() > MAX_EN_COLA) {
+            metricas.saleDeCola();
+            rechazar(clientSocket);
+            return;
+        }
+        constructorEspera.start(() -> {
+            boolean reservado;
+            try {
+                reservado = sesiones.tryAcquire(ESPERA_HUECO_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reservado = false;
+            } finally {
+                metricas.saleDeCola();
+            }
+            if (reservado) {
+                iniciarSesion(clientSocket);
+            } else {
+                rechazar(clientSocket);
+            }
+        });
+    }
+
+    private void liberarSesion() {
+        metricas.sesionTerminada();
+        sesiones.release();
+    }
+
+    /**
+     * Avisa al cliente de que el servidor está saturado y cierra la conexión.
+     */
+    private void rechazar(Socket clientSocket) {
+        metricas.conexionRechazada();
+        System.out.println("[SERVIDOR] Conexión rechazada (máximo de sesiones alcanzado). "
+                + metricas.resumen());
+        try (clientSocket) {
+            OutputStream out = clientSocket.getOutputStream();
+            out.write("ERROR|Servidor saturado, inténtelo más tarde\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // El cliente ya se fue: nada que hacer
+        }
+    }
+
     /**
      * Detiene el servidor de forma ordenada.
      */
@@ -104,7 +207,8 @@ public class ContSocketServer {
      * Imprime el banner de bienvenida con información útil.
      */
     private void imprimirBanner() {
-        System.out.println("[SERVIDOR] Escuchando en puerto: " + PUERTO);
+        System.out.println("[SERVIDOR] Escuchando en puerto: " + PUERTO
+                + " (máximo " + sesiones.availablePermits() + " sesiones)");
         System.out.println("[SERVIDOR] Esperando conexiones...");
         System.out.println("\n[INFO] Puedes probar el servidor con:");
         System.out.println("       telnet localhost " + PUERTO);
@@ -116,13 +220,61 @@ public class ContSocketServer {
      * Punto de entrada de la aplicación.
      */
     public static void main(String[] args) {
-        ContSocketServer servidor = new ContSocketServer();
+        String motor = System.getProperty("contsocket.motor", "hilos");
+        int maxSesiones = MAX_SESIONES;
+        String datos = System.getProperty("contsocket.datos", DIRECTORIO_DATOS);
+        for (String arg : args) {
+            if (arg.startsWith("--motor=")) {
+                motor = arg.substring("--motor=".length());
+            } else if (arg.startsWith("--max-sesiones=")) {
+                maxSesiones = Integer.parseInt(arg.substring("--max-sesiones=".length()));
+            } else if (arg.startsWith("--datos=")) {
+                datos = arg.substring("--datos=".length());
+            }
+        }
+
+        if (!motor.equalsIgnoreCase("hilos") && !motor.equalsIgnoreCase("virtual")
+                && !motor.equalsIgnoreCase("nio")) {
+            System.err.println("[ERROR] Motor desconocido: " + motor + ". Use: hilos, virtual o nio");
+            return;
+        }
+
+        // Con --datos= (vacío) las capacidades solo viven en memoria
+        DiarioCapacidades diario = null;
+        if (!datos.isBlank()) {
+            try {
+                diario = DiarioCapacidades.abrir(Path.of(datos));
+            } catch (IOException e) {
+                System.err.println("[ERROR] No se pudo abrir el diario en " + datos + ": " + e.getMessage());
+                return;
+            }
+        }
+        CapacidadService capacidadService = new CapacidadService(diario);
+
+        if (motor.equalsIgnoreCase("nio")) {
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            ContSocketServerNio servidor = new ContSocketServerNio(PUERTO, capacidadService, maxSesiones,
+                    Math.min(4, nucleos), nucleos);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("\n[SERVIDOR] Recibida señal de cierre...");
+                servidor.detener();
+                capacidadService.cerrar();
+            }));
+
+            servidor.iniciar();
+            return;
+        }
+
+        ContSocketServer servidor = new ContSocketServer(capacidadService,
+                motor.equalsIgnoreCase("virtual"), maxSesiones);
 
         // Agregar un shutdown hook para cerrar limpiamente
         // Esto se ejecuta cuando haces Ctrl+C
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n[SERVIDOR] Recibida señal de cierre...");
             servidor.detener();
+            capacidadService.cerrar();
         }));
 
         // Iniciar el servidor (esto bloqueará aquí)
@@ -0,0 +1,494 @@
+package com.contsocket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor alternativo del servidor basado en NIO (ServerSocketChannel + Selector).
+ *
+ * ARQUITECTURA:
+ * - Un hilo aceptador que solo acepta conexiones y las reparte entre los bucles de E/S
+ * - Unos pocos hilos de E/S, cada uno con su Selector, que leen y escriben sin bloquear
+ * - Un pool pequeño de trabajadores que ejecuta los comandos con ProcesadorComandos
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Cada sesión lee en un ByteBuffer directo y separa las líneas buscando '\n'
+ * - Los comandos de una misma sesión se procesan en orden (nunca dos a la vez),
+ *   así las respuestas salen en el mismo orden que las peticiones
+ * - Habla exactamente el mismo protocolo que el motor de hilos (ClientHandler)
+ * - Respeta el mismo máximo de sesiones: por encima se rechaza la conexión con un ERROR
+ * - SUSCRIBIR no ocupa ningún hilo: los cambios se encolan en la sesión (ColaCambios) y un
+ *   trabajador los convierte en líneas CAMBIO; un único hilo envía LATIDO a todas las suscritas
+ * - Contrapresión: si una sesión acumula MAX_EN_VUELO comandos sin procesar o respuestas sin
+ *   enviar (un cliente que encadena comandos y no lee), se deja de leer su socket hasta que
+ *   vacíe la mitad; así la memoria por sesión queda acotada y el TCP frena al cliente
+ */
+public class ContSocketServerNio {
+
+    // Longitud máxima de una línea de comando
+    private static final int TAMANO_BUFFER = 4096;
+
+    // Comandos pendientes + respuestas sin enviar por sesión a partir de los que se deja de leer
+    static final int MAX_EN_VUELO = 256;
+
+    private final int puerto;
+    private final int maxSesiones;
+    private final MetricasServidor metricas;
+    private final ProcesadorComandos procesador;
+    private final BucleIo[] bucles;
+    private final ExecutorService trabajadores;
+    private final AtomicInteger siguienteBucle = new AtomicInteger();
+    private final CapacidadService capacidadService;
+    private final Set<Sesion> suscritas = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService latidos;
+
+    private ServerSocketChannel canalServidor;
+    private Selector selectorAceptacion;
+    private volatile boolean ejecutando;
+
+    public ContSocketServerNio(int puerto, CapacidadService capacidadService, int maxSesiones,
+                               int hilosIo, int hilosTrabajo) {
+        this.puerto = puerto;
+        this.maxSesiones = maxSesiones;
+        this.metricas = new MetricasServidor(maxSesiones);
+        this.procesador = new ProcesadorComandos(capacidadService, metricas);
+        this.capacidadService = capacidadService;
+        this.latidos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nio-latidos");
+            t.setDaemon(true);
+            return t;
+        });
+        this.bucles = new BucleIo[hilosIo];
+        AtomicInteger numTrabajador = new AtomicInteger();
+        this.trabajadores = Executors.newFixedThreadPool(hilosTrabajo, r -> {
+            Thread t = new Thread(r, "nio-trabajador-" + numTrabajador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Inicia el servidor. Igual que ContSocketServer.iniciar(), bloquea hasta que se detiene.
+     */
+    public void iniciar() {
+        try {
+            for (int i = 0; i < bucles.length; i++) {
+                bucles[i] = new BucleIo();
+                Thread hilo = new Thread(bucles[i], "nio-io-" + i);
+                hilo.setDaemon(true);
+                hilo.start();
+            }
+
+            latidos.scheduleAtFixedRate(() -> suscritas.forEach(s -> s.responder(ProcesadorComandos.LATIDO, false)),
+                    ProcesadorComandos.LATIDO_MS, ProcesadorComandos.LATIDO_MS, TimeUnit.MILLISECONDS);
+
+            canalServidor = ServerSocketChannel.open();
+            canalServidor.bind(new InetSocketAddress(puerto));
+            canalServidor.configureBlocking(false);
+            selectorAceptacion = Selector.open();
+            canalServidor.register(selectorAceptacion, SelectionKey.OP_ACCEPT);
+            ejecutando = true;
+
+            System.out.println("[SERVIDOR NIO] Escuchando en puerto: " + puerto + " (" + bucles.length
+                    + " hilos de E/S)");
+
+            while (ejecutando) {
+                selectorAceptacion.select();
+                Iterator<SelectionKey> it = selectorAceptacion.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        aceptar();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // detener() cerró el selector: salida normal
+        } catch (IOException e) {
+            if (ejecutando) {
+                System.err.println("[ERROR CRÍTICO] No se pudo iniciar el servidor NIO: " + e.getMessage());
+                e.printStackTrace();
+            }
+        } finally {
+            detener();
+        }
+    }
+
+    private void aceptar() {
+        try {
+            SocketChannel canal;
+            while ((canal = canalServidor.accept()) != null) {
+                metricas.conexionAceptada();
+                if (metricas.getActivas() >= maxSesiones) {
+                    rechazar(canal);
+                    continue;
+                }
+                metricas.sesionIniciada();
+                canal.configureBlocking(false);
+                canal.socket().setTcpNoDelay(true);
+                BucleIo bucle = bucles[Math.floorMod(siguienteBucle.getAndIncrement(), bucles.length)];
+                bucle.registrar(canal);
+            }
+        } catch (IOException e) {
+            if (ejecutando) {
+                System.err.println("[ERROR] Error al aceptar cliente: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Avisa al cliente de que el servidor está saturado y cierra la conexión.
+     */
+    private void rechazar(SocketChannel canal) {
+        metricas.conexionRechazada();
+        try (canal) {
+            canal.write(ByteBuffer.wrap("ERROR|Servidor saturado, inténtelo más tarde\n"
+                    .getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // El cliente ya se fue: nada que hacer
+        }
+    }
+
+    /**
+     * Detiene el servidor de forma ordenada.
+     */
+    public void detener() {
+        ejecutando = false;
+        try {
+            if (selectorAceptacion != null) selectorAceptacion.close();
+            if (canalServidor != null && canalServidor.isOpen()) {
+                canalServidor.close();
+                System.out.println("\n[SERVIDOR NIO] Servidor detenido correctamente");
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Error al detener servidor: " + e.getMessage());
+        }
+        for (BucleIo bucle : bucles) {
+            if (bucle != null) bucle.detener();
+        }
+        trabajadores.shutdownNow();
+        latidos.shutdownNow();
+    }
+
+    /**
+     * Hilo de E/S: un Selector que atiende lecturas y escrituras de sus sesiones.
+     */
+    private final class BucleIo implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> nuevos = new ConcurrentLinkedQueue<>();
+        private final Queue<Sesion> conEscrituras = new ConcurrentLinkedQueue<>();
+
+        BucleIo() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void registrar(SocketChannel canal) {
+            nuevos.add(canal);
+            selector.wakeup();
+        }
+
+        void solicitarEscritura(Sesion sesion) {
+            conEscrituras.add(sesion);
+            selector.wakeup();
+        }
+
+        void detener() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                // ya cerrado
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    registrarNuevos();
+                    activarEscrituras();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Sesion sesion = (Sesion) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                sesion.leer();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                sesion.escribir();
+                            }
+                        } catch (IOException e) {
+                            System.err.println("[ERROR] Cliente " + sesion.clientId + ": " + e.getMessage());
+                            sesion.cerrar();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // selector cerrado al detener el servidor
+            }
+        }
+
+        private void registrarNuevos() {
+            SocketChannel canal;
+            while ((canal = nuevos.poll()) != null) {
+                try {
+                    Sesion sesion = new Sesion(canal, this);
+                    sesion.key = canal.register(selector, SelectionKey.OP_READ, sesion);
+                    System.out.println("[CONEXIÓN] Cliente conectado: " + sesion.clientId);
+                } catch (IOException e) {
+                    System.err.println("[ERROR] Al registrar cliente: " + e.getMessage());
+                    metricas.sesionTerminada();
+                    try {
+                        canal.close();
+                    } catch (IOException ignorada) {
+                        // ya cerrado
+                    }
+                }
+            }
+        }
+
+        private void activarEscrituras() {
+            Sesion sesion;
+            while ((sesion = conEscrituras.poll()) != null) {
+                if (sesion.key.isValid()) {
+                    sesion.key.interestOps(sesion.key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estado de una conexión: buffer de lectura, comandos pendientes y respuestas por enviar.
+     */
+    private final class Sesion {
+
+        private final SocketChannel canal;
+        private final BucleIo bucle;
+        private final String clientId;
+        private final ByteBuffer lectura = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+        private final byte[] linea = new byte[TAMANO_BUFFER];
+
+        private final Queue<String> pendientes = new ConcurrentLinkedQueue<>();
+        private final Queue<ByteBuffer> respuestas = new ConcurrentLinkedQueue<>();
+        // Tamaños de las dos colas (size() de ConcurrentLinkedQueue recorre la cola entera)
+        private final AtomicInteger numPendientes = new AtomicInteger();
+        private final AtomicInteger numRespuestas = new AtomicInteger();
+        // true mientras OP_READ está quitado por contrapresión; solo lo escribe el hilo de E/S
+        private volatile boolean lecturaPausada;
+        private final AtomicBoolean procesando = new AtomicBoolean();
+        private volatile boolean cerrarTrasEscribir;
+        private SelectionKey key;
+        // Cambios pendientes de enviar; null mientras la sesión no haya hecho SUSCRIBIR
+        private volatile ColaCambios suscripcion;
+
+        Sesion(SocketChannel canal, BucleIo bucle) throws IOException {
+            this.canal = canal;
+            this.bucle = bucle;
+            InetSocketAddress remota = (InetSocketAddress) canal.getRemoteAddress();
+            this.clientId = remota.getAddress().getHostAddress() + ":" + remota.getPort();
+        }
+
+        /**
+         * Lee lo disponible y extrae las líneas completas. Se ejecuta en el hilo de E/S.
+         */
+        void leer() throws IOException {
+            int leidos = canal.read(lectura);
+            if (leidos < 0) {
+                cerrar();
+                return;
+            }
+
+            lectura.flip();
+            int inicio = lectura.position();
+            for (int i = inicio; i < lectura.limit(); i++) {
+                if (lectura.get(i) == '\n') {
+                    int fin = i;
+                    if (fin > inicio && lectura.get(fin - 1) == '\r') {
+                        fin--;
+                    }
+                    lectura.get(inicio, linea, 0, fin - inicio);
+                    pendientes.add(new String(linea, 0, fin - inicio, StandardCharsets.UTF_8));
+                    numPendientes.incrementAndGet();
+                    inicio = i + 1;
+                }
+            }
+            lectura.position(inicio);
+            lectura.compact();
+
+            if (!lectura.hasRemaining()) {
+                // Línea demasiado larga sin '\n': no es un cliente del protocolo
+                responder("ERROR|Línea demasiado larga", true);
+                lectura.clear();
+            }
+
+            if (numPendientes.get() + numRespuestas.get() >= MAX_EN_VUELO) {
+                // El cliente va por delante: que espere en su buffer TCP, no en nuestra memoria
+                lecturaPausada = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+
+            if (!pendientes.isEmpty()) {
+                planificar();
+            }
+        }
+
+        /**
+         * Vuelve a leer cuando la sesión ha bajado de la mitad del límite. Hilo de E/S.
+         */
+        private void reanudarLecturaSiProcede() {
+            if (lecturaPausada && key.isValid()
+                    && numPendientes.get() + numRespuestas.get() <= MAX_EN_VUELO / 2) {
+                lecturaPausada = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Lanza el procesamiento en un trabajador si no hay ya uno atendiendo esta sesión.
+         */
+        private void planificar() {
+            if (procesando.compareAndSet(false, true)) {
+                trabajadores.execute(this::procesarPendientes);
+            }
+        }
+
+        private void procesarPendientes() {
+            String comando;
+            while (!cerrarTrasEscribir && (comando = pendientes.poll()) != null) {
+                numPendientes.decrementAndGet();
+                if (suscripcion != null) {
+                    // Una sesión suscrita ya no acepta comandos
+                    continue;
+                }
+                if (procesador.esSuscripcion(comando)) {
+                    suscribir();
+                    continue;
+                }
+                if (Trazas.ACTIVAS) {
+                    System.out.println("[" + clientId + "] Recibido: " + comando);
+                }
+                String respuesta = procesador.procesarComando(comando);
+                if (Trazas.ACTIVAS) {
+                    System.out.println("[" + clientId + "] Enviado: " + respuesta);
+                }
+                responder(respuesta, procesador.esSalida(comando));
+            }
+            procesando.set(false);
+            if (lecturaPausada) {
+                // Los comandos descartados no generan respuesta: que el hilo de E/S revise si reanuda
+                bucle.solicitarEscritura(this);
+            }
+            // Pudo llegar un comando entre el último poll() y el set(false)
+            if (!pendientes.isEmpty() && !cerrarTrasEscribir) {
+                planificar();
+            }
+        }
+
+        private void suscribir() {
+            suscripcion = new ColaCambios(() -> trabajadores.execute(this::enviarCambios));
+            responder(ProcesadorComandos.SUSCRITO, false);
+            capacidadService.anadirOyente(suscripcion);
+            suscritas.add(this);
+            System.out.println("[SUSCRIPCIÓN] " + clientId + " recibe los cambios de capacidad");
+            // Pudo cerrarse mientras se suscribía
+            if (!canal.isOpen()) {
+                cancelarSuscripcion();
+            }
+        }
+
+        /**
+         * Convierte los días pendientes en líneas CAMBIO. Sincronizado para que dos trabajadores
+         * no envíen el mismo día a la vez y uno deje detrás un valor más viejo.
+         */
+        private synchronized void enviarCambios() {
+            ColaCambios cola = suscripcion;
+            if (cola == null || cerrarTrasEscribir) {
+                return;
+            }
+            if (cola.isDesbordada() || numRespuestas.get() > ColaCambios.MAX_PENDIENTES) {
+                System.out.println("[SUSCRIPCIÓN] " + clientId + " no lee los cambios: se cierra");
+                responder("ERROR|Demasiados cambios sin leer", true);
+                cancelarSuscripcion();
+                return;
+            }
+            for (int dia : cola.vaciar()) {
+                responder(procesador.lineaCambio(dia), false);
+            }
+        }
+
+        private void cancelarSuscripcion() {
+            ColaCambios cola = suscripcion;
+            if (cola != null) {
+                capacidadService.quitarOyente(cola);
+                suscritas.remove(this);
+            }
+        }
+
+        private void responder(String respuesta, boolean cerrar) {
+            respuestas.add(ByteBuffer.wrap((respuesta + "\n").getBytes(StandardCharsets.UTF_8)));
+            numRespuestas.incrementAndGet();
+            if (cerrar) {
+                cerrarTrasEscribir = true;
+            }
+            bucle.solicitarEscritura(this);
+        }
+
+        /**
+         * Vacía la cola de respuestas. Se ejecuta en el hilo de E/S.
+         */
+        void escribir() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = respuestas.peek()) != null) {
+                canal.write(buffer);
+                if (buffer.hasRemaining()) {
+                    reanudarLecturaSiProcede();
+                    return; // el socket está lleno: seguimos en el próximo OP_WRITE
+                }
+                respuestas.poll();
+                numRespuestas.decrementAndGet();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            reanudarLecturaSiProcede();
+            if (cerrarTrasEscribir) {
+                cerrar();
+            }
+        }
+
+        void cerrar() {
+            if (!canal.isOpen()) {
+                return;
+            }
+            metricas.sesionTerminada();
+            cancelarSuscripcion();
+            try {
+                key.cancel();
+                canal.close();
+                System.out.println("[DESCONEXIÓN] Cliente desconectado: " + clientId);
+            } catch (IOException e) {
+                System.err.println("[ERROR] Al cerrar recursos: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.contsocket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario (journal) de los cambios de capacidad, con instantáneas periódicas.
+ * Permite que al reiniciar el servidor se recuperen las capacidades en lugar
+ * de volver a generarlas al azar.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Cada cambio (fijar un día, reservar, liberar, reducir) se añade al final de
+ *   "capacidades.diario" como un registro de tamaño fijo con CRC32C
+ * - Group commit: un único hilo escritor recoge todos los registros pendientes, los
+ *   escribe de una vez y hace un solo force() por lote. Cada llamante espera a que
+ *   su lote esté en disco antes de responder al cliente
+ * - El hilo escritor mantiene un espejo del estado aplicando esos mismos registros.
+ *   Cada UMBRAL_INSTANTANEA registros (o cada INTERVALO_INSTANTANEA_MS) vuelca el espejo
+ *   a "capacidades.instantanea" y vacía el diario, así que la recuperación nunca
+ *   tiene que reaplicar un diario muy largo
+ * - Al arrancar se lee la instantánea con un MappedByteBuffer y se reaplica el diario.
+ *   Un registro final incompleto o con CRC erróneo (caída a mitad de escritura)
+ *   se descarta y se recorta
+ *
+ * FORMATO DEL REGISTRO (32 bytes):
+ *   tipo(int) | dia(int) | reservaId(long) | kilos(long) | reservado(int) | crc32c(int)
+ *
+ * GENERACIONES:
+ * El diario empieza con una cabecera (MAGIA, versión, generación) y la instantánea
+ * guarda la generación del diario que ya incluye. Si el proceso cae entre escribir la
+ * instantánea y vaciar el diario, al arrancar se detecta y no se aplica dos veces.
+ */
+public class DiarioCapacidades {
+
+    // Tipos de registro
+    static final int FIJAR = 1;
+    static final int RESERVAR = 2;
+    static final int LIBERAR = 3;
+    static final int REDUCIR = 4;
+
+    private static final String FICHERO_DIARIO = "capacidades.diario";
+    private static final String FICHERO_INSTANTANEA = "capacidades.instantanea";
+
+    private static final int MAGIA_DIARIO = 0x43534A31;      // "CSJ1"
+    private static final int MAGIA_INSTANTANEA = 0x43535331; // "CSS1"
+    private static final int VERSION = 1;
+    private static final int TAMANO_CABECERA_DIARIO = 16;
+    private static final int TAMANO_CABECERA_INSTANTANEA = 32;
+    static final int TAMANO_REGISTRO = 32;
+
+    private static final int MAX_LOTE = 1024;
+    private static final int UMBRAL_INSTANTANEA = 100_000;
+    private static final long INTERVALO_INSTANTANEA_MS = 60_000;
+    private static final long ESPERA_COLA_MS = 500;
+
+    /**
+     * Un cambio esperando a que el hilo escritor lo lleve a disco.
+     */
+    private record Pendiente(int tipo, int dia, long reservaId, long kilos, CompletableFuture<Void> hecho) {}
+
+    /**
+     * Estado reconstruido a partir de la instantánea y el diario.
+     * Lo usan la recuperación y, después, el hilo escritor como espejo.
+     */
+    private static final class Estado {
+        final Map<Integer, Long> dias = new TreeMap<>();
+        final Map<Long, CapacidadService.Reserva> reservas = new HashMap<>();
+        long secuencia;
+
+        // Los deltas se suman sin comprobar límites: el orden del diario puede no
+        // coincidir con el de memoria, pero el resultado final es el mismo
+        void aplicar(int tipo, int dia, long reservaId, long kilos) {
+            switch (tipo) {
+                case FIJAR -> dias.put(dia, kilos);
+                case RESERVAR -> {
+                    dias.computeIfPresent(dia, (d, k) -> k - kilos);
+                    reservas.put(reservaId, new CapacidadService.Reserva(dia, kilos));
+                    secuencia = Math.max(secuencia, reservaId);
+                }
+                case LIBERAR -> {
+                    dias.computeIfPresent(dia, (d, k) -> k + kilos);
+                    reservas.remove(reservaId);
+                }
+                case REDUCIR -> dias.computeIfPresent(dia, (d, k) -> k - kilos);
+                default -> throw new IllegalArgumentException("Tipo de registro desconocido: " + tipo);
+            }
+        }
+    }
+
+    private final Path directorio;
+    private final FileChannel diario;
+    private final Estado espejo;
+    private final LinkedBlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+    private final ByteBuffer bufferLote = ByteBuffer.allocate(MAX_LOTE * TAMANO_REGISTRO);
+    private final CRC32C crc = new CRC32C();
+    private final Thread escritor;
+
+    // Copias del estado recuperado para CapacidadService
+    private final Map<Integer, Long> diasRecuperados;
+    private final Map<Long, CapacidadService.Reserva> reservasRecuperadas;
+    private final long secuenciaRecuperada;
+
+    private long generacion;
+    private long registrosDesdeInstantanea;
+    private volatile boolean activo = true;
+
+    private DiarioCapacidades(Path directorio, FileChannel diario, Estado estado,
+                              long generacion, long registrosEnDiario) {
+        this.directorio = directorio;
+        this.diario = diario;
+        this.espejo = estado;
+        this.generacion = generacion;
+        this.registrosDesdeInstantanea = registrosEnDiario;
+        this.diasRecuperados = Collections.unmodifiableMap(new TreeMap<>(estado.dias));
+        this.reservasRecuperadas = Collections.unmodifiableMap(new HashMap<>(estado.reservas));
+        this.secuenciaRecuperada = estado.secuencia;
+
+        this.escritor = Thread.ofPlatform().name("diario-capacidades").daemon(false)
+                .unstarted(this::escribirLotes);
+        this.escritor.start();
+    }
+
+    /**
+     * Abre (o crea) el diario en el directorio indicado y recupera el estado guardado.
+     */
+    public static DiarioCapacidades abrir(Path directorio) throws IOException {
+        long inicio = System.nanoTime();
+        Files.createDirectories(directorio);
+
+        Estado estado = new Estado();
+        long generacionInstantanea = leerInstantanea(directorio.resolve(FICHERO_INSTANTANEA), estado);
+        int diasInstantanea = estado.dias.size();
+
+        FileChannel canal = FileChannel.open(directorio.resolve(FICHERO_DIARIO),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long generacion;
+        long registros = 0;
+
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA_DIARIO);
+        if (canal.size() >= TAMANO_CABECERA_DIARIO) {
+            canal.read(cabecera, 0);
+            cabecera.flip();
+            if (cabecera.getInt() != MAGIA_DIARIO || cabecera.getInt() != VERSION) {
+                canal.close();
+                throw new IOException("El fichero " + FICHERO_DIARIO + " no es un diario de capacidades válido");
+            }
+            generacion = cabecera.getLong();
+        } else {
+            generacion = -1;
+        }
+
+        if (generacion > generacionInstantanea) {
+            registros = reaplicar(canal, estado);
+        } else {
+            // Diario vacío o ya incluido en la instantánea: empezar uno nuevo
+            generacion = generacionInstantanea + 1;
+            reiniciarDiario(canal, generacion);
+        }
+        canal.position(canal.size());
+
+        System.out.println("[DIARIO] Recuperado en " + (System.nanoTime() - inicio) / 1_000_000 + " ms: "
+                + diasInstantanea + " días de la instantánea, " + registros + " registros del diario");
+        return new DiarioCapacidades(directorio, canal, estado, generacion, registros);
+    }
+
+    public Map<Integer, Long> getDiasRecuperados() {
+        return diasRecuperados;
+    }
+
+    public Map<Long, CapacidadService.Reserva> getReservasRecuperadas() {
+        return reservasRecuperadas;
+    }
+
+    public long getSecuenciaRecuperada() {
+        return secuenciaRecuperada;
+    }
+
+    /**
+     * Añade un cambio al diario y espera a que esté en disco.
+     *
+     * @throws UncheckedIOException si no se pudo escribir (el cambio no es duradero)
+     */
+    public void registrar(int tipo, int dia, long reservaId, long kilos) {
+        if (!activo) {
+            throw new UncheckedIOException(new IOException("El diario de capacidades está cerrado"));
+        }
+        Pendiente pendiente = new Pendiente(tipo, dia, reservaId, kilos, new CompletableFuture<>());
+        cola.add(pendiente);
+        try {
+            pendiente.hecho().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException fallo) {
+                throw fallo;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Escribe lo pendiente, guarda una última instantánea y cierra el fichero.
+     */
+    public void cerrar() {
+        activo = false;
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Lo que llegase después de parar el escritor ya no se guardará
+        Pendiente tarde;
+        while ((tarde = cola.poll()) != null) {
+            tarde.hecho().completeExceptionally(
+                    new UncheckedIOException(new IOException("El diario de capacidades está cerrado")));
+        }
+        try {
+            diario.close();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Al cerrar el diario: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: group commit y, de vez en cuando, instantánea.
+     */
+    private void escribirLotes() {
+        List<Pendiente> lote = new ArrayList<>(MAX_LOTE);
+        long ultimaInstantanea = System.currentTimeMillis();
+
+        while (activo || !cola.isEmpty()) {
+            try {
+                Pendiente primero = cola.poll(ESPERA_COLA_MS, TimeUnit.MILLISECONDS);
+                if (primero != null) {
+                    lote.add(primero);
+                    cola.drainTo(lote, MAX_LOTE - 1);
+                    escribirLote(lote);
+                    lote.clear();
+                }
+            } catch (InterruptedException e) {
+                // Solo se sale cuando se ha vaciado la cola
+                continue;
+            }
+
+            long ahora = System.currentTimeMillis();
+            if (registrosDesdeInstantanea >= UMBRAL_INSTANTANEA || (registrosDesdeInstantanea > 0
+                    && ahora - ultimaInstantanea >= INTERVALO_INSTANTANEA_MS)) {
+                hacerInstantanea();
+                ultimaInstantanea = ahora;
+            }
+        }
+
+        if (registrosDesdeInstantanea > 0) {
+            hacerInstantanea();
+        }
+    }
+
+    private void escribirLote(List<Pendiente> lote) {
+        long posicion = -1;
+        try {
+            posicion = diario.position();
+            bufferLote.clear();
+            for (Pendiente p : lote) {
+                escribirRegistro(bufferLote, p.tipo(), p.dia(), p.reservaId(), p.kilos());
+            }
+            bufferLote.flip();
+            while (bufferLote.hasRemaining()) {
+                diario.write(bufferLote);
+            }
+            // Un único fsync para todo el lote
+            diario.force(false);
+        } catch (IOException e) {
+            System.err.println("[ERROR] No se pudo escribir en el diario: " + e.getMessage());
+            descartarLoteFallido(posicion);
+            UncheckedIOException fallo = new UncheckedIOException(e);
+            for (Pendiente p : lote) {
+                p.hecho().completeExceptionally(fallo);
+            }
+            return;
+        }
+
+        for (Pendiente p : lote) {
+            espejo.aplicar(p.tipo(), p.dia(), p.reservaId(), p.kilos());
+            p.hecho().complete(null);
+        }
+        registrosDesdeInstantanea += lote.size();
+    }
+
+    // Quita lo que se llegase a escribir de un lote que no se confirmó
+    private void descartarLoteFallido(long posicion) {
+        if (posicion < 0) {
+            return;
+        }
+        try {
+            diario.truncate(posicion);
+            diario.position(posicion);
+        } catch (IOException e) {
+            System.err.println("[ERROR] No se pudo recortar el diario: " + e.getMessage());
+        }
+    }
+
+    private void escribirRegistro(ByteBuffer buffer, int tipo, int dia, long reservaId, long kilos) {
+        int inicio = buffer.position();
+        buffer.putInt(tipo).putInt(dia).putLong(reservaId).putLong(kilos).putInt(0);
+        crc.reset();
+        crc.update(buffer.array(), inicio, TAMANO_REGISTRO - 4);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Vuelca el espejo a una instantánea nueva (fichero temporal + rename atómico)
+     * y empieza un diario vacío con la generación siguiente.
+     * Si algo falla, el diario se conserva entero y la recuperación sigue siendo posible.
+     */
+    private void hacerInstantanea() {
+        long inicio = System.nanoTime();
+        Path temporal = directorio.resolve(FICHERO_INSTANTANEA + ".tmp");
+        try {
+            int tamano = TAMANO_CABECERA_INSTANTANEA + espejo.dias.size() * 12
+                    + espejo.reservas.size() * 20 + 4;
+            ByteBuffer buffer = ByteBuffer.allocate(tamano);
+            buffer.putInt(MAGIA_INSTANTANEA).putInt(VERSION).putLong(generacion).putLong(espejo.secuencia)
+                    .putInt(espejo.dias.size()).putInt(espejo.reservas.size());
+            for (Map.Entry<Integer, Long> dia : espejo.dias.entrySet()) {
+                buffer.putInt(dia.getKey()).putLong(dia.getValue());
+            }
+            for (Map.Entry<Long, CapacidadService.Reserva> reserva : espejo.reservas.entrySet()) {
+                buffer.putLong(reserva.getKey()).putInt(reserva.getValue().dia()).putLong(reserva.getValue().kilos());
+            }
+            CRC32C crcInstantanea = new CRC32C();
+            crcInstantanea.update(buffer.array(), 0, buffer.position());
+            buffer.putInt((int) crcInstantanea.getValue());
+            buffer.flip();
+
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    canal.write(buffer);
+                }
+                canal.force(true);
+            }
+            Files.move(temporal, directorio.resolve(FICHERO_INSTANTANEA),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            sincronizarDirectorio();
+
+            // La instantánea ya incluye todo el diario: se puede vaciar
+            generacion++;
+            reiniciarDiario(diario, generacion);
+            diario.position(diario.size());
+
+            System.out.println("[DIARIO] Instantánea de " + registrosDesdeInstantanea + " registros ("
+                    + espejo.dias.size() + " días, " + espejo.reservas.size() + " reservas) en "
+                    + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+            registrosDesdeInstantanea = 0;
+        } catch (IOException e) {
+            System.err.println("[ERROR] No se pudo guardar la instantánea: " + e.getMessage());
+        }
+    }
+
+    private void sincronizarDirectorio() {
+        // Hace duradero el rename; en sistemas que no lo permiten (Windows) se omite
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Sin soporte para sincronizar directorios
+        }
+    }
+
+    private static void reiniciarDiario(FileChannel canal, long generacion) throws IOException {
+        canal.truncate(0);
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA_DIARIO);
+        cabecera.putInt(MAGIA_DIARIO).putInt(VERSION).putLong(generacion).flip();
+        while (cabecera.hasRemaining()) {
+            canal.write(cabecera, TAMANO_CABECERA_DIARIO - cabecera.remaining());
+        }
+        canal.force(true);
+    }
+
+    /**
+     * Lee la instantánea mapeándola en memoria.
+     *
+     * @return Generación del diario que incluye, o -1 si no hay instantánea
+     */
+    private static long leerInstantanea(Path fichero, Estado estado) throws IOException {
+        if (!Files.exists(fichero)) {
+            return -1;
+        }
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < TAMANO_CABECERA_INSTANTANEA + 4) {
+                throw new IOException("Instantánea truncada: " + fichero);
+            }
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+
+            CRC32C crcInstantanea = new CRC32C();
+            crcInstantanea.update(mapa.slice(0, (int) tamano - 4));
+            if ((int) crcInstantanea.getValue() != mapa.getInt((int) tamano - 4)) {
+                throw new IOException("Instantánea corrupta (CRC erróneo): " + fichero);
+            }
+            if (mapa.getInt() != MAGIA_INSTANTANEA || mapa.getInt() != VERSION) {
+                throw new IOException("Formato de instantánea desconocido: " + fichero);
+            }
+
+            long generacion = mapa.getLong();
+            estado.secuencia = mapa.getLong();
+            int dias = mapa.getInt();
+            int reservas = mapa.getInt();
+            for (int i = 0; i < dias; i++) {
+                estado.dias.put(mapa.getInt(), mapa.getLong());
+            }
+            for (int i = 0; i < reservas; i++) {
+                long id = mapa.getLong();
+                estado.reservas.put(id, new CapacidadService.Reserva(mapa.getInt(), mapa.getLong()));
+            }
+            return generacion;
+        }
+    }
+
+    /**
+     * Reaplica los registros del diario sobre el estado.
+     * Se para en el primer registro incompleto o con CRC erróneo y recorta el fichero ahí.
+     *
+     * @return Número de registros válidos
+     */
+    private static long reaplicar(FileChannel canal, Estado estado) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_LOTE * TAMANO_REGISTRO);
+        CRC32C crcRegistro = new CRC32C();
+        long posicion = TAMANO_CABECERA_DIARIO;
+        long fin = canal.size();
+        long registros = 0;
+
+        while (posicion < fin) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            if (leidos <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= TAMANO_REGISTRO) {
+                int inicio = buffer.position();
+                crcRegistro.reset();
+                crcRegistro.update(buffer.array(), inicio, TAMANO_REGISTRO - 4);
+                if ((int) crcRegistro.getValue() != buffer.getInt(inicio + TAMANO_REGISTRO - 4)) {
+                    return recortar(canal, posicion, registros);
+                }
+                int tipo = buffer.getInt();
+                int dia = buffer.getInt();
+                long reservaId = buffer.getLong();
+                long kilos = buffer.getLong();
+                buffer.position(inicio + TAMANO_REGISTRO);
+                estado.aplicar(tipo, dia, reservaId, kilos);
+                posicion += TAMANO_REGISTRO;
+                registros++;
+            }
+            if (buffer.hasRemaining() && posicion + buffer.remaining() >= fin) {
+                // Registro final a medias
+                return recortar(canal, posicion, registros);
+            }
+        }
+        return registros;
+    }
+
+    private static long recortar(FileChannel canal, long posicion, long registros) throws IOException {
+        System.out.println("[DIARIO] Descartado registro incompleto o dañado en la posición " + posicion);
+        canal.truncate(posicion);
+        canal.force(true);
+        return registros;
+    }
+}
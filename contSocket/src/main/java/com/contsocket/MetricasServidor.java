@@ -0,0 +1,69 @@
+package com.contsocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de conexiones del servidor, compartidos por todos los hilos.
+ *
+ * Se consultan con el comando METRICAS del protocolo:
+ *   METRICAS -> OK|aceptadas=N;rechazadas=N;enCola=N;activas=N;max=N
+ *
+ * - aceptadas: conexiones devueltas por accept()
+ * - rechazadas: conexiones cerradas por superar el máximo de sesiones
+ * - enCola: conexiones aceptadas que esperan un hueco para empezar su sesión
+ * - activas: sesiones atendiéndose ahora mismo
+ */
+public class MetricasServidor {
+
+    private final int maxSesiones;
+    private final AtomicLong aceptadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong enCola = new AtomicLong();
+    private final AtomicLong activas = new AtomicLong();
+
+    public MetricasServidor(int maxSesiones) {
+        this.maxSesiones = maxSesiones;
+    }
+
+    public void conexionAceptada() {
+        aceptadas.incrementAndGet();
+    }
+
+    public void conexionRechazada() {
+        rechazadas.incrementAndGet();
+    }
+
+    /**
+     * @return Conexiones en cola contando esta
+     */
+    public long entraEnCola() {
+        return enCola.incrementAndGet();
+    }
+
+    public void saleDeCola() {
+        enCola.decrementAndGet();
+    }
+
+    public void sesionIniciada() {
+        activas.incrementAndGet();
+    }
+
+    public void sesionTerminada() {
+        activas.decrementAndGet();
+    }
+
+    public long getActivas() {
+        return activas.get();
+    }
+
+    /**
+     * Formato compacto para la respuesta del comando METRICAS.
+     */
+    public String resumen() {
+        return "aceptadas=" + aceptadas.get() +
+                ";rechazadas=" + rechazadas.get() +
+                ";enCola=" + enCola.get() +
+                ";activas=" + activas.get() +
+                ";max=" + maxSesiones;
+    }
+}
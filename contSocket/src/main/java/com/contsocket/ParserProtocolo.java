@@ -0,0 +1,200 @@
+package com.contsocket;
+
+/**
+ * Lectura y escritura de los campos del protocolo directamente sobre arrays de bytes.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Sin split(), sin expresiones regulares y sin Strings intermedios: así una consulta
+ *   CAPACIDAD no genera basura para el recolector
+ * - Las fechas se convierten a "día epoch" (días desde 01-01-1970), que es el índice
+ *   del CalendarioCapacidades
+ * - Las toneladas viajan como texto decimal pero se manejan como kilos enteros
+ */
+final class ParserProtocolo {
+
+    private ParserProtocolo() {}
+
+    /**
+     * Lee una fecha "dd-MM-yyyy" validando que exista (rechaza 32-13-2024, 29-02-2023...).
+     *
+     * @return Día epoch de la fecha, o -1 si el formato o la fecha no son válidos
+     */
+    static int leerFecha(byte[] b, int inicio, int longitud) {
+        if (longitud != 10 || b[inicio + 2] != '-' || b[inicio + 5] != '-') {
+            return -1;
+        }
+        int dia = leerDigitos(b, inicio, 2);
+        int mes = leerDigitos(b, inicio + 3, 2);
+        int anio = leerDigitos(b, inicio + 6, 4);
+        if (dia < 1 || mes < 1 || mes > 12 || anio < 0 || dia > diasDelMes(mes, anio)) {
+            return -1;
+        }
+        return diaEpoch(anio, mes, dia);
+    }
+
+    /**
+     * Escribe un día epoch como "dd-MM-yyyy".
+     *
+     * @return Posición siguiente al último byte escrito
+     */
+    static int escribirFecha(int diaEpoch, byte[] salida, int pos) {
+        // Algoritmo inverso de diaEpoch (civil_from_days, H. Hinnant)
+        int z = diaEpoch + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int dia = doy - (153 * mp + 2) / 5 + 1;
+        int mes = mp < 10 ? mp + 3 : mp - 9;
+        int anio = yoe + era * 400 + (mes <= 2 ? 1 : 0);
+
+        pos = escribirDigitos(dia, 2, salida, pos);
+        salida[pos++] = '-';
+        pos = escribirDigitos(mes, 2, salida, pos);
+        salida[pos++] = '-';
+        return escribirDigitos(anio, 4, salida, pos);
+    }
+
+    /**
+     * Lee un número decimal positivo de toneladas ("12", "12.5", "0.125") y lo
+     * devuelve en kilos, redondeando al kilo.
+     *
+     * @return Kilos, o -1 si no es un número válido
+     */
+    static long leerKilos(byte[] b, int inicio, int longitud) {
+        if (longitud == 0 || longitud > 18) {
+            return -1;
+        }
+        long entero = 0;
+        long milesimas = 0;
+        int decimales = 0;
+        boolean punto = false;
+        boolean redondearArriba = false;
+        for (int i = inicio; i < inicio + longitud; i++) {
+            byte c = b[i];
+            if (c == '.' && !punto) {
+                punto = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!punto) {
+                    entero = entero * 10 + (c - '0');
+                } else if (decimales < 3) {
+                    milesimas = milesimas * 10 + (c - '0');
+                    decimales++;
+                } else if (decimales == 3) {
+                    redondearArriba = c >= '5';
+                    decimales++;
+                }
+            } else {
+                return -1;
+            }
+        }
+        for (int i = Math.min(decimales, 3); i < 3; i++) {
+            milesimas *= 10;
+        }
+        return entero * 1000 + milesimas + (redondearArriba ? 1 : 0);
+    }
+
+    /**
+     * Escribe kilos como toneladas con el formato de Double.toString
+     * para estos valores ("100.0", "123.45", "0.125").
+     *
+     * @return Posición siguiente al último byte escrito
+     */
+    static int escribirToneladas(long kilos, byte[] salida, int pos) {
+        pos = escribirEntero(kilos / 1000, salida, pos);
+        salida[pos++] = '.';
+        int milesimas = (int) (kilos % 1000);
+        if (milesimas == 0) {
+            salida[pos++] = '0';
+            return pos;
+        }
+        int divisor = 100;
+        while (milesimas > 0) {
+            salida[pos++] = (byte) ('0' + milesimas / divisor);
+            milesimas %= divisor;
+            divisor /= 10;
+        }
+        return pos;
+    }
+
+    /**
+     * Copia bytes ASCII constantes (prefijos y mensajes) en la salida.
+     */
+    static int escribir(byte[] texto, byte[] salida, int pos) {
+        System.arraycopy(texto, 0, salida, pos, texto.length);
+        return pos + texto.length;
+    }
+
+    static boolean empiezaPor(byte[] b, int inicio, int longitud, byte[] prefijo) {
+        if (longitud < prefijo.length) {
+            return false;
+        }
+        for (int i = 0; i < prefijo.length; i++) {
+            if (b[inicio + i] != prefijo[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Días desde 01-01-1970 (days_from_civil, H. Hinnant): solo aritmética entera.
+     */
+    static int diaEpoch(int anio, int mes, int dia) {
+        int y = mes <= 2 ? anio - 1 : anio;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (mes > 2 ? mes - 3 : mes + 9) + 2) / 5 + dia - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int diasDelMes(int mes, int anio) {
+        switch (mes) {
+            case 2:
+                boolean bisiesto = (anio % 4 == 0 && anio % 100 != 0) || anio % 400 == 0;
+                return bisiesto ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int leerDigitos(byte[] b, int inicio, int cuantos) {
+        int valor = 0;
+        for (int i = inicio; i < inicio + cuantos; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            valor = valor * 10 + d;
+        }
+        return valor;
+    }
+
+    private static int escribirDigitos(int valor, int cuantos, byte[] salida, int pos) {
+        for (int i = pos + cuantos - 1; i >= pos; i--) {
+            salida[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+        return pos + cuantos;
+    }
+
+    private static int escribirEntero(long valor, byte[] salida, int pos) {
+        if (valor == 0) {
+            salida[pos] = '0';
+            return pos + 1;
+        }
+        int cifras = 0;
+        for (long v = valor; v > 0; v /= 10) {
+            cifras++;
+        }
+        for (int i = pos + cifras - 1; i >= pos; i--) {
+            salida[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+        return pos + cifras;
+    }
+}
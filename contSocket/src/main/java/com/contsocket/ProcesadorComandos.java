@@ -0,0 +1,425 @@
+package com.contsocket;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Implementa el protocolo de texto de ContSocket, independiente de cómo lleguen las líneas.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Se separa del ClientHandler para que los dos motores del servidor (hilo por conexión
+ *   y NIO con Selector) compartan exactamente la misma lógica de comandos.
+ * - No guarda estado por cliente: una sola instancia puede usarse desde varios hilos.
+ * - CAPACIDAD tiene un camino rápido sobre bytes (ParserProtocolo) que no crea ningún objeto;
+ *   el resto de comandos, menos frecuentes, se procesan como String.
+ * - CAPACIDAD_RANGO devuelve el calendario de varios días en una sola línea, escrita también
+ *   sobre bytes. El rango se limita a MAX_DIAS_RANGO para que la respuesta quepa siempre
+ *   en el buffer de una línea.
+ *
+ * PROTOCOLO DE COMUNICACIÓN:
+ * 1. CAPACIDAD|dd-MM-yyyy          -> OK|123.45 o ERROR|mensaje
+ * 2. NOTIFICAR|numContenedores|numEnvases -> OK|mensaje o ERROR|mensaje
+ * 3. SALIR                         -> ADIOS
+ * 4. METRICAS                      -> OK|aceptadas=N;rechazadas=N;enCola=N;activas=N;max=N
+ * 5. RESERVAR|dd-MM-yyyy|toneladas -> OK|reservaId o ERROR|mensaje
+ * 6. LIBERAR|reservaId             -> OK|mensaje o ERROR|mensaje
+ * 7. CAPACIDAD_RANGO|desde|hasta   -> OK|dd-MM-yyyy=123.45;dd-MM-yyyy=80.0 o ERROR|mensaje
+ *    (fechas incluidas; las que no tienen capacidad no aparecen, "OK|" si ninguna la tiene)
+ * 8. SUSCRIBIR                     -> OK|Suscrito y a partir de ahí la conexión solo envía
+ *    CAMBIO|dd-MM-yyyy|123.45 por cada capacidad que cambie, y LATIDO cada LATIDO_MS
+ *    si no hay cambios. Ya no acepta más comandos: el cliente se da de baja cerrando.
+ *    La gestiona el motor (ClientHandler o NIO) porque cambia el modo de la conexión.
+ */
+public class ProcesadorComandos {
+
+    private static final byte[] PREFIJO_CAPACIDAD = ascii("CAPACIDAD|");
+    private static final byte[] PREFIJO_RANGO = ascii("CAPACIDAD_RANGO|");
+    private static final byte[] PREFIJO_OK = ascii("OK|");
+    private static final byte[] PREFIJO_CAMBIO = ascii("CAMBIO|");
+    static final String SUSCRITO = "OK|Suscrito";
+    static final String LATIDO = "LATIDO";
+    // Cada cuánto se envía LATIDO a un suscriptor sin cambios (así detecta conexiones muertas)
+    static final long LATIDO_MS = 15_000;
+    private static final byte[] ERROR_FECHA = utf8("ERROR|Formato de fecha inválido. Use: dd-MM-yyyy");
+    private static final byte[] ERROR_SIN_CAPACIDAD = utf8("ERROR|No hay capacidad disponible para la fecha: ");
+    private static final int LONGITUD_FECHA = 10;
+    // Cada día ocupa como mucho 32 bytes ("dd-MM-yyyy=" + toneladas + ";"): 120 días caben en 4 KB
+    public static final int MAX_DIAS_RANGO = 120;
+    private static final byte[] ERROR_RANGO = utf8("ERROR|Rango inválido: desde debe ser anterior o igual a hasta"
+            + " y abarcar como mucho " + MAX_DIAS_RANGO + " días");
+    private static final byte[] ERROR_FORMATO_RANGO = utf8("ERROR|Formato incorrecto. Use: CAPACIDAD_RANGO|dd-MM-yyyy|dd-MM-yyyy");
+    private static final String ERROR_GUARDAR = "ERROR|No se pudo guardar el cambio, inténtelo de nuevo";
+
+    private final CapacidadService capacidadService;
+    private final MetricasServidor metricas;
+
+    public ProcesadorComandos(CapacidadService capacidadService, MetricasServidor metricas) {
+        this.capacidadService = capacidadService;
+        this.metricas = metricas;
+    }
+
+    /**
+     * Indica si la línea recibida es el comando que cierra la conexión.
+     */
+    public boolean esSalida(String comando) {
+        return comando.trim().equalsIgnoreCase("SALIR");
+    }
+
+    public boolean esSuscripcion(String comando) {
+        return comando.trim().equalsIgnoreCase("SUSCRIBIR");
+    }
+
+    /**
+     * Versión sobre bytes de esSuscripcion().
+     */
+    public boolean esSuscripcion(byte[] linea, int inicio, int longitud) {
+        return esPalabra(linea, inicio, longitud, "SUSCRIBIR");
+    }
+
+    /**
+     * Escribe "CAMBIO|dd-MM-yyyy|toneladas" con la capacidad actual del día a partir de pos.
+     *
+     * @return Posición siguiente al último byte escrito
+     */
+    public int escribirCambio(int dia, byte[] salida, int pos) {
+        pos = ParserProtocolo.escribir(PREFIJO_CAMBIO, salida, pos);
+        pos = ParserProtocolo.escribirFecha(dia, salida, pos);
+        salida[pos++] = '|';
+        long kilos = capacidadService.consultarKilos(dia);
+        return ParserProtocolo.escribirToneladas(Math.max(kilos, 0), salida, pos);
+    }
+
+    public String lineaCambio(int dia) {
+        byte[] salida = new byte[64];
+        int n = escribirCambio(dia, salida, 0);
+        return new String(salida, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    public CapacidadService getCapacidadService() {
+        return capacidadService;
+    }
+
+    /**
+     * Versión sobre bytes de esSalida().
+     */
+    public boolean esSalida(byte[] linea, int inicio, int longitud) {
+        return esPalabra(linea, inicio, longitud, "SALIR");
+    }
+
+    /**
+     * Compara la línea (sin espacios alrededor ni distinguir mayúsculas) con una palabra
+     * de letras ASCII, sin crear objetos.
+     */
+    private static boolean esPalabra(byte[] linea, int inicio, int longitud, String palabra) {
+        while (longitud > 0 && linea[inicio] <= ' ') { inicio++; longitud--; }
+        while (longitud > 0 && linea[inicio + longitud - 1] <= ' ') longitud--;
+        if (longitud != palabra.length()) {
+            return false;
+        }
+        for (int i = 0; i < longitud; i++) {
+            if ((linea[inicio + i] & ~0x20) != palabra.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Procesa una línea leída directamente del buffer de entrada y escribe la respuesta
+     * en el buffer de salida. CAPACIDAD|dd-MM-yyyy se resuelve sin crear objetos.
+     *
+     * @param salida Buffer de respuesta; se deja siempre un byte libre para el '\n' final
+     * @return Número de bytes de respuesta escritos en salida
+     */
+    public int procesarComando(byte[] linea, int inicio, int longitud, byte[] salida) {
+        while (longitud > 0 && linea[inicio] <= ' ') { inicio++; longitud--; }
+        while (longitud > 0 && linea[inicio + longitud - 1] <= ' ') longitud--;
+
+        if (ParserProtocolo.empiezaPor(linea, inicio, longitud, PREFIJO_CAPACIDAD)
+                && longitud == PREFIJO_CAPACIDAD.length + LONGITUD_FECHA) {
+            return consultarCapacidad(linea, inicio + PREFIJO_CAPACIDAD.length, salida);
+        }
+        if (ParserProtocolo.empiezaPor(linea, inicio, longitud, PREFIJO_RANGO)) {
+            return consultarRango(linea, inicio + PREFIJO_RANGO.length, longitud - PREFIJO_RANGO.length, salida);
+        }
+
+        // Camino general
+        String respuesta = procesarComando(new String(linea, inicio, longitud, StandardCharsets.UTF_8));
+        byte[] bytes = respuesta.getBytes(StandardCharsets.UTF_8);
+        int n = Math.min(bytes.length, salida.length - 1);
+        System.arraycopy(bytes, 0, salida, 0, n);
+        return n;
+    }
+
+    /**
+     * Camino rápido de CAPACIDAD: fecha y respuesta se leen y escriben sobre los arrays.
+     */
+    private int consultarCapacidad(byte[] linea, int inicioFecha, byte[] salida) {
+        int dia = ParserProtocolo.leerFecha(linea, inicioFecha, LONGITUD_FECHA);
+        if (dia < 0) {
+            return ParserProtocolo.escribir(ERROR_FECHA, salida, 0);
+        }
+
+        long kilos = capacidadService.consultarKilos(dia);
+        if (kilos < 0) {
+            int pos = ParserProtocolo.escribir(ERROR_SIN_CAPACIDAD, salida, 0);
+            System.arraycopy(linea, inicioFecha, salida, pos, LONGITUD_FECHA);
+            return pos + LONGITUD_FECHA;
+        }
+
+        int pos = ParserProtocolo.escribir(PREFIJO_OK, salida, 0);
+        return ParserProtocolo.escribirToneladas(kilos, salida, pos);
+    }
+
+    /**
+     * CAPACIDAD_RANGO|desde|hasta: recorre el calendario y escribe cada día con capacidad
+     * como "fecha=toneladas", separados por ';'.
+     */
+    private int consultarRango(byte[] linea, int inicio, int longitud, byte[] salida) {
+        if (longitud != 2 * LONGITUD_FECHA + 1 || linea[inicio + LONGITUD_FECHA] != '|') {
+            return ParserProtocolo.escribir(ERROR_FORMATO_RANGO, salida, 0);
+        }
+        int desde = ParserProtocolo.leerFecha(linea, inicio, LONGITUD_FECHA);
+        int hasta = ParserProtocolo.leerFecha(linea, inicio + LONGITUD_FECHA + 1, LONGITUD_FECHA);
+        if (desde < 0 || hasta < 0) {
+            return ParserProtocolo.escribir(ERROR_FECHA, salida, 0);
+        }
+        if (hasta < desde || hasta - desde >= MAX_DIAS_RANGO) {
+            return ParserProtocolo.escribir(ERROR_RANGO, salida, 0);
+        }
+
+        int pos = ParserProtocolo.escribir(PREFIJO_OK, salida, 0);
+        boolean primera = true;
+        for (int dia = desde; dia <= hasta; dia++) {
+            long kilos = capacidadService.consultarKilos(dia);
+            if (kilos < 0) {
+                continue;
+            }
+            if (!primera) {
+                salida[pos++] = ';';
+            }
+            primera = false;
+            pos = ParserProtocolo.escribirFecha(dia, salida, pos);
+            salida[pos++] = '=';
+            pos = ParserProtocolo.escribirToneladas(kilos, salida, pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Procesa un comando recibido y devuelve la respuesta apropiada.
+     *
+     * Este es el corazón del protocolo de comunicación.
+     *
+     * @param comando Comando recibido del cliente
+     * @return Respuesta a enviar al cliente
+     */
+    public String procesarComando(String comando) {
+        // Validación básica
+        if (comando == null || comando.trim().isEmpty()) {
+            return "ERROR|Comando vacío";
+        }
+
+        // Parsear el comando separando por |
+        String[] partes = comando.split("\\|");
+        String tipoComando = partes[0].trim().toUpperCase();
+
+        // Delegar según el tipo de comando
+        switch (tipoComando) {
+            case "CAPACIDAD":
+                return procesarConsultaCapacidad(partes);
+
+            case "CAPACIDAD_RANGO":
+                return procesarConsultaRango(comando);
+
+            case "NOTIFICAR":
+                return procesarNotificacion(partes);
+
+            case "SALIR":
+                return "ADIOS";
+
+            case "RESERVAR":
+                return procesarReserva(partes);
+
+            case "LIBERAR":
+                return procesarLiberacion(partes);
+
+            case "METRICAS":
+                return "OK|" + metricas.resumen();
+
+            default:
+                return "ERROR|Comando desconocido: " + tipoComando +
+                        ". Comandos válidos: CAPACIDAD, CAPACIDAD_RANGO, NOTIFICAR, RESERVAR, LIBERAR, METRICAS, SUSCRIBIR, SALIR";
+        }
+    }
+
+    /**
+     * Procesa el comando: CAPACIDAD|dd-MM-yyyy
+     *
+     * Responde: OK|123.45 si hay capacidad
+     *           ERROR|mensaje si no hay o formato incorrecto
+     */
+    private String procesarConsultaCapacidad(String[] partes) {
+        // Validar formato
+        if (partes.length != 2) {
+            return "ERROR|Formato incorrecto. Use: CAPACIDAD|dd-MM-yyyy";
+        }
+
+        String fecha = partes[1].trim();
+
+        // Validación estricta de la fecha (rechaza también 32-13-2024)
+        if (!esFechaValida(fecha)) {
+            return "ERROR|Formato de fecha inválido. Use: dd-MM-yyyy";
+        }
+
+        // Consultar capacidad
+        double capacidad = capacidadService.consultarCapacidad(fecha);
+
+        if (capacidad < 0) {
+            return "ERROR|No hay capacidad disponible para la fecha: " + fecha;
+        }
+
+        return "OK|" + capacidad;
+    }
+
+    /**
+     * Procesa el comando: CAPACIDAD_RANGO|desde|hasta
+     *
+     * Usa el mismo código que el camino de bytes para que los dos motores respondan igual.
+     */
+    private String procesarConsultaRango(String comando) {
+        byte[] linea = comando.trim().getBytes(StandardCharsets.UTF_8);
+        // El tipo de comando se acepta en minúsculas, como el resto
+        for (int i = 0; i < PREFIJO_RANGO.length && i < linea.length; i++) {
+            if (linea[i] >= 'a' && linea[i] <= 'z') {
+                linea[i] -= 0x20;
+            }
+        }
+        if (!ParserProtocolo.empiezaPor(linea, 0, linea.length, PREFIJO_RANGO)) {
+            return new String(ERROR_FORMATO_RANGO, StandardCharsets.UTF_8);
+        }
+        byte[] salida = new byte[ClientHandler.TAMANO_LINEA];
+        int n = consultarRango(linea, PREFIJO_RANGO.length, linea.length - PREFIJO_RANGO.length, salida);
+        return new String(salida, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Procesa el comando: NOTIFICAR|numContenedores|numEnvases
+     *
+     * Responde: OK|mensaje si se procesó correctamente
+     *           ERROR|mensaje si hay algún problema
+     */
+    private String procesarNotificacion(String[] partes) {
+        // Validar formato
+        if (partes.length != 3) {
+            return "ERROR|Formato incorrecto. Use: NOTIFICAR|numContenedores|numEnvases";
+        }
+
+        try {
+            int numContenedores = Integer.parseInt(partes[1].trim());
+            int numEnvases = Integer.parseInt(partes[2].trim());
+
+            // Validar que sean números positivos
+            if (numContenedores <= 0 || numEnvases <= 0) {
+                return "ERROR|Los números deben ser positivos";
+            }
+
+            // Log de la notificación
+            System.out.println("[NOTIFICACIÓN] " + numContenedores +
+                    " contenedores con " + numEnvases + " envases");
+
+            // En una implementación real, aquí se haría algo con esta información
+            // Por ejemplo: actualizar base de datos, enviar emails, etc.
+
+            return "OK|Notificación recibida: " + numContenedores +
+                    " contenedores, " + numEnvases + " envases";
+
+        } catch (NumberFormatException e) {
+            return "ERROR|Los valores de contenedores y envases deben ser números enteros";
+        }
+    }
+
+    /**
+     * Procesa el comando: RESERVAR|dd-MM-yyyy|toneladas
+     *
+     * Responde: OK|reservaId si se reservó la capacidad
+     *           ERROR|mensaje si no hay suficiente o formato incorrecto
+     */
+    private String procesarReserva(String[] partes) {
+        if (partes.length != 3) {
+            return "ERROR|Formato incorrecto. Use: RESERVAR|dd-MM-yyyy|toneladas";
+        }
+
+        String fecha = partes[1].trim();
+        byte[] bytesFecha = fecha.getBytes(StandardCharsets.ISO_8859_1);
+        int dia = ParserProtocolo.leerFecha(bytesFecha, 0, bytesFecha.length);
+        if (dia < 0) {
+            return "ERROR|Formato de fecha inválido. Use: dd-MM-yyyy";
+        }
+
+        // Kilos enteros, como los guarda el calendario: sin pasar por double
+        byte[] bytesToneladas = partes[2].trim().getBytes(StandardCharsets.ISO_8859_1);
+        long kilos = ParserProtocolo.leerKilos(bytesToneladas, 0, bytesToneladas.length);
+        if (kilos <= 0) {
+            return "ERROR|Las toneladas deben ser un número positivo";
+        }
+
+        long reservaId;
+        try {
+            reservaId = capacidadService.reservar(dia, kilos);
+        } catch (UncheckedIOException e) {
+            return ERROR_GUARDAR;
+        }
+
+        if (reservaId == CapacidadService.SIN_CAPACIDAD_REGISTRADA) {
+            return "ERROR|No hay capacidad disponible para la fecha: " + fecha;
+        }
+        if (reservaId == CapacidadService.CAPACIDAD_INSUFICIENTE) {
+            return "ERROR|Capacidad insuficiente para la fecha: " + fecha;
+        }
+        return "OK|" + reservaId;
+    }
+
+    /**
+     * Procesa el comando: LIBERAR|reservaId
+     *
+     * Responde: OK|mensaje si se liberó la reserva
+     *           ERROR|mensaje si no existe o ya se liberó
+     */
+    private String procesarLiberacion(String[] partes) {
+        if (partes.length != 2) {
+            return "ERROR|Formato incorrecto. Use: LIBERAR|reservaId";
+        }
+
+        long reservaId;
+        try {
+            reservaId = Long.parseLong(partes[1].trim());
+        } catch (NumberFormatException e) {
+            return "ERROR|El id de reserva debe ser un número entero";
+        }
+
+        boolean liberada;
+        try {
+            liberada = capacidadService.liberar(reservaId);
+        } catch (UncheckedIOException e) {
+            return ERROR_GUARDAR;
+        }
+        if (!liberada) {
+            return "ERROR|Reserva no encontrada: " + reservaId;
+        }
+        return "OK|Reserva liberada: " + reservaId;
+    }
+
+    private static boolean esFechaValida(String fecha) {
+        byte[] bytes = fecha.getBytes(StandardCharsets.ISO_8859_1);
+        return ParserProtocolo.leerFecha(bytes, 0, bytes.length) >= 0;
+    }
+
+    private static byte[] ascii(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] utf8(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+}
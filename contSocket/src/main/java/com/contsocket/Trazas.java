@@ -0,0 +1,14 @@
+package com.contsocket;
+
+/**
+ * Interruptor de las trazas por comando ("Recibido", "Enviado", "[CAPACIDAD] ...").
+ *
+ * Cada traza construye Strings, así que en producción se desactivan con
+ * -Dcontsocket.trazas=false para que una consulta CAPACIDAD no genere basura.
+ */
+final class Trazas {
+
+    static final boolean ACTIVAS = Boolean.parseBoolean(System.getProperty("contsocket.trazas", "true"));
+
+    private Trazas() {}
+}
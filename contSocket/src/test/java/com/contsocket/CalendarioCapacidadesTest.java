@@ -0,0 +1,97 @@
+package com.contsocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CalendarioCapacidadesTest {
+
+    private static final int DIA = 20_062;
+
+    @Test
+    void unDiaSinFijarNoTieneCapacidad() {
+        CalendarioCapacidades calendario = new CalendarioCapacidades();
+        assertEquals(CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA, calendario.consultar(DIA));
+        assertEquals(CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA, calendario.restar(DIA, 1));
+        assertFalse(calendario.sumar(DIA, 1));
+    }
+
+    @Test
+    void restarYSumarActualizanLaCapacidad() {
+        CalendarioCapacidades calendario = new CalendarioCapacidades();
+        calendario.fijar(DIA, 10_000);
+
+        assertEquals(10_000, calendario.restar(DIA, 2_500));
+        assertEquals(7_500, calendario.consultar(DIA));
+        assertEquals(CalendarioCapacidades.CAPACIDAD_INSUFICIENTE, calendario.restar(DIA, 7_501));
+        assertEquals(7_500, calendario.consultar(DIA));
+
+        assertTrue(calendario.sumar(DIA, 500));
+        assertEquals(8_000, calendario.consultar(DIA));
+    }
+
+    @Test
+    void unDiaQueReutilizaLaCeldaNoVeLaCapacidadDelAnterior() {
+        CalendarioCapacidades calendario = new CalendarioCapacidades();
+        int mismoHueco = DIA + CalendarioCapacidades.DIAS;
+        calendario.fijar(DIA, 10_000);
+
+        assertEquals(CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA, calendario.consultar(mismoHueco));
+        assertEquals(CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA, calendario.restar(mismoHueco, 1));
+
+        calendario.fijar(mismoHueco, 3_000);
+        assertEquals(CalendarioCapacidades.SIN_CAPACIDAD_REGISTRADA, calendario.consultar(DIA));
+        assertEquals(3_000, calendario.consultar(mismoHueco));
+    }
+
+    @Test
+    void recorrerVisitaLosDiasRegistrados() {
+        CalendarioCapacidades calendario = new CalendarioCapacidades();
+        calendario.fijar(DIA, 1_000);
+        calendario.fijar(DIA + 1, 2_000);
+
+        List<String> vistos = new ArrayList<>();
+        calendario.recorrer((dia, kilos) -> vistos.add(dia + "=" + kilos));
+        assertEquals(List.of(DIA + "=1000", (DIA + 1) + "=2000"), vistos);
+    }
+
+    @Test
+    void lasRestasConcurrentesNuncaDejanLaCapacidadEnNegativo() throws InterruptedException {
+        CalendarioCapacidades calendario = new CalendarioCapacidades();
+        calendario.fijar(DIA, 1_000);
+        AtomicInteger concedidas = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 8; h++) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (calendario.restar(DIA, 1) >= 0) {
+                        concedidas.incrementAndGet();
+                    }
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+        salida.countDown();
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(1_000, concedidas.get());
+        assertEquals(0, calendario.consultar(DIA));
+    }
+}
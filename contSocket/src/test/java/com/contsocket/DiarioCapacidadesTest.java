@@ -0,0 +1,183 @@
+package com.contsocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiarioCapacidadesTest {
+
+    private static final int DIA = 20_062;
+    private static final String DIARIO = "capacidades.diario";
+    private static final String INSTANTANEA = "capacidades.instantanea";
+    // Cabecera del diario: magia, versión y generación
+    private static final int CABECERA = 16;
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * Registra un día con una reserva liberada y otra viva:
+     * DIA = 10000 - 1000 - 2000 + 1000 - 500 = 7500, DIA + 1 = 3000.
+     */
+    private static void registrarCambios(DiarioCapacidades diario) {
+        diario.registrar(DiarioCapacidades.FIJAR, DIA, 0, 10_000);
+        diario.registrar(DiarioCapacidades.FIJAR, DIA + 1, 0, 3_000);
+        diario.registrar(DiarioCapacidades.RESERVAR, DIA, 1, 1_000);
+        diario.registrar(DiarioCapacidades.RESERVAR, DIA, 2, 2_000);
+        diario.registrar(DiarioCapacidades.LIBERAR, DIA, 1, 1_000);
+        diario.registrar(DiarioCapacidades.REDUCIR, DIA, 0, 500);
+    }
+
+    private static void comprobarEstado(DiarioCapacidades diario) {
+        assertEquals(Map.of(DIA, 7_500L, DIA + 1, 3_000L), diario.getDiasRecuperados());
+        assertEquals(Map.of(2L, new CapacidadService.Reserva(DIA, 2_000)), diario.getReservasRecuperadas());
+        assertEquals(2, diario.getSecuenciaRecuperada());
+    }
+
+    /**
+     * Copia el diario tal como está en disco con el proceso vivo: es lo que
+     * encontraría el siguiente arranque si el proceso cayese ahora.
+     */
+    private Path copiarComoTrasCaida(Path origen, String nombre) throws IOException {
+        Path destino = Files.createDirectory(tmp.resolve(nombre));
+        Files.copy(origen.resolve(DIARIO), destino.resolve(DIARIO));
+        return destino;
+    }
+
+    @Test
+    void unDirectorioVacioNoRecuperaNada() throws IOException {
+        DiarioCapacidades diario = DiarioCapacidades.abrir(tmp.resolve("vacio"));
+        try {
+            assertTrue(diario.getDiasRecuperados().isEmpty());
+            assertTrue(diario.getReservasRecuperadas().isEmpty());
+            assertEquals(0, diario.getSecuenciaRecuperada());
+        } finally {
+            diario.cerrar();
+        }
+    }
+
+    @Test
+    void alCerrarSeGuardaUnaInstantaneaQueSeRecupera() throws IOException {
+        Path datos = tmp.resolve("datos");
+        DiarioCapacidades diario = DiarioCapacidades.abrir(datos);
+        registrarCambios(diario);
+        diario.cerrar();
+
+        assertTrue(Files.exists(datos.resolve(INSTANTANEA)));
+        assertEquals(CABECERA, Files.size(datos.resolve(DIARIO)));
+
+        DiarioCapacidades reabierto = DiarioCapacidades.abrir(datos);
+        try {
+            comprobarEstado(reabierto);
+        } finally {
+            reabierto.cerrar();
+        }
+    }
+
+    @Test
+    void trasUnaCaidaSeReaplicaElDiario() throws IOException {
+        Path datos = tmp.resolve("datos");
+        DiarioCapacidades diario = DiarioCapacidades.abrir(datos);
+        registrarCambios(diario);
+        Path caido = copiarComoTrasCaida(datos, "caido");
+        diario.cerrar();
+
+        assertEquals(CABECERA + 6L * DiarioCapacidades.TAMANO_REGISTRO, Files.size(caido.resolve(DIARIO)));
+        DiarioCapacidades recuperado = DiarioCapacidades.abrir(caido);
+        try {
+            comprobarEstado(recuperado);
+        } finally {
+            recuperado.cerrar();
+        }
+    }
+
+    @Test
+    void unRegistroFinalIncompletoSeDescartaYSeRecorta() throws IOException {
+        Path datos = tmp.resolve("datos");
+        DiarioCapacidades diario = DiarioCapacidades.abrir(datos);
+        registrarCambios(diario);
+        Path caido = copiarComoTrasCaida(datos, "caido");
+        diario.cerrar();
+
+        // Medio registro escrito justo antes de caer
+        Files.write(caido.resolve(DIARIO), new byte[DiarioCapacidades.TAMANO_REGISTRO / 2],
+                StandardOpenOption.APPEND);
+
+        DiarioCapacidades recuperado = DiarioCapacidades.abrir(caido);
+        try {
+            comprobarEstado(recuperado);
+            assertEquals(CABECERA + 6L * DiarioCapacidades.TAMANO_REGISTRO, Files.size(caido.resolve(DIARIO)));
+        } finally {
+            recuperado.cerrar();
+        }
+    }
+
+    @Test
+    void unRegistroConCrcErroneoCortaLaRecuperacionAhi() throws IOException {
+        Path datos = tmp.resolve("datos");
+        DiarioCapacidades diario = DiarioCapacidades.abrir(datos);
+        registrarCambios(diario);
+        Path caido = copiarComoTrasCaida(datos, "caido");
+        diario.cerrar();
+
+        // Se daña el último registro (REDUCIR 500): se recupera todo lo anterior
+        byte[] bytes = Files.readAllBytes(caido.resolve(DIARIO));
+        bytes[bytes.length - DiarioCapacidades.TAMANO_REGISTRO + 20] ^= 0x01;
+        Files.write(caido.resolve(DIARIO), bytes);
+
+        DiarioCapacidades recuperado = DiarioCapacidades.abrir(caido);
+        try {
+            assertEquals(Map.of(DIA, 8_000L, DIA + 1, 3_000L), recuperado.getDiasRecuperados());
+            assertEquals(CABECERA + 5L * DiarioCapacidades.TAMANO_REGISTRO, Files.size(caido.resolve(DIARIO)));
+        } finally {
+            recuperado.cerrar();
+        }
+    }
+
+    @Test
+    void unDiarioYaIncluidoEnLaInstantaneaNoSeAplicaDosVeces() throws IOException {
+        Path datos = tmp.resolve("datos");
+        DiarioCapacidades diario = DiarioCapacidades.abrir(datos);
+        registrarCambios(diario);
+        Path caido = copiarComoTrasCaida(datos, "caido");
+        diario.cerrar();
+
+        // Caída entre escribir la instantánea y vaciar el diario:
+        // la instantánea nueva convive con el diario de su misma generación
+        Files.copy(datos.resolve(INSTANTANEA), caido.resolve(INSTANTANEA));
+
+        DiarioCapacidades recuperado = DiarioCapacidades.abrir(caido);
+        try {
+            comprobarEstado(recuperado);
+            assertEquals(CABECERA, Files.size(caido.resolve(DIARIO)));
+        } finally {
+            recuperado.cerrar();
+        }
+    }
+
+    @Test
+    void trasCerrarNoSeAceptanCambios() throws IOException {
+        DiarioCapacidades diario = DiarioCapacidades.abrir(tmp.resolve("datos"));
+        diario.cerrar();
+
+        assertThrows(UncheckedIOException.class, () -> diario.registrar(DiarioCapacidades.FIJAR, DIA, 0, 1));
+    }
+
+    @Test
+    void unFicheroQueNoEsUnDiarioSeRechaza() throws IOException {
+        Path datos = Files.createDirectory(tmp.resolve("datos"));
+        Files.write(datos.resolve(DIARIO), new byte[CABECERA * 2]);
+
+        assertThrows(IOException.class, () -> DiarioCapacidades.abrir(datos));
+    }
+}
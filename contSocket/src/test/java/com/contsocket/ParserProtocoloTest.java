@@ -0,0 +1,112 @@
+package com.contsocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class ParserProtocoloTest {
+
+    private static byte[] b(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int fecha(String texto) {
+        byte[] bytes = b(texto);
+        return ParserProtocolo.leerFecha(bytes, 0, bytes.length);
+    }
+
+    private static long kilos(String texto) {
+        byte[] bytes = b(texto);
+        return ParserProtocolo.leerKilos(bytes, 0, bytes.length);
+    }
+
+    private static String toneladas(long kilos) {
+        byte[] salida = new byte[32];
+        int fin = ParserProtocolo.escribirToneladas(kilos, salida, 0);
+        return new String(salida, 0, fin, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void leerFechaDevuelveElDiaEpoch() {
+        assertEquals(0, fecha("01-01-1970"));
+        assertEquals(LocalDate.of(2024, 12, 5).toEpochDay(), fecha("05-12-2024"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), fecha("29-02-2024"));
+    }
+
+    @Test
+    void leerFechaLeeDentroDeUnaLinea() {
+        byte[] linea = b("CAPACIDAD|05-12-2024");
+        assertEquals(LocalDate.of(2024, 12, 5).toEpochDay(), ParserProtocolo.leerFecha(linea, 10, 10));
+    }
+
+    @Test
+    void leerFechaRechazaFechasInexistentesYFormatosIncorrectos() {
+        assertEquals(-1, fecha("32-01-2024"));
+        assertEquals(-1, fecha("01-13-2024"));
+        assertEquals(-1, fecha("29-02-2023"));
+        assertEquals(-1, fecha("31-04-2024"));
+        assertEquals(-1, fecha("00-01-2024"));
+        assertEquals(-1, fecha("2024-12-05"));
+        assertEquals(-1, fecha("5-12-2024"));
+        assertEquals(-1, fecha("0a-12-2024"));
+        assertEquals(-1, fecha(""));
+    }
+
+    @Test
+    void escribirFechaEsLaInversaDeLeerFecha() {
+        byte[] salida = new byte[10];
+        for (LocalDate d = LocalDate.of(1999, 12, 25); d.isBefore(LocalDate.of(2101, 3, 1)); d = d.plusDays(17)) {
+            int fin = ParserProtocolo.escribirFecha((int) d.toEpochDay(), salida, 0);
+            assertEquals(10, fin);
+            String texto = new String(salida, StandardCharsets.US_ASCII);
+            assertEquals(String.format("%02d-%02d-%04d", d.getDayOfMonth(), d.getMonthValue(), d.getYear()), texto);
+            assertEquals(d.toEpochDay(), fecha(texto));
+        }
+    }
+
+    @Test
+    void leerKilosConvierteToneladasDecimales() {
+        assertEquals(12_000, kilos("12"));
+        assertEquals(12_500, kilos("12.5"));
+        assertEquals(125, kilos("0.125"));
+        assertEquals(1_000, kilos("1."));
+        assertEquals(500, kilos(".5"));
+    }
+
+    @Test
+    void leerKilosRedondeaAlKilo() {
+        assertEquals(1_235, kilos("1.2345"));
+        assertEquals(1_234, kilos("1.2344"));
+        assertEquals(1_235, kilos("1.23459"));
+    }
+
+    @Test
+    void leerKilosRechazaLoQueNoEsUnNumeroPositivo() {
+        assertEquals(-1, kilos(""));
+        assertEquals(-1, kilos("-1"));
+        assertEquals(-1, kilos("1.2.3"));
+        assertEquals(-1, kilos("1e3"));
+        assertEquals(-1, kilos("1234567890123456789"));
+    }
+
+    @Test
+    void escribirToneladasUsaElFormatoDeDoubleToString() {
+        for (String valor : new String[] {"0", "100", "123.45", "0.125", "7.5", "1000.001"}) {
+            double d = Double.parseDouble(valor);
+            assertEquals(Double.toString(d), toneladas(kilos(valor)));
+        }
+    }
+
+    @Test
+    void empiezaPorComparaSoloElPrefijo() {
+        byte[] linea = b("CAPACIDAD|05-12-2024");
+        assertTrue(ParserProtocolo.empiezaPor(linea, 0, linea.length, b("CAPACIDAD|")));
+        assertFalse(ParserProtocolo.empiezaPor(linea, 0, linea.length, b("RESERVAR|")));
+        assertFalse(ParserProtocolo.empiezaPor(linea, 0, 3, b("CAPACIDAD|")));
+    }
+}
@@ -2,11 +2,31 @@ package org.example.dao;
 
 import org.example.entities.Capacidad;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
+import java.util.List;
 
 @Repository
 public interface CapacidadRepository extends JpaRepository<Capacidad, Date> {
     Capacidad findByFecha(Date fecha);
+
+    // fecha es la clave primaria: una sola consulta por rango sobre su índice
+    List<Capacidad> findByFechaBetweenOrderByFechaAsc(Date desde, Date hasta);
+
+    /**
+     * Resta cantidad de la capacidad de la fecha solo si llega: comprobación y resta en un
+     * único UPDATE, sin leer antes. La base de datos bloquea la fila, así que dos consumos
+     * a la vez nunca dejan la capacidad por debajo de cero.
+     *
+     * @return 1 si se consumió, 0 si la fecha no existe o no tiene capacidad suficiente
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Capacidad c SET c.peso = c.peso - :cantidad WHERE c.fecha = :fecha AND c.peso >= :cantidad")
+    int consumir(@Param("fecha") Date fecha, @Param("cantidad") double cantidad);
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package org.example.dto;
+
+/**
+ * Métricas de la caché de capacidades de PlasSb.
+ */
+public class MetricasCacheDTO {
+    private long aciertos;
+    private long aciertosNegativos;
+    private long fallos;
+    private int entradas;
+    private long generacion;
+
+    public MetricasCacheDTO(long aciertos, long aciertosNegativos, long fallos, int entradas, long generacion) {
+        this.aciertos = aciertos;
+        this.aciertosNegativos = aciertosNegativos;
+        this.fallos = fallos;
+        this.entradas = entradas;
+        this.generacion = generacion;
+    }
+
+    // GET servidos desde la caché con capacidad
+    public long getAciertos() {
+        return aciertos;
+    }
+
+    // GET servidos desde la caché para fechas sin capacidad
+    public long getAciertosNegativos() {
+        return aciertosNegativos;
+    }
+
+    // GET que tuvieron que ir a la base de datos
+    public long getFallos() {
+        return fallos;
+    }
+
+    public int getEntradas() {
+        return entradas;
+    }
+
+    // Veces que se ha vaciado la caché
+    public long getGeneracion() {
+        return generacion;
+    }
+
+    public void setAciertos(long aciertos) {
+        this.aciertos = aciertos;
+    }
+
+    public void setAciertosNegativos(long aciertosNegativos) {
+        this.aciertosNegativos = aciertosNegativos;
+    }
+
+    public void setFallos(long fallos) {
+        this.fallos = fallos;
+    }
+
+    public void setEntradas(int entradas) {
+        this.entradas = entradas;
+    }
+
+    public void setGeneracion(long generacion) {
+        this.generacion = generacion;
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.dto;
+
+/**
+ * Resultado de una carga de capacidades por lotes.
+ */
+public class ResultadoLoteDTO {
+    private long filas;
+    private int tandas;
+    private long milisegundos;
+    private String error;
+
+    public ResultadoLoteDTO(long filas, int tandas, long milisegundos) {
+        this.filas = filas;
+        this.tandas = tandas;
+        this.milisegundos = milisegundos;
+    }
+
+    public static ResultadoLoteDTO conError(String error) {
+        ResultadoLoteDTO resultado = new ResultadoLoteDTO(0, 0, 0);
+        resultado.setError(error);
+        return resultado;
+    }
+
+    // Fechas insertadas o actualizadas
+    public long getFilas() {
+        return filas;
+    }
+
+    // Lotes JDBC enviados a la base de datos
+    public int getTandas() {
+        return tandas;
+    }
+
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    // null si la carga fue bien
+    public String getError() {
+        return error;
+    }
+
+    public void setFilas(long filas) {
+        this.filas = filas;
+    }
+
+    public void setTandas(int tandas) {
+        this.tandas = tandas;
+    }
+
+    public void setMilisegundos(long milisegundos) {
+        this.milisegundos = milisegundos;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -1,23 +1,37 @@
 package org.example.facade;
 
 
+import org.example.dto.MetricasCacheDTO;
+import org.example.dto.ResultadoLoteDTO;
+import org.example.entities.Capacidad;
+import org.example.service.LoteInvalidoException;
 import org.example.service.PlasSbService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/plasSb")
 @Tag(name = "PlasSb controller", description = "Operaciones relacionadas con la planta de reciclaje PlasSb")
 public class PlasSbController {
+    // Rango máximo que se puede pedir de una vez
+    private static final long MAX_DIAS_RANGO = 366;
+
     private final PlasSbService plasSbService;
 
     public PlasSbController(PlasSbService plasSbService) {
@@ -29,7 +43,7 @@ public class PlasSbController {
             description = "",
             responses = {
                     @ApiResponse(responseCode = "200", description = "OK:capacidad devuelta exitosamente"),
-                    @ApiResponse(responseCode = "204", description = "La fecha no tiene nada almacenado"),
+                    @ApiResponse(responseCode = "404", description = "La fecha no tiene nada almacenado"),
                     @ApiResponse(responseCode = "500", description = "Internal server error")
             }
     )
@@ -52,6 +66,61 @@ public class PlasSbController {
         }
     }
 
+    @Operation(
+            summary = "Métricas de la caché de capacidades",
+            description = "Aciertos (con y sin capacidad), fallos que fueron a la base de datos y tamaño de la caché.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: métricas devueltas")
+            }
+    )
+    @GetMapping("/metricas")
+    public ResponseEntity<MetricasCacheDTO> get_metricas(){
+        return new ResponseEntity<>(plasSbService.get_metricas_cache(), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Capacidades de un rango de fechas",
+            description = "Devuelve en una sola respuesta la capacidad de cada fecha de [desde, hasta] que tenga algo almacenado, como mapa fecha (dd-MM-yyyy) -> capacidad.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: capacidades devueltas (las fechas sin capacidad no aparecen)"),
+                    @ApiResponse(responseCode = "400", description = "Fechas mal formadas, desde posterior a hasta o rango de más de 366 días"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @GetMapping("/capacidad/rango")
+    public ResponseEntity<Map<String, Double>> get_capacidad_rango(
+            @Parameter(name = "desde", description = "Primera fecha del rango (incluida).", required = true, example = "01-01-2025")
+            @RequestParam("desde") String desde,
+            @Parameter(name = "hasta", description = "Última fecha del rango (incluida).", required = true, example = "10-01-2025")
+            @RequestParam("hasta") String hasta
+    ){
+        SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+        sdf.setLenient(false);
+        Date desde_format;
+        Date hasta_format;
+        try {
+            desde_format = sdf.parse(desde);
+            hasta_format = sdf.parse(hasta);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        long dias = TimeUnit.MILLISECONDS.toDays(hasta_format.getTime() - desde_format.getTime());
+        if (hasta_format.before(desde_format) || dias >= MAX_DIAS_RANGO) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            Map<String, Double> capacidades = new LinkedHashMap<>();
+            for (Capacidad c : plasSbService.get_capacidad_rango(desde_format, hasta_format)) {
+                capacidades.put(sdf.format(c.getFecha()), c.getPeso());
+            }
+            return new ResponseEntity<>(capacidades, HttpStatus.OK);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @Operation(
             summary = "",
             description = "",
@@ -83,4 +152,89 @@ public class PlasSbController {
             return HttpStatus.INTERNAL_SERVER_ERROR;
         }
     }
+
+    @Operation(
+            summary = "Suscribirse a los cambios de capacidad",
+            description = "Server-Sent Events: evento \"cambio\" {fecha, peso} por cada capacidad que cambia, "
+                    + "\"recargar\" cuando cambian muchas fechas de golpe, y un comentario de latido cada 15 s.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: flujo de eventos abierto")
+            }
+    )
+    @GetMapping(value = "/capacidad/cambios", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter get_cambios_capacidad(){
+        return plasSbService.suscribir_cambios();
+    }
+
+    @Operation(
+            summary = "Consumir capacidad",
+            description = "Resta la cantidad de la capacidad de la fecha solo si hay suficiente, de forma atómica: "
+                    + "varias peticiones a la vez nunca consumen más de lo disponible.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: capacidad consumida"),
+                    @ApiResponse(responseCode = "400", description = "Fecha mal formada o cantidad no positiva"),
+                    @ApiResponse(responseCode = "404", description = "La fecha no tiene nada almacenado"),
+                    @ApiResponse(responseCode = "409", description = "Capacidad insuficiente; no se ha consumido nada"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @PostMapping("/capacidad/consumir")
+    public ResponseEntity<Void> post_consumir_capacidad(
+            @Parameter(name = "fecha", description = "Fecha de la que se consume capacidad.", required = true, example = "01-01-2025")
+            @RequestParam("fecha") String fecha,
+            @Parameter(name = "cantidad", description = "Cantidad a consumir.", required = true, example = "12.5")
+            @RequestParam("cantidad") Double cantidad
+    ){
+        Date fecha_format;
+        try {
+            SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+            sdf.setLenient(false);
+            fecha_format = sdf.parse(fecha);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (!(cantidad > 0) || Double.isInfinite(cantidad)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            boolean consumida = plasSbService.consumir_capacidad(fecha_format, cantidad);
+            return new ResponseEntity<>(consumida ? HttpStatus.OK : HttpStatus.CONFLICT);
+        } catch (NoSuchElementException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (Exception e){
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Operation(
+            summary = "Carga masiva de capacidades",
+            description = "Inserta o actualiza muchas fechas de una vez. El cuerpo es un array JSON "
+                    + "[{\"fecha\": \"dd-MM-yyyy\", \"peso\": 80.5}, ...] (application/json) o un CSV con una "
+                    + "fila fecha,peso por línea (text/csv). Si una fila no es válida no se guarda ninguna.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK: todas las filas guardadas"),
+                    @ApiResponse(responseCode = "400", description = "Alguna fila no es válida; no se ha guardado nada"),
+                    @ApiResponse(responseCode = "500", description = "Internal server error")
+            }
+    )
+    @PostMapping(value = "/capacidad/lote", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResultadoLoteDTO> post_capacidad_lote_json(InputStream cuerpo){
+        return cargar_lote(cuerpo, false);
+    }
+
+    @PostMapping(value = "/capacidad/lote", consumes = "text/csv")
+    public ResponseEntity<ResultadoLoteDTO> post_capacidad_lote_csv(InputStream cuerpo){
+        return cargar_lote(cuerpo, true);
+    }
+
+    private ResponseEntity<ResultadoLoteDTO> cargar_lote(InputStream cuerpo, boolean csv){
+        try {
+            return new ResponseEntity<>(plasSbService.post_capacidad_lote(cuerpo, csv), HttpStatus.OK);
+        } catch (LoteInvalidoException e){
+            return new ResponseEntity<>(ResultadoLoteDTO.conError(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (Exception e){
+            return new ResponseEntity<>(ResultadoLoteDTO.conError(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
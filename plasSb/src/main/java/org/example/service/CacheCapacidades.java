@@ -0,0 +1,118 @@
+package org.example.service;
+
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Caché en memoria del calendario de capacidades, indexada por día epoch (días desde 01-01-1970).
+ *
+ * DECISIÓN DE DISEÑO:
+ * - El calendario es pequeño y se lee mucho más de lo que se escribe: cada fecha se carga
+ *   de H2 una sola vez (read-through) y a partir de ahí los GET no tocan la base de datos
+ * - También se guardan las fechas sin capacidad (entrada negativa, SIN_CAPACIDAD), para que
+ *   preguntar una y otra vez por una fecha vacía no vaya siempre a H2
+ * - Las escrituras, al confirmarse en H2, solo invalidan su fecha: la siguiente lectura la
+ *   recarga. Escribir el valor en la caché podría dejar uno viejo si dos escrituras de la
+ *   misma fecha (POST y consumo) terminan en distinto orden en H2 y en la caché
+ * - Contador de generación: cada invalidación lo incrementa, y una carga que empezó antes
+ *   de una invalidación no deja su valor (posiblemente viejo) en la caché
+ * - Acotada a maxEntradas: al llenarse se vacía entera (las fechas útiles se recargan solas)
+ */
+public class CacheCapacidades {
+
+    // Marca de "la fecha no tiene capacidad" dentro del mapa
+    private static final double SIN_CAPACIDAD = Double.NaN;
+
+    private final ConcurrentHashMap<Long, Double> entradas = new ConcurrentHashMap<>();
+    private final AtomicLong generacion = new AtomicLong();
+    private final int maxEntradas;
+
+    // Métricas
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong aciertosNegativos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    public CacheCapacidades(int maxEntradas) {
+        this.maxEntradas = maxEntradas;
+    }
+
+    /**
+     * Capacidad del día, cargándola con cargador (null si no tiene) cuando no está en caché.
+     *
+     * @return La capacidad, o null si esa fecha no tiene capacidad
+     */
+    public Double obtener(long dia, LongFunction<Double> cargador) {
+        Double valor = entradas.get(dia);
+        if (valor != null) {
+            if (valor.isNaN()) {
+                aciertosNegativos.incrementAndGet();
+                return null;
+            }
+            aciertos.incrementAndGet();
+            return valor;
+        }
+
+        fallos.incrementAndGet();
+        long generacionInicial = generacion.get();
+        Double cargado = cargador.apply(dia);
+        Double aGuardar = cargado == null ? SIN_CAPACIDAD : cargado;
+
+        if (entradas.size() >= maxEntradas) {
+            invalidar();
+        } else {
+            // Si entretanto llegó una escritura (invalidación), lo cargado puede ser viejo y se quita
+            entradas.putIfAbsent(dia, aGuardar);
+            if (generacion.get() != generacionInicial) {
+                entradas.remove(dia, aGuardar);
+            }
+        }
+        return cargado;
+    }
+
+    /**
+     * Olvida una fecha cuyo valor ha cambiado en la base de datos. Llamar después de confirmar el cambio.
+     */
+    public void invalidar(long dia) {
+        generacion.incrementAndGet();
+        entradas.remove(dia);
+    }
+
+    /**
+     * Vacía la caché (por ejemplo, tras una carga por lotes que cambia muchas fechas).
+     */
+    public void invalidar() {
+        generacion.incrementAndGet();
+        entradas.clear();
+    }
+
+    public static long diaEpoch(Date fecha) {
+        // JPA devuelve java.sql.Date, que no admite toInstant()
+        if (fecha instanceof java.sql.Date fechaSql) {
+            return fechaSql.toLocalDate().toEpochDay();
+        }
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    public int getTamano() {
+        return entradas.size();
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getAciertosNegativos() {
+        return aciertosNegativos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public long getGeneracion() {
+        return generacion.get();
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.dto.ResultadoLoteDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carga masiva de capacidades desde un cuerpo JSON o CSV.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - El cuerpo se lee en streaming (JsonParser de Jackson o línea a línea): nunca se tiene
+ *   el fichero entero en memoria, solo la tanda que se está preparando
+ * - Cada tanda de tamanoTanda filas va a H2 en un único batchUpdate de JDBC con
+ *   MERGE INTO ... KEY (fecha): inserta las fechas nuevas y actualiza las existentes
+ * - Toda la carga va en una transacción: si una fila es inválida no se guarda nada
+ * - Se hace con JdbcTemplate y no con saveAll() de JPA porque save() consulta antes
+ *   cada fecha para decidir entre INSERT y UPDATE; MERGE lo resuelve la base de datos
+ *
+ * FORMATOS:
+ * - JSON: [{"fecha": "dd-MM-yyyy", "peso": 80.5}, ...]
+ * - CSV:  una fila "dd-MM-yyyy,80.5" por línea (también con ';'), cabecera opcional
+ */
+class CargaLoteCapacidades {
+
+    private static final String SQL_MERGE = "MERGE INTO CAPACIDAD (fecha, peso) KEY (fecha) VALUES (?, ?)";
+    private static final DateTimeFormatter FORMATO_FECHA =
+            DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JsonFactory jsonFactory;
+    private final int tamanoTanda;
+
+    CargaLoteCapacidades(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         JsonFactory jsonFactory, int tamanoTanda) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jsonFactory = jsonFactory;
+        this.tamanoTanda = tamanoTanda;
+    }
+
+    /**
+     * @throws LoteInvalidoException si alguna fila no es válida (no se guarda nada)
+     */
+    ResultadoLoteDTO cargar(InputStream cuerpo, boolean csv) {
+        long inicio = System.nanoTime();
+        Tanda tanda = transactionTemplate.execute(estado -> {
+            Tanda t = new Tanda();
+            try {
+                if (csv) {
+                    leerCsv(cuerpo, t);
+                } else {
+                    leerJson(cuerpo, t);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            t.enviar();
+            return t;
+        });
+        long ms = (System.nanoTime() - inicio) / 1_000_000;
+        System.out.println("[LOTE] " + tanda.filas + " capacidades guardadas en " + tanda.enviadas
+                + " tandas (" + ms + " ms)");
+        return new ResultadoLoteDTO(tanda.filas, tanda.enviadas, ms);
+    }
+
+    private void leerJson(InputStream cuerpo, Tanda tanda) throws IOException {
+        long fila = 0;
+        // Para saber si un error de sintaxis es de la fila actual o de la siguiente
+        boolean dentroDeFila = false;
+        try (JsonParser parser = jsonFactory.createParser(cuerpo)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new LoteInvalidoException(0, "se esperaba un array JSON");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                fila++;
+                dentroDeFila = true;
+                String fecha = null;
+                Double peso = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String campo = parser.currentName();
+                    JsonToken valor = parser.nextToken();
+                    if ("fecha".equals(campo) && valor == JsonToken.VALUE_STRING) {
+                        fecha = parser.getText();
+                    } else if ("peso".equals(campo) && valor.isNumeric()) {
+                        peso = parser.getDoubleValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (fecha == null || peso == null) {
+                    throw new LoteInvalidoException(fila, "faltan \"fecha\" (texto) o \"peso\" (número)");
+                }
+                tanda.anadir(fila, fecha, peso);
+                dentroDeFila = false;
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new LoteInvalidoException(fila + 1, "se esperaba un objeto {fecha, peso}");
+            }
+        } catch (JsonProcessingException e) {
+            throw new LoteInvalidoException(dentroDeFila ? fila : fila + 1, "JSON mal formado: " + e.getOriginalMessage());
+        }
+    }
+
+    private void leerCsv(InputStream cuerpo, Tanda tanda) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(cuerpo, StandardCharsets.UTF_8));
+        long fila = 0;
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            fila++;
+            if (linea.isBlank() || (fila == 1 && linea.trim().toLowerCase().startsWith("fecha"))) {
+                continue;
+            }
+            int separador = linea.indexOf(',');
+            if (separador < 0) {
+                separador = linea.indexOf(';');
+            }
+            if (separador < 0) {
+                throw new LoteInvalidoException(fila, "se esperaba \"fecha,peso\"");
+            }
+            double peso;
+            try {
+                peso = Double.parseDouble(linea.substring(separador + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new LoteInvalidoException(fila, "peso no numérico");
+            }
+            tanda.anadir(fila, linea.substring(0, separador).trim(), peso);
+        }
+    }
+
+    /**
+     * Filas pendientes de enviar; se vacía en un batchUpdate al llegar a tamanoTanda.
+     */
+    private final class Tanda {
+        final List<Object[]> pendientes = new ArrayList<>(tamanoTanda);
+        long filas;
+        int enviadas;
+
+        void anadir(long fila, String fecha, double peso) {
+            LocalDate dia;
+            try {
+                dia = LocalDate.parse(fecha, FORMATO_FECHA);
+            } catch (DateTimeParseException e) {
+                throw new LoteInvalidoException(fila, "fecha inválida \"" + fecha + "\", use dd-MM-yyyy");
+            }
+            if (!(peso >= 0) || Double.isInfinite(peso)) {
+                throw new LoteInvalidoException(fila, "el peso debe ser un número positivo");
+            }
+            pendientes.add(new Object[]{Date.valueOf(dia), peso});
+            filas++;
+            if (pendientes.size() >= tamanoTanda) {
+                enviar();
+            }
+        }
+
+        void enviar() {
+            if (pendientes.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(SQL_MERGE, pendientes);
+            enviadas++;
+            pendientes.clear();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.service;
+
+/**
+ * El cuerpo de una carga por lotes tiene una fila que no se puede interpretar.
+ * La carga entera se descarta (nada queda guardado).
+ */
+public class LoteInvalidoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long fila;
+
+    public LoteInvalidoException(long fila, String mensaje) {
+        super("Fila " + fila + ": " + mensaje);
+        this.fila = fila;
+    }
+
+    public long getFila() {
+        return fila;
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.service;
+
+import org.example.dao.CapacidadRepository;
+import org.example.entities.Capacidad;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Envía a los suscriptores (Server-Sent Events) los cambios de capacidad.
+ *
+ * DECISIÓN DE DISEÑO:
+ * - Quien cambia una capacidad solo apunta el día; un único hilo lee después el valor
+ *   de la base de datos y lo envía. Así el último evento de cada día lleva siempre su
+ *   valor confirmado más reciente, y varios cambios seguidos del mismo día salen en un
+ *   solo evento
+ * - Un mismo hilo hace todos los envíos y los latidos: los eventos salen en orden y
+ *   un suscriptor lento nunca frena a quien modifica la capacidad
+ * - Eventos: "cambio" {"fecha":"dd-MM-yyyy","peso":80.5}; "recargar" {} cuando cambian
+ *   demasiadas fechas de golpe (carga por lotes) y conviene volver a consultarlas
+ * - Cada LATIDO_MS se envía un comentario SSE: detecta suscriptores caídos y permite al
+ *   cliente notar que la planta ya no responde
+ */
+@Component
+public class NotificadorCambios {
+
+    private static final long LATIDO_MS = 15_000;
+
+    private final CapacidadRepository capacidadRepository;
+    private final CopyOnWriteArrayList<SseEmitter> suscriptores = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService envio;
+    // Días (epoch) cambiados que aún no se han enviado
+    private final LinkedHashSet<Long> pendientes = new LinkedHashSet<>();
+
+    public NotificadorCambios(CapacidadRepository capacidadRepository) {
+        this.capacidadRepository = capacidadRepository;
+        this.envio = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "plassb-cambios");
+            t.setDaemon(true);
+            return t;
+        });
+        this.envio.scheduleAtFixedRate(this::enviarLatido, LATIDO_MS, LATIDO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Nueva suscripción sin plazo: dura hasta que el cliente se desconecta.
+     */
+    public SseEmitter suscribir() {
+        SseEmitter emisor = new SseEmitter(0L);
+        emisor.onCompletion(() -> suscriptores.remove(emisor));
+        emisor.onTimeout(() -> suscriptores.remove(emisor));
+        emisor.onError(e -> suscriptores.remove(emisor));
+        suscriptores.add(emisor);
+        System.out.println("[CAMBIOS] Nuevo suscriptor (" + suscriptores.size() + " en total)");
+        return emisor;
+    }
+
+    /**
+     * Avisa de que la capacidad del día ha cambiado (llamar después de confirmarlo).
+     */
+    public void cambio(long dia) {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+        boolean estabaVacia;
+        synchronized (pendientes) {
+            estabaVacia = pendientes.isEmpty();
+            pendientes.add(dia);
+        }
+        if (estabaVacia) {
+            envio.execute(this::enviarPendientes);
+        }
+    }
+
+    /**
+     * Avisa de que han cambiado muchas fechas: los suscriptores deben volver a consultarlas.
+     */
+    public void recargar() {
+        envio.execute(() -> enviar(() -> SseEmitter.event().name("recargar").data(Map.of(), MediaType.APPLICATION_JSON)));
+    }
+
+    private void enviarPendientes() {
+        Long[] dias;
+        synchronized (pendientes) {
+            dias = pendientes.toArray(new Long[0]);
+            pendientes.clear();
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+        for (long dia : dias) {
+            Date fecha = Date.from(LocalDate.ofEpochDay(dia).atStartOfDay(ZoneId.systemDefault()).toInstant());
+            Capacidad capacidad;
+            try {
+                capacidad = capacidadRepository.findByFecha(fecha);
+            } catch (RuntimeException e) {
+                System.out.println("[CAMBIOS] No se pudo leer " + sdf.format(fecha) + ": " + e.getMessage());
+                continue;
+            }
+            if (capacidad != null) {
+                Map<String, Object> datos = Map.of("fecha", sdf.format(fecha), "peso", capacidad.getPeso());
+                enviar(() -> SseEmitter.event().name("cambio").data(datos, MediaType.APPLICATION_JSON));
+            }
+        }
+    }
+
+    private void enviarLatido() {
+        enviar(() -> SseEmitter.event().comment("latido"));
+    }
+
+    /**
+     * Un SseEventBuilder no se puede enviar dos veces, así que se construye uno por suscriptor.
+     */
+    private void enviar(Supplier<SseEmitter.SseEventBuilder> evento) {
+        for (SseEmitter emisor : suscriptores) {
+            try {
+                emisor.send(evento.get());
+            } catch (IOException | IllegalStateException e) {
+                // El cliente se ha ido
+                suscriptores.remove(emisor);
+                emisor.completeWithError(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        envio.shutdownNow();
+        for (SseEmitter emisor : suscriptores) {
+            emisor.complete();
+        }
+    }
+}
@@ -1,26 +1,116 @@
 package org.example.service;
 
 import org.example.dao.CapacidadRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.MetricasCacheDTO;
+import org.example.dto.ResultadoLoteDTO;
 import org.example.entities.Capacidad;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.InputStream;
 import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * Lógica de capacidades de PlasSb.
+ *
+ * Las consultas por fecha se sirven desde CacheCapacidades: H2 solo se consulta
+ * la primera vez que se pide cada fecha.
+ */
 @Service
 public class PlasSbService {
     private CapacidadRepository capacidadRepository;
+    private final CacheCapacidades cache;
+    private final CargaLoteCapacidades cargaLote;
+    private final NotificadorCambios notificador;
 
-    public PlasSbService(CapacidadRepository capacidadRepository) {
+    public PlasSbService(CapacidadRepository capacidadRepository, JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                         NotificadorCambios notificador,
+                         @Value("${plassb.cache.max-entradas:10000}") int maxEntradasCache,
+                         @Value("${plassb.lote.tamano-tanda:500}") int tamanoTanda) {
         this.capacidadRepository = capacidadRepository;
+        this.cache = new CacheCapacidades(maxEntradasCache);
+        this.notificador = notificador;
+        this.cargaLote = new CargaLoteCapacidades(jdbcTemplate, transactionTemplate,
+                objectMapper.getFactory(), tamanoTanda);
     }
 
+    /**
+     * @throws NoSuchElementException si la fecha no tiene capacidad almacenada
+     */
     public double get_capacidad_fecha(Date fecha){
-        return capacidadRepository.findByFecha(fecha).getPeso();
+        Double capacidad = cache.obtener(CacheCapacidades.diaEpoch(fecha), dia -> {
+            Capacidad c = capacidadRepository.findByFecha(fecha);
+            return c == null ? null : c.getPeso();
+        });
+        if (capacidad == null) {
+            throw new NoSuchElementException("No hay capacidad para la fecha " + fecha);
+        }
+        return capacidad;
+    }
+
+    /**
+     * Capacidades de todas las fechas de [desde, hasta] que tienen algo almacenado,
+     * ordenadas por fecha. Las fechas sin capacidad simplemente no aparecen.
+     */
+    public List<Capacidad> get_capacidad_rango(Date desde, Date hasta){
+        return capacidadRepository.findByFechaBetweenOrderByFechaAsc(desde, hasta);
     }
 
     public void post_capacidad_fecha(double peso, Date fecha){
         Capacidad c = new Capacidad(fecha, peso);
         capacidadRepository.save(c);
+        long dia = CacheCapacidades.diaEpoch(fecha);
+        // Ya confirmado: la siguiente lectura recarga el valor de H2
+        cache.invalidar(dia);
+        notificador.cambio(dia);
+    }
+
+    /**
+     * Consume cantidad de la capacidad de la fecha si hay suficiente (UPDATE condicional).
+     *
+     * @return true si se consumió; false si no hay capacidad suficiente
+     * @throws NoSuchElementException si la fecha no tiene capacidad almacenada
+     */
+    public boolean consumir_capacidad(Date fecha, double cantidad){
+        long dia = CacheCapacidades.diaEpoch(fecha);
+        if (capacidadRepository.consumir(fecha, cantidad) == 1) {
+            // Ya confirmado (la transacción es la del repositorio). El valor nuevo
+            // solo lo sabe H2: la siguiente lectura lo recargará
+            cache.invalidar(dia);
+            notificador.cambio(dia);
+            return true;
+        }
+        // Solo en el fallo se mira si es que la fecha no existe
+        get_capacidad_fecha(fecha);
+        return false;
+    }
+
+    /**
+     * Inserta o actualiza todas las capacidades del cuerpo (JSON o CSV) en una transacción.
+     *
+     * @throws LoteInvalidoException si alguna fila no es válida (no se guarda nada)
+     */
+    public ResultadoLoteDTO post_capacidad_lote(InputStream cuerpo, boolean csv){
+        ResultadoLoteDTO resultado = cargaLote.cargar(cuerpo, csv);
+        // Ya confirmado en H2: la caché se vacía y cada fecha se recargará con su valor nuevo
+        cache.invalidar();
+        notificador.recargar();
+        return resultado;
+    }
+
+    public SseEmitter suscribir_cambios(){
+        return notificador.suscribir();
+    }
+
+    public MetricasCacheDTO get_metricas_cache(){
+        return new MetricasCacheDTO(cache.getAciertos(), cache.getAciertosNegativos(), cache.getFallos(),
+                cache.getTamano(), cache.getGeneracion());
     }
 }